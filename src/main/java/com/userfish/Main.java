@@ -1,25 +1,64 @@
 package com.userfish;
 
+import java.io.PrintStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.hibernate.SessionFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.userfish.Service.TombstonePurgeJob;
+import com.userfish.Service.UserChangeFeed;
 import com.userfish.Service.UserServiceImpl;
+import com.userfish.Service.WriteBehindUpdateBuffer;
+import com.userfish.cli.BatchCommandRunner;
+import com.userfish.dao.EmailFilteredUserDao;
+import com.userfish.dao.EmailShardDirectory;
+import com.userfish.dao.JdbcUserDao;
+import com.userfish.dao.ShardRebalancer;
+import com.userfish.dao.ShardedUserDao;
+import com.userfish.dao.UserChangeDaoImpl;
 import com.userfish.dao.UserDao;
 import com.userfish.dao.UserDaoImpl;
 import com.userfish.model.User;
+import com.userfish.util.DataSources;
+import com.userfish.util.DeadlineCounters;
+import com.userfish.util.HibernateTransactionTemplate;
 import com.userfish.util.HibernateUtil;
+import com.userfish.util.SchemaInitializer;
+import com.userfish.util.TransactionTemplate;
 
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
-    private static final UserDao userDao = new UserDaoImpl();
+    // Все шаблоны транзакций и JdbcUserDao, которые переводят истекший срок в DeadlineExceededException
+    private static final List<DeadlineCounters> deadlineCounters =
+        new CopyOnWriteArrayList<>(List.of(HibernateUtil.getTransactionTemplate()));
+    private static final UserDao storageDao = createUserDao();
+    private static final UserDao userDao = createEmailFilter(storageDao);
+    // Транзакция основной базы не охватывает ни шарды, ни соединения JdbcUserDao, поэтому там каждый вызов DAO коммитится сам
+    private static final TransactionTemplate transactionTemplate = storageDao instanceof ShardedUserDao || isJdbcDao()
+        ? TransactionTemplate.direct()
+        : HibernateUtil.getTransactionTemplate();
     private static final Scanner scanner = new Scanner(System.in);
-    private static final UserServiceImpl userService = new UserServiceImpl(userDao);
+    private static final WriteBehindUpdateBuffer writeBehindBuffer = createWriteBehindBuffer();
+    private static final UserServiceImpl userService =
+        new UserServiceImpl(userDao, transactionTemplate, writeBehindBuffer);
+    private static final TombstonePurgeJob purgeJob = new TombstonePurgeJob(userDao);
 
     public static void main(String[] args) {
+        if (HibernateUtil.isSoftDeleteEnabled()) {
+            purgeJob.start(Duration.ofHours(1));
+        }
+
+        if (args.length > 0) {
+            System.exit(runCommand(args));
+        }
+
         logger.info("Starting User Service application");
 
         try {
@@ -55,12 +94,169 @@ public class Main {
             logger.error("Application error", e);
             System.err.println("Application error: " + e.getMessage());
         } finally {
+            purgeJob.stop();
             HibernateUtil.shutdown();
             scanner.close();
             logger.info("User Service application stopped");
         }
     }
 
+    // Включается переменной SHARD_DB_URLS; справочник email -> шард хранится в основной базе
+    private static UserDao createUserDao() {
+        List<SessionFactory> shardFactories = HibernateUtil.getShardSessionFactories();
+        if (shardFactories.isEmpty()) {
+            if (!isJdbcDao()) {
+                return new UserDaoImpl();
+            }
+            JdbcUserDao jdbcDao =
+                new JdbcUserDao(DataSources.of(HibernateUtil.getSessionFactory()), HibernateUtil.isSoftDeleteEnabled());
+            deadlineCounters.add(jdbcDao);
+            return jdbcDao;
+        }
+        SchemaInitializer.applyEmailShardDirectory(HibernateUtil.getSessionFactory());
+        ShardedUserDao shardedDao = new ShardedUserDao(shardDaos(shardFactories),
+                new EmailShardDirectory(HibernateUtil.getTransactionTemplate()));
+        HibernateUtil.addShutdownHook(shardedDao::close);
+        logger.info("Users are sharded across {} databases", shardFactories.size());
+        return shardedDao;
+    }
+
+    // Включается переменной EMAIL_FILTER=true; фильтр строится при старте чтением всей таблицы users
+    // и пополняется записями других процессов раз в EMAIL_FILTER_REFRESH_MS
+    private static UserDao createEmailFilter(UserDao dao) {
+        if (!Boolean.parseBoolean(HibernateUtil.setting("EMAIL_FILTER", "false"))) {
+            return dao;
+        }
+        EmailFilteredUserDao filteredDao = new EmailFilteredUserDao(dao,
+                Double.parseDouble(HibernateUtil.setting("EMAIL_FILTER_FPP", "0.01")));
+        int pageSize = Integer.parseInt(HibernateUtil.setting("EMAIL_FILTER_PAGE_SIZE", "10000"));
+        filteredDao.load(pageSize);
+        filteredDao.startRefresh(
+                Duration.ofMillis(Long.parseLong(HibernateUtil.setting("EMAIL_FILTER_REFRESH_MS", "10000"))), pageSize);
+        HibernateUtil.addShutdownHook(filteredDao::close);
+        return filteredDao;
+    }
+
+    private static List<UserDao> shardDaos(List<SessionFactory> shardFactories) {
+        List<UserDao> daos = new ArrayList<>();
+        for (SessionFactory factory : shardFactories) {
+            if (isJdbcDao()) {
+                JdbcUserDao jdbcDao = new JdbcUserDao(DataSources.of(factory), HibernateUtil.isSoftDeleteEnabled());
+                deadlineCounters.add(jdbcDao);
+                daos.add(jdbcDao);
+            } else {
+                HibernateTransactionTemplate shardTemplate = new HibernateTransactionTemplate(() -> factory);
+                deadlineCounters.add(shardTemplate);
+                daos.add(new UserDaoImpl(shardTemplate, HibernateUtil.isSoftDeleteEnabled()));
+            }
+        }
+        return daos;
+    }
+
+    // USER_DAO=jdbc переключает доступ к users на JdbcUserDao поверх того же пула соединений
+    private static boolean isJdbcDao() {
+        return "jdbc".equalsIgnoreCase(HibernateUtil.setting("USER_DAO", "hibernate"));
+    }
+
+    // Включается переменной WRITE_BEHIND_WINDOW_MS > 0
+    private static WriteBehindUpdateBuffer createWriteBehindBuffer() {
+        long windowMs = Long.parseLong(HibernateUtil.setting("WRITE_BEHIND_WINDOW_MS", "0"));
+        if (windowMs <= 0) {
+            return null;
+        }
+        int maxPending = Integer.parseInt(HibernateUtil.setting("WRITE_BEHIND_MAX_PENDING", "10000"));
+        WriteBehindUpdateBuffer buffer = new WriteBehindUpdateBuffer(userDao, transactionTemplate,
+                Duration.ofMillis(windowMs), maxPending, 500);
+        HibernateUtil.addShutdownHook(buffer::close);
+        logger.info("Write-behind updates enabled with {} ms window", windowMs);
+        return buffer;
+    }
+
+    private static int runCommand(String[] args) {
+        // Данные идут в stdout, а логи и SQL Hibernate перенаправляются в stderr
+        PrintStream stdout = System.out;
+        System.setOut(System.err);
+        try {
+            if ("reshard".equals(args[0])) {
+                return reshard(args);
+            }
+            // Прогрев нужен только долгоживущему серверу и идет через тот DAO, с которым он будет работать
+            if ("serve".equals(args[0])) {
+                HibernateUtil.warmUp(storageDao);
+            }
+            UserChangeFeed userChangeFeed = new UserChangeFeed(new UserChangeDaoImpl());
+            return new BatchCommandRunner(userService, userChangeFeed, DeadlineCounters.sum(deadlineCounters),
+                System.in, stdout, System.err).run(args);
+        } finally {
+            purgeJob.stop();
+            HibernateUtil.shutdown();
+            stdout.flush();
+        }
+    }
+
+    // reshard --target-urls URL1,URL2,... [--batch-size N]: переносит пользователей из текущих шардов
+    // (или из основной базы, если шардов нет) в новый набор баз. Адрес, совпадающий с текущим шардом,
+    // означает ту же базу. Запись на время переноса должна быть остановлена
+    private static int reshard(String[] args) {
+        String targetUrls = null;
+        int batchSize = 1000;
+        for (int i = 1; i + 1 < args.length; i += 2) {
+            if ("--target-urls".equals(args[i])) {
+                targetUrls = args[i + 1];
+            } else if ("--batch-size".equals(args[i])) {
+                batchSize = Integer.parseInt(args[i + 1]);
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                return 2;
+            }
+        }
+        if (targetUrls == null) {
+            System.err.println("Usage: reshard --target-urls URL1,URL2,... [--batch-size N]");
+            return 2;
+        }
+
+        List<String> sourceUrls = HibernateUtil.shardUrls(HibernateUtil.setting("SHARD_DB_URLS", ""));
+        List<UserDao> sourceDaos = storageDao instanceof ShardedUserDao
+            ? shardDaos(HibernateUtil.getShardSessionFactories())
+            : List.of(storageDao);
+        List<String> newUrls = new ArrayList<>();
+        for (String url : HibernateUtil.shardUrls(targetUrls)) {
+            if (!sourceUrls.contains(url)) {
+                newUrls.add(url);
+            }
+        }
+        List<SessionFactory> newFactories = HibernateUtil.buildShardSessionFactories(newUrls);
+        try {
+            List<String> allTargetUrls = HibernateUtil.shardUrls(targetUrls);
+            List<UserDao> targetDaos = new ArrayList<>();
+            List<SessionFactory> targetFactories = new ArrayList<>();
+            for (String url : allTargetUrls) {
+                int source = sourceUrls.indexOf(url);
+                SessionFactory factory = source >= 0
+                    ? HibernateUtil.getShardSessionFactories().get(source)
+                    : newFactories.get(newUrls.indexOf(url));
+                targetFactories.add(factory);
+                targetDaos.add(source >= 0 ? sourceDaos.get(source) : shardDaos(List.of(factory)).get(0));
+            }
+
+            SchemaInitializer.applyEmailShardDirectory(HibernateUtil.getSessionFactory());
+            long moved = new ShardRebalancer(sourceDaos, targetDaos,
+                    new EmailShardDirectory(HibernateUtil.getTransactionTemplate())).rebalance(batchSize);
+            for (int shard = 0; shard < targetFactories.size(); shard++) {
+                SchemaInitializer.applyShardIdentity(targetFactories.get(shard), shard, targetFactories.size());
+            }
+            System.err.println("Moved " + moved + " users into " + targetFactories.size()
+                    + " shards; set SHARD_DB_URLS=" + String.join(",", allTargetUrls));
+            return 0;
+        } catch (Exception e) {
+            logger.error("Resharding failed", e);
+            System.err.println("Resharding failed: " + e.getMessage());
+            return 1;
+        } finally {
+            newFactories.forEach(SessionFactory::close);
+        }
+    }
+
     private static void printMenu() {
         System.out.println("\n=== User Service ===");
         System.out.println("1. Create User");
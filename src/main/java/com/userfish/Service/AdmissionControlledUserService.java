@@ -0,0 +1,255 @@
+package com.userfish.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.dao.ParallelUserScanner;
+import com.userfish.dao.UpsertResult;
+import com.userfish.dao.UserStats;
+import com.userfish.model.User;
+
+import jakarta.transaction.SystemException;
+
+// Допуск запросов к UserService: у каждого типа операций свой лимит частоты (token bucket) и
+// свой лимит одновременных вызовов. Кто не дождался допуска за maxQueueWait, сразу получает
+// AdmissionRejectedException, а не занимает соединение пула
+public class AdmissionControlledUserService implements UserService {
+    private static final Logger logger = LoggerFactory.getLogger(AdmissionControlledUserService.class);
+    public static final Duration DEFAULT_MAX_QUEUE_WAIT = Duration.ofMillis(100);
+
+    public enum OperationType {
+        READ,
+        LIST,
+        WRITE,
+        BULK
+    }
+
+    public static final class Limit {
+        private final double permitsPerSecond;
+        private final int burst;
+        private final int maxConcurrent;
+
+        public Limit(double permitsPerSecond, int burst, int maxConcurrent) {
+            if (permitsPerSecond <= 0 || burst <= 0 || maxConcurrent <= 0) {
+                throw new IllegalArgumentException("Admission limits must be positive numbers");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.maxConcurrent = maxConcurrent;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Call<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private static final class Gate {
+        private final TokenBucket bucket;
+        private final Semaphore slots;
+        private final int maxConcurrent;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rateLimited = new LongAdder();
+        private final LongAdder concurrencyLimited = new LongAdder();
+
+        private Gate(Limit limit) {
+            this.bucket = new TokenBucket(limit.permitsPerSecond, limit.burst);
+            this.slots = new Semaphore(limit.maxConcurrent, true);
+            this.maxConcurrent = limit.maxConcurrent;
+        }
+    }
+
+    private final UserService delegate;
+    private final Map<OperationType, Gate> gates = new EnumMap<>(OperationType.class);
+    private final long maxQueueWaitNanos;
+
+    public AdmissionControlledUserService(UserService delegate) {
+        this(delegate, defaultLimits(), DEFAULT_MAX_QUEUE_WAIT);
+    }
+
+    public AdmissionControlledUserService(UserService delegate, Map<OperationType, Limit> limits,
+                                          Duration maxQueueWait) {
+        this.delegate = delegate;
+        this.maxQueueWaitNanos = maxQueueWait.toNanos();
+        Map<OperationType, Limit> defaults = defaultLimits();
+        for (OperationType type : OperationType.values()) {
+            gates.put(type, new Gate(limits.getOrDefault(type, defaults.get(type))));
+        }
+    }
+
+    // Пул по умолчанию держит 20 соединений, тяжелым операциям достается малая его часть
+    public static Map<OperationType, Limit> defaultLimits() {
+        Map<OperationType, Limit> limits = new EnumMap<>(OperationType.class);
+        limits.put(OperationType.READ, new Limit(5_000, 500, 16));
+        limits.put(OperationType.LIST, new Limit(5, 5, 2));
+        limits.put(OperationType.WRITE, new Limit(1_000, 100, 8));
+        limits.put(OperationType.BULK, new Limit(2, 2, 1));
+        return limits;
+    }
+
+    @Override
+    public User createUser(String name, Integer age, String email) throws IllegalStateException, SystemException {
+        return admit(OperationType.WRITE, () -> delegate.createUser(name, age, email));
+    }
+
+    @Override
+    public Optional<User> getUserById(Long id) {
+        return admit(OperationType.READ, () -> delegate.getUserById(id));
+    }
+
+    @Override
+    public List<User> getAllUsers() {
+        return admit(OperationType.LIST, delegate::getAllUsers);
+    }
+
+    @Override
+    public User updateUser(Long id, String name, Integer age, String email) throws IllegalStateException, SystemException {
+        return admit(OperationType.WRITE, () -> delegate.updateUser(id, name, age, email));
+    }
+
+    @Override
+    public boolean deleteUser(Long id) throws IllegalStateException, SystemException {
+        return admit(OperationType.WRITE, () -> delegate.deleteUser(id));
+    }
+
+    @Override
+    public boolean userExists(Long id) {
+        return admit(OperationType.READ, () -> delegate.userExists(id));
+    }
+
+    @Override
+    public boolean emailExists(String email) {
+        return admit(OperationType.READ, () -> delegate.emailExists(email));
+    }
+
+    @Override
+    public boolean restoreUser(Long id) throws IllegalStateException, SystemException {
+        return admit(OperationType.WRITE, () -> delegate.restoreUser(id));
+    }
+
+    @Override
+    public List<User> createUsers(List<User> users) throws IllegalStateException, SystemException {
+        return admit(OperationType.BULK, () -> delegate.createUsers(users));
+    }
+
+    @Override
+    public UpsertResult upsertUser(String name, Integer age, String email) throws IllegalStateException, SystemException {
+        return admit(OperationType.WRITE, () -> delegate.upsertUser(name, age, email));
+    }
+
+    @Override
+    public List<UpsertResult> upsertUsers(List<User> users) throws IllegalStateException, SystemException {
+        return admit(OperationType.BULK, () -> delegate.upsertUsers(users));
+    }
+
+    @Override
+    public List<User> getUsersByIds(Collection<Long> ids) {
+        return admit(OperationType.READ, () -> delegate.getUsersByIds(ids));
+    }
+
+    @Override
+    public List<User> getUsersAfter(long afterId, int limit) {
+        return admit(OperationType.READ, () -> delegate.getUsersAfter(afterId, limit));
+    }
+
+    @Override
+    public long countUsers() {
+        return admit(OperationType.READ, delegate::countUsers);
+    }
+
+    @Override
+    public List<User> getUsersChangedSince(Instant since, long afterId, int limit) {
+        return admit(OperationType.READ, () -> delegate.getUsersChangedSince(since, afterId, limit));
+    }
+
+    @Override
+    public void bulkInsertUsers(List<User> users) throws IllegalStateException, SystemException {
+        admit(OperationType.BULK, () -> {
+            delegate.bulkInsertUsers(users);
+            return null;
+        });
+    }
+
+    @Override
+    public long scanUsers(int threads, int pageSize, ParallelUserScanner.Partitioning partitioning, boolean ordered,
+                          ParallelUserScanner.BatchHandler handler) throws Exception {
+        return admit(OperationType.BULK, () -> delegate.scanUsers(threads, pageSize, partitioning, ordered, handler));
+    }
+
+    @Override
+    public UserStats getUserStats(int ageBucketSize, int signupDays, int topDomains) {
+        return admit(OperationType.LIST, () -> delegate.getUserStats(ageBucketSize, signupDays, topDomains));
+    }
+
+    public long getAdmitted(OperationType type) {
+        return gates.get(type).admitted.sum();
+    }
+
+    public long getRejected(OperationType type, AdmissionRejectedException.Reason reason) {
+        Gate gate = gates.get(type);
+        return reason == AdmissionRejectedException.Reason.RATE_LIMITED
+                ? gate.rateLimited.sum()
+                : gate.concurrencyLimited.sum();
+    }
+
+    public int getInFlight(OperationType type) {
+        Gate gate = gates.get(type);
+        return gate.maxConcurrent - gate.slots.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder("Admission{");
+        for (Map.Entry<OperationType, Gate> entry : gates.entrySet()) {
+            Gate gate = entry.getValue();
+            summary.append(entry.getKey()).append(": admitted=").append(gate.admitted.sum())
+                    .append(" rateLimited=").append(gate.rateLimited.sum())
+                    .append(" concurrencyLimited=").append(gate.concurrencyLimited.sum()).append("; ");
+        }
+        return summary.append('}').toString();
+    }
+
+    private <T, E extends Exception> T admit(OperationType type, Call<T, E> call) throws E {
+        Gate gate = gates.get(type);
+        long started = System.nanoTime();
+
+        long waitNanos = gate.bucket.reserve(maxQueueWaitNanos);
+        if (waitNanos < 0) {
+            gate.rateLimited.increment();
+            logger.debug("Rejected {} call: rate limit", type);
+            throw new AdmissionRejectedException(type, AdmissionRejectedException.Reason.RATE_LIMITED);
+        }
+        try {
+            if (waitNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+            long remaining = maxQueueWaitNanos - (System.nanoTime() - started);
+            if (!gate.slots.tryAcquire(Math.max(0, remaining), TimeUnit.NANOSECONDS)) {
+                gate.concurrencyLimited.increment();
+                logger.debug("Rejected {} call: concurrency limit", type);
+                throw new AdmissionRejectedException(type, AdmissionRejectedException.Reason.CONCURRENCY_LIMITED);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for admission", e);
+        }
+
+        gate.admitted.increment();
+        try {
+            return call.call();
+        } finally {
+            gate.slots.release();
+        }
+    }
+}
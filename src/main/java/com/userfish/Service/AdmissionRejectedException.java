@@ -0,0 +1,27 @@
+package com.userfish.Service;
+
+public class AdmissionRejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        RATE_LIMITED,
+        CONCURRENCY_LIMITED
+    }
+
+    private final AdmissionControlledUserService.OperationType operation;
+    private final Reason reason;
+
+    public AdmissionRejectedException(AdmissionControlledUserService.OperationType operation, Reason reason) {
+        super("Request rejected by admission control: " + operation + " " + reason);
+        this.operation = operation;
+        this.reason = reason;
+    }
+
+    public AdmissionControlledUserService.OperationType getOperation() {
+        return operation;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
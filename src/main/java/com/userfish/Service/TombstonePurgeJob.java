@@ -0,0 +1,78 @@
+package com.userfish.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.dao.UserDao;
+
+// Физически удаляет мягко удаленных пользователей старше retention небольшими пачками с паузами,
+// чтобы не нагружать индексы и vacuum так же, как массовое удаление
+public class TombstonePurgeJob {
+    private static final Logger logger = LoggerFactory.getLogger(TombstonePurgeJob.class);
+
+    private final UserDao userDao;
+    private final Duration retention;
+    private final int batchSize;
+    private final Duration pauseBetweenBatches;
+    private final ScheduledExecutorService scheduler;
+
+    public TombstonePurgeJob(UserDao userDao) {
+        this(userDao, Duration.ofDays(7), 1000, Duration.ofMillis(200));
+    }
+
+    public TombstonePurgeJob(UserDao userDao, Duration retention, int batchSize, Duration pauseBetweenBatches) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive number");
+        }
+        this.userDao = userDao;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.pauseBetweenBatches = pauseBetweenBatches;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tombstone-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start(Duration interval) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                runOnce();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Tombstone purge failed", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Tombstone purge scheduled every {}", interval);
+    }
+
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    public long runOnce() throws InterruptedException {
+        LocalDateTime deletedBefore = LocalDateTime.now().minus(retention);
+        long purged = 0;
+        int batch;
+        do {
+            batch = userDao.purgeDeleted(deletedBefore, batchSize);
+            purged += batch;
+            if (batch == batchSize && !pauseBetweenBatches.isZero()) {
+                Thread.sleep(pauseBetweenBatches.toMillis());
+            }
+        } while (batch == batchSize && !Thread.currentThread().isInterrupted());
+
+        if (purged > 0) {
+            logger.info("Purged {} users deleted before {}", purged, deletedBefore);
+        }
+        return purged;
+    }
+}
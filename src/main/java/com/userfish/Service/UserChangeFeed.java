@@ -0,0 +1,113 @@
+package com.userfish.Service;
+
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.dao.UserChangeDao;
+import com.userfish.model.UserChangeEvent;
+
+public class UserChangeFeed {
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeFeed.class);
+
+    @FunctionalInterface
+    public interface BatchHandler {
+        void handle(List<UserChangeEvent> batch) throws Exception;
+    }
+
+    // Позиция потребителя - последнее обработанное событие (xid, seq), в тексте "xid:seq"
+    public static final class Position {
+        public static final Position START = new Position(0, 0);
+
+        private final long transactionId;
+        private final long sequence;
+
+        public Position(long transactionId, long sequence) {
+            this.transactionId = transactionId;
+            this.sequence = sequence;
+        }
+
+        public static Position of(UserChangeEvent event) {
+            return new Position(event.get_transactionId(), event.get_sequence());
+        }
+
+        // "0" - начало журнала
+        public static Position parse(String value) {
+            String trimmed = value.trim();
+            if ("0".equals(trimmed)) {
+                return START;
+            }
+            int separator = trimmed.indexOf(':');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Invalid change feed position: " + value);
+            }
+            try {
+                return new Position(Long.parseLong(trimmed.substring(0, separator)),
+                        Long.parseLong(trimmed.substring(separator + 1)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid change feed position: " + value, e);
+            }
+        }
+
+        public long getTransactionId() {
+            return transactionId;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Position)) {
+                return false;
+            }
+            Position other = (Position) o;
+            return transactionId == other.transactionId && sequence == other.sequence;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(transactionId) * 31 + Long.hashCode(sequence);
+        }
+
+        @Override
+        public String toString() {
+            return transactionId + ":" + sequence;
+        }
+    }
+
+    private final UserChangeDao userChangeDao;
+
+    public UserChangeFeed(UserChangeDao userChangeDao) {
+        this.userChangeDao = userChangeDao;
+    }
+
+    public List<UserChangeEvent> poll(Position after, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive number");
+        }
+        return userChangeDao.findAfter(after.getTransactionId(), after.getSequence(), batchSize);
+    }
+
+    // Передает обработчику все доступные события пачками и возвращает новую позицию.
+    // Позиция сдвигается только после успешной обработки пачки
+    public Position consume(Position after, int batchSize, BatchHandler handler) throws Exception {
+        Position position = after;
+        List<UserChangeEvent> batch;
+        do {
+            batch = poll(position, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            handler.handle(batch);
+            position = Position.of(batch.get(batch.size() - 1));
+            logger.debug("Consumed {} user changes up to position {}", batch.size(), position);
+        } while (batch.size() == batchSize);
+        return position;
+    }
+}
@@ -0,0 +1,16 @@
+package com.userfish.Service;
+
+public class UserNotFoundException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long userId;
+
+    public UserNotFoundException(long userId) {
+        super("User not found with id: " + userId);
+        this.userId = userId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+}
@@ -1,8 +1,13 @@
 package com.userfish.Service;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import com.userfish.dao.ParallelUserScanner;
+import com.userfish.dao.UpsertResult;
+import com.userfish.dao.UserStats;
 import com.userfish.model.User;
 
 import jakarta.transaction.SystemException;
@@ -14,4 +19,25 @@ public interface UserService {
     User updateUser(Long id, String name, Integer age, String email) throws IllegalStateException, SystemException;
     boolean deleteUser(Long id) throws IllegalStateException, SystemException;
     boolean userExists(Long id);
+    // Занят ли email живым пользователем; пустой email не занят
+    boolean emailExists(String email);
+    boolean restoreUser(Long id) throws IllegalStateException, SystemException;
+    List<User> createUsers(List<User> users) throws IllegalStateException, SystemException;
+    UpsertResult upsertUser(String name, Integer age, String email) throws IllegalStateException, SystemException;
+    List<UpsertResult> upsertUsers(List<User> users) throws IllegalStateException, SystemException;
+    List<User> getUsersByIds(Collection<Long> ids);
+    List<User> getUsersAfter(long afterId, int limit);
+    long countUsers();
+    List<User> getUsersChangedSince(Instant since, long afterId, int limit);
+    void bulkInsertUsers(List<User> users) throws IllegalStateException, SystemException;
+    // Полный проход по живым пользователям в threads соединений, страницы по pageSize отдаются handler по одной
+    long scanUsers(int threads, int pageSize, ParallelUserScanner.Partitioning partitioning, boolean ordered,
+                   ParallelUserScanner.BatchHandler handler) throws Exception;
+    // Считается агрегатами в базе: возраст интервалами ageBucketSize лет, регистрации за последние
+    // signupDays дней (включая сегодня), topDomains самых частых доменов email
+    UserStats getUserStats(int ageBucketSize, int signupDays, int topDomains);
+
+    default UserStats getUserStats() {
+        return getUserStats(10, 30, 20);
+    }
 }
\ No newline at end of file
@@ -5,23 +5,45 @@ import java.util.regex.Pattern;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.userfish.dao.ParallelUserScanner;
+import com.userfish.dao.UpsertResult;
 import com.userfish.dao.UserDao;
+import com.userfish.dao.UserStats;
 import com.userfish.model.User;
+import com.userfish.util.TransactionTemplate;
 
 import jakarta.transaction.SystemException;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class UserServiceImpl implements UserService {
     private static final Logger logger = LoggerFactory.getLogger(UserServiceImpl.class);
     private final UserDao userDao;
+    private final TransactionTemplate transactionTemplate;
+    private final WriteBehindUpdateBuffer writeBehindBuffer;
     
     private static final Pattern EMAIL_PATTERN = 
         Pattern.compile("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$");
     
     public UserServiceImpl(UserDao userDao) {
+        this(userDao, TransactionTemplate.direct());
+    }
+    
+    public UserServiceImpl(UserDao userDao, TransactionTemplate transactionTemplate) {
+        this(userDao, transactionTemplate, null);
+    }
+    
+    public UserServiceImpl(UserDao userDao, TransactionTemplate transactionTemplate,
+                           WriteBehindUpdateBuffer writeBehindBuffer) {
         this.userDao = userDao;
+        this.transactionTemplate = transactionTemplate;
+        this.writeBehindBuffer = writeBehindBuffer;
     }
     
     @Override
@@ -33,7 +55,7 @@ public class UserServiceImpl implements UserService {
         validateAge(age);
         
         User user = new User(name, age, email);
-        return userDao.save(user);
+        return transactionTemplate.execute(() -> userDao.save(user));
     }
     
     @Override
@@ -47,13 +69,17 @@ public class UserServiceImpl implements UserService {
             throw new IllegalArgumentException("Invalid user ID. ID must be positive number");
         }
         
-        return userDao.findById(id);
+        Optional<User> user = transactionTemplate.executeReadOnly(() -> userDao.findById(id));
+        if (writeBehindBuffer != null) {
+            user.ifPresent(writeBehindBuffer::applyPending);
+        }
+        return user;
     }
     
     @Override
     public List<User> getAllUsers() {
         logger.info("Getting all users");
-        return userDao.findAll();
+        return transactionTemplate.executeReadOnly(userDao::findAll);
     }
     
     @Override
@@ -65,25 +91,60 @@ public class UserServiceImpl implements UserService {
             throw new IllegalArgumentException("Invalid user ID. ID must be positive number");
         }
         
-        User user = userDao.findById(id)
-                .orElseThrow(() -> new RuntimeException("User not found with id: " + id));
-        
         if (name != null && !name.trim().isEmpty()) {
             validateName(name);
-            user.set_name(name);
         }
         
         if (email != null && !email.trim().isEmpty()) {
             validateEmail(email);
-            user.set_email(email);
         }
         
         if (age != null) {
             validateAge(age);
-            user.set_age(age);
         }
         
-        return userDao.update(user);
+        if (writeBehindBuffer != null) {
+            return bufferUpdate(id, name, age, email);
+        }
+        
+        // Чтение и запись выполняются в одной транзакции на одном соединении
+        return transactionTemplate.execute(() -> {
+            User user = userDao.findById(id)
+                    .orElseThrow(() -> new UserNotFoundException(id));
+            
+            if (name != null && !name.trim().isEmpty()) {
+                user.set_name(name);
+            }
+            
+            if (email != null && !email.trim().isEmpty()) {
+                user.set_email(email);
+            }
+            
+            if (age != null) {
+                user.set_age(age);
+            }
+            
+            return userDao.update(user);
+        });
+    }
+    
+    // Изменение ставится в очередь write-behind, вызывающему возвращается пользователь
+    // с уже примененными, но еще не записанными изменениями. Смена email пишется сразу,
+    // чтобы занятый email отклонялся DuplicateEmailException, а не терялся при сбросе
+    private User bufferUpdate(Long id, String name, Integer age, String email) throws IllegalStateException, SystemException {
+        User user = transactionTemplate.executeReadOnly(() -> userDao.findById(id))
+                .orElseThrow(() -> new UserNotFoundException(id));
+        writeBehindBuffer.applyPending(user);
+        
+        String newName = name != null && !name.trim().isEmpty() ? name : null;
+        String newEmail = email != null && !email.trim().isEmpty() ? email : null;
+        if (newEmail != null && !newEmail.equals(user.get_email())) {
+            return writeBehindBuffer.writeThrough(id, newName, age, newEmail);
+        }
+        
+        writeBehindBuffer.submit(id, newName, age, newEmail);
+        writeBehindBuffer.applyPending(user);
+        return user;
     }
     
     @Override
@@ -94,12 +155,14 @@ public class UserServiceImpl implements UserService {
             throw new IllegalArgumentException("Invalid user ID. ID must be positive number");
         }
         
-        if (!userDao.findById(id).isPresent()) {
-            return false;
-        }
-        
-        userDao.delete(id);
-        return true;
+        return transactionTemplate.execute(() -> {
+            if (!userDao.findById(id).isPresent()) {
+                return false;
+            }
+            
+            userDao.delete(id);
+            return true;
+        });
     }
     
     @Override
@@ -107,9 +170,142 @@ public class UserServiceImpl implements UserService {
         if (id == null || id <= 0) {
             return false;
         }
-        return userDao.findById(id).isPresent();
+        return transactionTemplate.executeReadOnly(() -> userDao.findById(id).isPresent());
     }
     
+    @Override
+    public boolean emailExists(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            return false;
+        }
+        return transactionTemplate.executeReadOnly(() -> userDao.existsByEmail(email));
+    }
+    
+    @Override
+    public boolean restoreUser(Long id) throws IllegalStateException, SystemException {
+        logger.info("Restoring user with id: {}", id);
+        
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("Invalid user ID. ID must be positive number");
+        }
+        
+        return transactionTemplate.execute(() -> userDao.restore(id));
+    }
+    
+    @Override
+    public List<User> createUsers(List<User> users) throws IllegalStateException, SystemException {
+        logger.info("Creating batch of {} users", users.size());
+        
+        for (User user : users) {
+            validateName(user.get_name());
+            validateEmail(user.get_email());
+            validateAge(user.get_age());
+        }
+        
+        return transactionTemplate.execute(() -> userDao.saveAll(users));
+    }
+    
+    @Override
+    public UpsertResult upsertUser(String name, Integer age, String email) throws IllegalStateException, SystemException {
+        logger.info("Upserting user: name={}, age={}, email={}", name, age, email);
+        
+        validateName(name);
+        validateEmail(email);
+        validateAge(age);
+        if (age == null) {
+            throw new IllegalArgumentException("Age cannot be null");
+        }
+        
+        User user = new User(name, age, email);
+        return transactionTemplate.execute(() -> userDao.upsertByEmail(user));
+    }
+    
+    @Override
+    public List<UpsertResult> upsertUsers(List<User> users) throws IllegalStateException, SystemException {
+        logger.info("Upserting batch of {} users", users.size());
+        
+        for (User user : users) {
+            validateName(user.get_name());
+            validateEmail(user.get_email());
+            validateAge(user.get_age());
+        }
+        
+        return transactionTemplate.execute(() -> userDao.upsertAll(users));
+    }
+    
+    @Override
+    public List<User> getUsersByIds(Collection<Long> ids) {
+        logger.info("Getting {} users by ids", ids.size());
+        
+        for (Long id : ids) {
+            if (id == null || id <= 0) {
+                throw new IllegalArgumentException("Invalid user ID. ID must be positive number");
+            }
+        }
+        
+        return transactionTemplate.executeReadOnly(() -> userDao.findAllById(ids));
+    }
+    
+    @Override
+    public List<User> getUsersAfter(long afterId, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive number");
+        }
+        return transactionTemplate.executeReadOnly(() -> userDao.findPage(afterId, limit));
+    }
+    
+    @Override
+    public long countUsers() {
+        return transactionTemplate.executeReadOnly(userDao::count);
+    }
+    
+    @Override
+    public List<User> getUsersChangedSince(Instant since, long afterId, int limit) {
+        if (since == null) {
+            throw new IllegalArgumentException("Since timestamp cannot be null");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page size must be positive number");
+        }
+        return transactionTemplate.executeReadOnly(() -> userDao.findChangedSince(since, afterId, limit));
+    }
+    
+    // Снимок уже прошел проверки при исходном сохранении, поэтому строки не валидируются повторно
+    @Override
+    public void bulkInsertUsers(List<User> users) throws IllegalStateException, SystemException {
+        logger.info("Bulk inserting {} users", users.size());
+        transactionTemplate.execute(() -> {
+            userDao.bulkInsert(users);
+            return null;
+        });
+    }
+    
+    // Вне транзакции: каждый поток читает свои диапазоны отдельными запросами через пул (или реплику)
+    @Override
+    public long scanUsers(int threads, int pageSize, ParallelUserScanner.Partitioning partitioning, boolean ordered,
+                          ParallelUserScanner.BatchHandler handler) throws Exception {
+        logger.info("Scanning users with {} threads, {} partitioning, ordered={}", threads, partitioning, ordered);
+        return new ParallelUserScanner(userDao, threads, pageSize).scan(partitioning, ordered, handler);
+    }
+    
+    @Override
+    public UserStats getUserStats(int ageBucketSize, int signupDays, int topDomains) {
+        if (ageBucketSize <= 0 || signupDays <= 0 || topDomains <= 0) {
+            throw new IllegalArgumentException("Stats parameters must be positive numbers");
+        }
+        LocalDate to = LocalDate.now().plusDays(1);
+        LocalDate from = to.minusDays(signupDays);
+        return transactionTemplate.executeReadOnly(() -> {
+            Map<LocalDate, Long> found = userDao.countSignupsPerDay(from, to);
+            Map<LocalDate, Long> signups = new LinkedHashMap<>();
+            for (LocalDate day = from; day.isBefore(to); day = day.plusDays(1)) {
+                signups.put(day, found.getOrDefault(day, 0L));
+            }
+            return new UserStats(userDao.count(), ageBucketSize, userDao.countByAgeBucket(ageBucketSize),
+                    signups, userDao.countByEmailDomain(topDomains));
+        });
+    }
+
     private void validateName(String name) {
         if (name == null || name.trim().isEmpty()) {
             throw new IllegalArgumentException("Name cannot be null or empty");
@@ -0,0 +1,250 @@
+package com.userfish.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.dao.UserDao;
+import com.userfish.model.User;
+import com.userfish.util.TransactionTemplate;
+
+import jakarta.transaction.SystemException;
+
+// Копит обновления в памяти, склеивая их по id пользователя, и раз в window сбрасывает
+// пачками по batchSize пользователей в одной транзакции. Пачка экономит коммиты, а не операторы:
+// внутри транзакции каждый пользователь по-прежнему читается и обновляется отдельным запросом.
+// Смену email вызывающий пишет через writeThrough: занятый email должен вернуться ему ошибкой
+public class WriteBehindUpdateBuffer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindUpdateBuffer.class);
+
+    private final UserDao userDao;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPending;
+    private final int batchSize;
+    private final Map<Long, PendingUpdate> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Object flushLock = new Object();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+
+    public WriteBehindUpdateBuffer(UserDao userDao, TransactionTemplate transactionTemplate,
+                                   Duration window, int maxPending, int batchSize) {
+        if (maxPending <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("Buffer size and batch size must be positive numbers");
+        }
+        this.userDao = userDao;
+        this.transactionTemplate = transactionTemplate;
+        this.maxPending = maxPending;
+        this.batchSize = batchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "write-behind-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, window.toMillis(), window.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void submit(long id, String name, Integer age, String email) {
+        submitted.incrementAndGet();
+        // Память ограничена: при переполнении вызывающий поток сам сбрасывает буфер
+        if (pending.size() >= maxPending && !pending.containsKey(id)) {
+            logger.debug("Write-behind buffer full ({} users), flushing synchronously", pending.size());
+            flush();
+        }
+        pending.merge(id, new PendingUpdate(name, age, email), PendingUpdate::merge);
+    }
+
+    // Пишет изменение сразу в своей транзакции вместе с отложенными изменениями того же пользователя,
+    // чтобы более старые поля из буфера не перекрыли его при следующем сбросе. Ошибка уходит вызывающему,
+    // а отложенные изменения возвращаются в буфер
+    public User writeThrough(long id, String name, Integer age, String email)
+            throws IllegalStateException, SystemException {
+        submitted.incrementAndGet();
+        synchronized (flushLock) {
+            PendingUpdate earlier = pending.remove(id);
+            PendingUpdate update = new PendingUpdate(name, age, email);
+            PendingUpdate merged = earlier == null ? update : earlier.merge(update);
+            try {
+                User user = transactionTemplate.execute(() -> {
+                    User current = userDao.findById(id).orElseThrow(() -> new UserNotFoundException(id));
+                    merged.applyTo(current);
+                    return userDao.update(current);
+                });
+                written.incrementAndGet();
+                return user;
+            } catch (RuntimeException | SystemException e) {
+                if (earlier != null) {
+                    pending.merge(id, earlier, (newer, older) -> older.merge(newer));
+                }
+                throw e;
+            }
+        }
+    }
+
+    public void flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            flushes.incrementAndGet();
+
+            Map<Long, PendingUpdate> batch = new LinkedHashMap<>();
+            Iterator<Long> ids = pending.keySet().iterator();
+            while (ids.hasNext()) {
+                Long id = ids.next();
+                PendingUpdate update = pending.remove(id);
+                if (update == null) {
+                    continue;
+                }
+                batch.put(id, update);
+                if (batch.size() == batchSize) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        }
+    }
+
+    // Накладывает еще не записанные изменения на прочитанного из базы пользователя
+    public void applyPending(User user) {
+        PendingUpdate update = pending.get(user.get_id());
+        if (update != null) {
+            update.applyTo(user);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    // Сколько входящих обновлений пришлось на одну запись в базу
+    public double getCoalescingRatio() {
+        long writes = written.get() + failed.get();
+        return writes == 0 ? 0 : (double) submitted.get() / writes;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        logger.info("Write-behind buffer closed: submitted={}, written={}, failed={}, coalescingRatio={}",
+                submitted.get(), written.get(), failed.get(), String.format("%.2f", getCoalescingRatio()));
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Write-behind flush failed", e);
+        }
+    }
+
+    private void writeBatch(Map<Long, PendingUpdate> batch) {
+        try {
+            transactionTemplate.execute(() -> {
+                for (Map.Entry<Long, PendingUpdate> entry : batch.entrySet()) {
+                    apply(entry.getKey(), entry.getValue());
+                }
+                return null;
+            });
+            written.addAndGet(batch.size());
+        } catch (Exception e) {
+            // Одна ошибка (например, занятый email) откатывает всю пачку, поэтому повторяем по одному
+            logger.warn("Write-behind batch of {} users failed, retrying one by one: {}", batch.size(), e.getMessage());
+            List<Long> ids = new ArrayList<>(batch.keySet());
+            for (Long id : ids) {
+                try {
+                    transactionTemplate.execute(() -> {
+                        apply(id, batch.get(id));
+                        return null;
+                    });
+                    written.incrementAndGet();
+                } catch (Exception single) {
+                    failed.incrementAndGet();
+                    logger.error("Dropping buffered update for user {}: {}", id, single.getMessage());
+                }
+            }
+        }
+    }
+
+    private void apply(long id, PendingUpdate update) throws Exception {
+        User user = userDao.findById(id).orElse(null);
+        if (user == null) {
+            logger.warn("User {} disappeared before buffered update was written", id);
+            return;
+        }
+        update.applyTo(user);
+        userDao.update(user);
+    }
+
+    static final class PendingUpdate {
+        private final String name;
+        private final Integer age;
+        private final String email;
+
+        PendingUpdate(String name, Integer age, String email) {
+            this.name = name;
+            this.age = age;
+            this.email = email;
+        }
+
+        // Более позднее обновление перекрывает только те поля, которые в нем заданы
+        PendingUpdate merge(PendingUpdate newer) {
+            return new PendingUpdate(
+                    newer.name != null ? newer.name : name,
+                    newer.age != null ? newer.age : age,
+                    newer.email != null ? newer.email : email);
+        }
+
+        void applyTo(User user) {
+            if (name != null) {
+                user.set_name(name);
+            }
+            if (age != null) {
+                user.set_age(age);
+            }
+            if (email != null) {
+                user.set_email(email);
+            }
+        }
+    }
+}
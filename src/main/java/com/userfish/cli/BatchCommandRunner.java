@@ -0,0 +1,562 @@
+package com.userfish.cli;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.Service.AdmissionControlledUserService;
+import com.userfish.Service.UserChangeFeed;
+import com.userfish.Service.UserService;
+import com.userfish.dao.ParallelUserScanner;
+import com.userfish.dao.UserStats;
+import com.userfish.http.HttpLoadTest;
+import com.userfish.http.UserHttpServer;
+import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.DeadlineCounters;
+import com.userfish.util.UserJson;
+import com.userfish.util.UserSnapshot;
+
+public class BatchCommandRunner {
+    private static final Logger logger = LoggerFactory.getLogger(BatchCommandRunner.class);
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int SNAPSHOT_PAGE_SIZE = 10_000;
+
+    private final UserService userService;
+    private final UserChangeFeed userChangeFeed;
+    private final DeadlineCounters deadlineCounters;
+    private final InputStream in;
+    private final OutputStream out;
+    private final PrintStream err;
+
+    public BatchCommandRunner(UserService userService, UserChangeFeed userChangeFeed, DeadlineCounters deadlineCounters,
+                              InputStream in, OutputStream out, PrintStream err) {
+        this.userService = userService;
+        this.userChangeFeed = userChangeFeed;
+        this.deadlineCounters = deadlineCounters;
+        this.in = in;
+        this.out = out;
+        this.err = err;
+    }
+
+    public int run(String[] args) {
+        if (args.length == 0) {
+            printUsage();
+            return 2;
+        }
+
+        String command = args[0];
+        Map<String, String> options = parseOptions(Arrays.copyOfRange(args, 1, args.length));
+        logger.info("Running command '{}' with options {}", command, options);
+
+        try {
+            switch (command) {
+                case "import":
+                    return importUsers(options);
+                case "export":
+                    return exportUsers(options);
+                case "snapshot-export":
+                    return exportSnapshot(options);
+                case "snapshot-import":
+                    return importSnapshot(options);
+                case "get":
+                    return getUsers(options);
+                case "stats":
+                    return printStats(options);
+                case "bench":
+                    return bench(options);
+                case "changes":
+                    return printChanges(options);
+                case "serve":
+                    return serve(options);
+                case "loadtest":
+                    return loadTest(options);
+                default:
+                    err.println("Unknown command: " + command);
+                    printUsage();
+                    return 2;
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            return 2;
+        } catch (Exception e) {
+            logger.error("Command '{}' failed", command, e);
+            err.println("Command failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    private int importUsers(Map<String, String> options) throws Exception {
+        UserRecordFormat format = format(options, options.get("input"));
+        int batchSize = intOption(options, "batch-size", DEFAULT_BATCH_SIZE);
+        String mode = options.getOrDefault("mode", "insert");
+        if (!"insert".equals(mode) && !"upsert".equals(mode)) {
+            throw new IllegalArgumentException("Unknown --mode: " + mode + ". Expected insert or upsert");
+        }
+        boolean upsert = "upsert".equals(mode);
+
+        int imported = 0;
+        int failed = 0;
+        try (BufferedReader reader = openInput(options.get("input"))) {
+            List<String> header = null;
+            if (format.hasHeader()) {
+                String headerLine = reader.readLine();
+                if (headerLine == null) {
+                    throw new IllegalArgumentException("Input is empty, CSV header expected");
+                }
+                header = format.parseHeader(headerLine);
+            }
+
+            List<User> batch = new ArrayList<>(batchSize);
+            String line;
+            int lineNumber = format.hasHeader() ? 1 : 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    batch.add(format.parse(line, header));
+                } catch (IllegalArgumentException e) {
+                    err.println("Line " + lineNumber + ": " + e.getMessage());
+                    failed++;
+                    continue;
+                }
+                if (batch.size() == batchSize) {
+                    int saved = importBatch(batch, upsert);
+                    imported += saved;
+                    failed += batch.size() - saved;
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                int saved = importBatch(batch, upsert);
+                imported += saved;
+                failed += batch.size() - saved;
+            }
+        }
+
+        try (Writer writer = openOutput(options.get("output"))) {
+            writer.write("imported=" + imported + " failed=" + failed + "\n");
+        }
+        return failed == 0 ? 0 : 1;
+    }
+
+    // Один пакет - одна транзакция; при ошибке пакет повторяется построчно, чтобы найти плохие записи
+    private int importBatch(List<User> batch, boolean upsert) {
+        try {
+            if (upsert) {
+                userService.upsertUsers(batch);
+            } else {
+                userService.createUsers(batch);
+            }
+            return batch.size();
+        } catch (Exception e) {
+            logger.warn("Batch of {} users failed, retrying one by one: {}", batch.size(), e.getMessage());
+        }
+
+        int saved = 0;
+        for (User user : batch) {
+            try {
+                if (upsert) {
+                    userService.upsertUser(user.get_name(), user.get_age(), user.get_email());
+                } else {
+                    userService.createUser(user.get_name(), user.get_age(), user.get_email());
+                }
+                saved++;
+            } catch (Exception e) {
+                err.println("Skipping " + user.get_email() + ": " + e.getMessage());
+            }
+        }
+        return saved;
+    }
+
+    private int exportUsers(Map<String, String> options) throws Exception {
+        UserRecordFormat format = format(options, options.get("output"));
+        int pageSize = intOption(options, "page-size", DEFAULT_BATCH_SIZE);
+        int threads = intOption(options, "threads", 1);
+        if (threads > 1) {
+            return exportUsersInParallel(options, format, threads, pageSize);
+        }
+
+        long exported = 0;
+        try (Writer writer = openOutput(options.get("output"))) {
+            format.writeHeader(writer);
+            long afterId = 0;
+            List<User> page;
+            do {
+                page = userService.getUsersAfter(afterId, pageSize);
+                for (User user : page) {
+                    format.write(user, writer);
+                    afterId = user.get_id();
+                }
+                exported += page.size();
+            } while (page.size() == pageSize);
+        }
+        logger.info("Exported {} users", exported);
+        return 0;
+    }
+
+    // Диапазоны _id читаются параллельно; --order unordered пишет страницы в порядке готовности
+    private int exportUsersInParallel(Map<String, String> options, UserRecordFormat format, int threads, int pageSize)
+            throws Exception {
+        String partitioning = options.getOrDefault("partitioning", "sampled");
+        if (!"sampled".equals(partitioning) && !"minmax".equals(partitioning)) {
+            throw new IllegalArgumentException("Unknown --partitioning: " + partitioning + ". Expected sampled or minmax");
+        }
+        String order = options.getOrDefault("order", "ordered");
+        if (!"ordered".equals(order) && !"unordered".equals(order)) {
+            throw new IllegalArgumentException("Unknown --order: " + order + ". Expected ordered or unordered");
+        }
+
+        long started = System.nanoTime();
+        long exported;
+        try (Writer writer = openOutput(options.get("output"))) {
+            format.writeHeader(writer);
+            exported = userService.scanUsers(threads, pageSize,
+                    "sampled".equals(partitioning)
+                        ? ParallelUserScanner.Partitioning.SAMPLED
+                        : ParallelUserScanner.Partitioning.MIN_MAX,
+                    "ordered".equals(order),
+                    page -> {
+                        for (User user : page) {
+                            format.write(user, writer);
+                        }
+                    });
+        }
+        logger.info("Exported {} users with {} threads in {} ms", exported, threads,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return 0;
+    }
+
+    private int exportSnapshot(Map<String, String> options) throws IOException {
+        int pageSize = intOption(options, "page-size", SNAPSHOT_PAGE_SIZE);
+        Path path = Paths.get(requiredOption(options, "output"));
+
+        long started = System.nanoTime();
+        long exported;
+        try (UserSnapshot.Writer writer = UserSnapshot.create(path)) {
+            long afterId = 0;
+            List<User> page;
+            do {
+                page = userService.getUsersAfter(afterId, pageSize);
+                for (User user : page) {
+                    writer.write(user);
+                    afterId = user.get_id();
+                }
+            } while (page.size() == pageSize);
+            exported = writer.getCount();
+        }
+        err.println("exported=" + exported + " file=" + path + " bytes=" + Files.size(path)
+                + " ms=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return 0;
+    }
+
+    private int importSnapshot(Map<String, String> options) throws Exception {
+        int batchSize = intOption(options, "batch-size", SNAPSHOT_PAGE_SIZE);
+        Path path = Paths.get(requiredOption(options, "input"));
+
+        long started = System.nanoTime();
+        long imported = UserSnapshot.read(path, batchSize, userService::bulkInsertUsers);
+        err.println("imported=" + imported + " ms=" + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        return 0;
+    }
+
+    private int getUsers(Map<String, String> options) throws IOException {
+        UserRecordFormat format = format(options, null);
+        int batchSize = intOption(options, "batch-size", DEFAULT_BATCH_SIZE);
+
+        List<Long> ids = new ArrayList<>();
+        String idsOption = options.get("ids");
+        if (idsOption != null) {
+            for (String id : idsOption.split(",")) {
+                if (!id.trim().isEmpty()) {
+                    ids.add(parseId(id));
+                }
+            }
+        } else {
+            try (BufferedReader reader = openInput(options.get("input"))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        ids.add(parseId(line));
+                    }
+                }
+            }
+        }
+
+        int found = 0;
+        try (Writer writer = openOutput(options.get("output"))) {
+            format.writeHeader(writer);
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Long> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                for (User user : userService.getUsersByIds(chunk)) {
+                    format.write(user, writer);
+                    found++;
+                }
+            }
+        }
+
+        if (found < ids.size()) {
+            err.println("Found " + found + " of " + ids.size() + " requested users");
+        }
+        return 0;
+    }
+
+    // Агрегаты считаются в базе, таблица пользователей в приложение не загружается
+    private int printStats(Map<String, String> options) throws IOException {
+        UserRecordFormat format = format(options, null);
+        UserStats stats = userService.getUserStats(intOption(options, "age-bucket", 10),
+                intOption(options, "days", 30), intOption(options, "domains", 20));
+
+        try (Writer writer = openOutput(options.get("output"))) {
+            if (format == UserRecordFormat.CSV) {
+                writer.write("metric,value\n");
+                writer.write("total," + stats.getTotal() + "\n");
+                for (Map.Entry<Integer, Long> bucket : stats.getCountByAgeBucket().entrySet()) {
+                    writer.write("age:" + bucket.getKey() + "-" + (bucket.getKey() + stats.getAgeBucketSize() - 1)
+                            + "," + bucket.getValue() + "\n");
+                }
+                for (Map.Entry<LocalDate, Long> day : stats.getSignupsPerDay().entrySet()) {
+                    writer.write("signups:" + day.getKey() + "," + day.getValue() + "\n");
+                }
+                for (Map.Entry<String, Long> domain : stats.getCountByEmailDomain().entrySet()) {
+                    writer.write("domain:" + domain.getKey() + "," + domain.getValue() + "\n");
+                }
+            } else {
+                UserJson.write(stats, writer);
+                writer.write('\n');
+            }
+        }
+        return 0;
+    }
+
+    private int bench(Map<String, String> options) throws Exception {
+        int ops = intOption(options, "ops", 10_000);
+        int threads = intOption(options, "threads", 4);
+
+        List<User> sample = userService.getUsersAfter(0, 10_000);
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("No users to benchmark against, run import first");
+        }
+        long[] ids = sample.stream().mapToLong(User::get_id).toArray();
+
+        long[] latencies = new long[ops];
+        AtomicInteger nextOp = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long started = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                int op;
+                while ((op = nextOp.getAndIncrement()) < ops) {
+                    long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+                    long opStarted = System.nanoTime();
+                    try {
+                        userService.getUserById(id);
+                    } catch (Exception e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[op] = System.nanoTime() - opStarted;
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        LatencySummary summary = new LatencySummary(latencies, System.nanoTime() - started);
+
+        try (Writer writer = openOutput(options.get("output"))) {
+            writer.write("threads=" + threads + " errors=" + errors.get() + " " + summary + "\n");
+        }
+        return errors.get() == 0 ? 0 : 1;
+    }
+
+    // Выводит изменения после позиции --after в JSONL, новая позиция печатается в stderr
+    private int printChanges(Map<String, String> options) throws Exception {
+        UserChangeFeed.Position after = options.containsKey("after")
+                ? UserChangeFeed.Position.parse(options.get("after"))
+                : UserChangeFeed.Position.START;
+        int batchSize = intOption(options, "batch-size", DEFAULT_BATCH_SIZE);
+
+        UserChangeFeed.Position position;
+        try (Writer writer = openOutput(options.get("output"))) {
+            position = userChangeFeed.consume(after, batchSize, batch -> {
+                for (UserChangeEvent event : batch) {
+                    writer.write("{\"seq\":" + event.get_sequence()
+                            + ",\"xid\":" + event.get_transactionId()
+                            + ",\"userId\":" + event.get_userId()
+                            + ",\"type\":\"" + event.get_type() + "\",\"changedAt\":");
+                    UserJson.writeString(String.valueOf(event.get_changedAt()), writer);
+                    writer.write("}\n");
+                }
+            });
+        }
+        err.println("position=" + position);
+        return 0;
+    }
+
+    private int serve(Map<String, String> options) throws Exception {
+        int port = intOption(options, "port", 8080);
+        int threads = intOption(options, "threads", 32);
+
+        String admission = options.getOrDefault("admission", "on");
+        if (!"on".equals(admission) && !"off".equals(admission)) {
+            throw new IllegalArgumentException("Unknown --admission: " + admission + ". Expected on or off");
+        }
+        // Лимиты допуска защищают пул соединений от одного клиента, который заваливает сервер запросами
+        UserService service = "on".equals(admission) ? new AdmissionControlledUserService(userService) : userService;
+
+        int timeoutMillis = intOption(options, "timeout-ms", 5_000);
+        UserHttpServer server = new UserHttpServer(service, port, threads, Duration.ofMillis(timeoutMillis));
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            if (service != userService) {
+                err.println(service);
+            }
+            err.println(deadlineCounters);
+            stopped.countDown();
+        }));
+        server.start();
+        err.println("Listening on http://localhost:" + server.getPort() + "/users, press Ctrl+C to stop");
+        stopped.await();
+        return 0;
+    }
+
+    private int loadTest(Map<String, String> options) throws Exception {
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int concurrency = intOption(options, "concurrency", 32);
+        int seconds = intOption(options, "duration", 30);
+
+        HttpLoadTest.Result result = new HttpLoadTest(URI.create(url), concurrency, Duration.ofSeconds(seconds)).run();
+        LatencySummary summary = new LatencySummary(result.getLatencyNanos(), result.getElapsedNanos());
+
+        try (Writer writer = openOutput(options.get("output"))) {
+            writer.write("concurrency=" + concurrency + " errors=" + result.getErrors() + " " + summary + "\n");
+        }
+        return result.getErrors() == 0 ? 0 : 1;
+    }
+
+    private BufferedReader openInput(String path) throws IOException {
+        if (path == null || "-".equals(path)) {
+            return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+        return Files.newBufferedReader(Paths.get(path), StandardCharsets.UTF_8);
+    }
+
+    // Стандартный вывод при закрытии только сбрасывается, файл закрывается
+    private Writer openOutput(String path) throws IOException {
+        if (path == null || "-".equals(path)) {
+            return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE) {
+                @Override
+                public void close() throws IOException {
+                    flush();
+                }
+            };
+        }
+        return Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8);
+    }
+
+    private static UserRecordFormat format(Map<String, String> options, String path) {
+        String format = options.get("format");
+        if (format != null) {
+            return UserRecordFormat.of(format);
+        }
+        if (path != null && path.endsWith(".jsonl")) {
+            return UserRecordFormat.JSONL;
+        }
+        return UserRecordFormat.CSV;
+    }
+
+    private static String requiredOption(Map<String, String> options, String name) {
+        String value = options.get(name);
+        if (value == null || "-".equals(value)) {
+            throw new IllegalArgumentException("--" + name + " FILE is required");
+        }
+        return value;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed <= 0) {
+                throw new IllegalArgumentException("--" + name + " must be positive number");
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid --" + name + " value: " + value);
+        }
+    }
+
+    private static long parseId(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid user ID: " + value);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 >= args.length || args[i + 1].startsWith("--")) {
+                throw new IllegalArgumentException("Missing value for --" + name);
+            }
+            options.put(name, args[++i]);
+        }
+        return options;
+    }
+
+    private void printUsage() {
+        err.println("Usage: <command> [options]");
+        err.println("  import [--input FILE|-] [--format csv|jsonl] [--batch-size N] [--mode insert|upsert]");
+        err.println("  export [--format csv|jsonl] [--page-size N] [--threads N [--partitioning sampled|minmax]"
+                + " [--order ordered|unordered]]");
+        err.println("  snapshot-export --output FILE [--page-size N]");
+        err.println("  snapshot-import --input FILE [--batch-size N]");
+        err.println("  get    (--ids 1,2,3 | --input FILE|-) [--format csv|jsonl] [--batch-size N]");
+        err.println("  stats  [--format csv|jsonl] [--age-bucket N] [--days N] [--domains N]");
+        err.println("  bench  [--ops N] [--threads N]");
+        err.println("  changes [--after XID:SEQ] [--batch-size N]");
+        err.println("  serve  [--port N] [--threads N] [--admission on|off] [--timeout-ms N]");
+        err.println("  loadtest [--url http://localhost:8080] [--concurrency N] [--duration SECONDS]");
+        err.println("  reshard --target-urls URL1,URL2,... [--batch-size N]");
+        err.println("All commands accept --output FILE|- (default: stdout)");
+    }
+}
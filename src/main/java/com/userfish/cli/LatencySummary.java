@@ -0,0 +1,33 @@
+package com.userfish.cli;
+
+import java.util.Arrays;
+
+final class LatencySummary {
+    private final long[] sortedNanos;
+    private final long elapsedNanos;
+
+    LatencySummary(long[] latencyNanos, long elapsedNanos) {
+        this.sortedNanos = latencyNanos.clone();
+        Arrays.sort(this.sortedNanos);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    double throughput() {
+        return sortedNanos.length / (elapsedNanos / 1e9);
+    }
+
+    long percentileMicros(double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ops=%d throughput=%.1f ops/s p50=%dus p99=%dus p999=%dus max=%dus",
+                sortedNanos.length, throughput(), percentileMicros(0.50), percentileMicros(0.99),
+                percentileMicros(0.999), percentileMicros(1.0));
+    }
+}
@@ -0,0 +1,127 @@
+package com.userfish.cli;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.userfish.model.User;
+import com.userfish.util.UserJson;
+
+public enum UserRecordFormat {
+    CSV,
+    JSONL;
+
+    private static final String CSV_HEADER = "id,name,age,email,createdAt";
+
+    public static UserRecordFormat of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown format: " + name + ". Expected csv or jsonl");
+        }
+    }
+
+    public void writeHeader(Writer out) throws IOException {
+        if (this == CSV) {
+            out.write(CSV_HEADER);
+            out.write('\n');
+        }
+    }
+
+    public void write(User user, Writer out) throws IOException {
+        if (this == CSV) {
+            out.write(Long.toString(user.get_id()));
+            out.write(',');
+            writeCsvField(user.get_name(), out);
+            out.write(',');
+            out.write(Integer.toString(user.get_age()));
+            out.write(',');
+            writeCsvField(user.get_email(), out);
+            out.write(',');
+            out.write(String.valueOf(user.get_createdAt()));
+        } else {
+            UserJson.write(user, out);
+        }
+        out.write('\n');
+    }
+
+    // Для CSV первая строка входа задает имена колонок, для JSONL header не используется
+    public boolean hasHeader() {
+        return this == CSV;
+    }
+
+    public List<String> parseHeader(String line) {
+        return parseCsvLine(line);
+    }
+
+    public User parse(String line, List<String> header) {
+        Map<String, String> fields = new HashMap<>();
+        if (this == CSV) {
+            List<String> values = parseCsvLine(line);
+            for (int i = 0; i < header.size() && i < values.size(); i++) {
+                fields.put(header.get(i).trim(), values.get(i));
+            }
+        } else {
+            fields = UserJson.parseObject(line);
+        }
+
+        String age = fields.get("age");
+        if (age == null || age.trim().isEmpty()) {
+            throw new IllegalArgumentException("Age is required");
+        }
+        return new User(fields.get("name"), Integer.parseInt(age.trim()), fields.get("email"));
+    }
+
+    private static void writeCsvField(String value, Writer out) throws IOException {
+        if (value == null) {
+            return;
+        }
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> values = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    current.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        values.add(current.toString());
+        return values;
+    }
+}
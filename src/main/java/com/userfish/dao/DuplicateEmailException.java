@@ -0,0 +1,16 @@
+package com.userfish.dao;
+
+public class DuplicateEmailException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String email;
+
+    public DuplicateEmailException(String email, Throwable cause) {
+        super(email != null ? "Email already exists: " + email : "Email already exists in batch", cause);
+        this.email = email;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+}
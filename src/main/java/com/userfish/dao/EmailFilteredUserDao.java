@@ -0,0 +1,341 @@
+package com.userfish.dao;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+
+import jakarta.transaction.SystemException;
+
+// Декоратор UserDao с фильтром Блума по всем email. Пока фильтр не загружен, все вызовы идут как есть.
+// После load() email, которого точно нет в фильтре, считается свободным без запроса: existsByEmail отвечает сразу,
+// а save идет прямо в INSERT. Только "может быть" проверяется пробой индекса, и занятый email отклоняется
+// до INSERT, без нарушения ограничения и отката транзакции. Уникальный индекс по-прежнему окончательный судья.
+// Записи других процессов (другие экземпляры serve, import, reshard) фильтр узнает через refresh()
+public class EmailFilteredUserDao implements UserDao, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EmailFilteredUserDao.class);
+    private static final long MIN_EXPECTED_EMAILS = 100_000;
+    // refresh() перечитывает изменения с запасом: updatedAt ставят часы пишущего процесса,
+    // а строка может стать видимой позже, чем соседние с большим updatedAt
+    private static final Duration REFRESH_OVERLAP = Duration.ofMinutes(1);
+
+    private final UserDao delegate;
+    private final double falsePositiveRate;
+    private volatile EmailBloomFilter filter;
+    // Фильтр, который сейчас строится: новые email пишутся и в него, чтобы не потеряться при подмене
+    private volatile EmailBloomFilter building;
+    private final AtomicBoolean saturationReported = new AtomicBoolean();
+    private final LongAdder skippedProbes = new LongAdder();
+    private final LongAdder probes = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    // Начало последней загрузки или пополнения: все, что изменено раньше, уже в фильтре
+    private Instant refreshedFrom;
+    private final ScheduledExecutorService scheduler;
+
+    public EmailFilteredUserDao(UserDao delegate, double falsePositiveRate) {
+        this.delegate = delegate;
+        this.falsePositiveRate = falsePositiveRate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "email-filter-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Читает email всех живых пользователей страницами по _id и подменяет фильтр целиком.
+    // Емкость - вдвое больше текущего числа пользователей; повторный вызов перестраивает переполненный фильтр
+    // и забывает освобожденные email. Строка, вставленная в чужой незакоммиченной транзакции во время чтения,
+    // может не попасть в фильтр: existsByEmail для нее ошибется, а save упрется в уникальный индекс как раньше
+    public synchronized void load(int pageSize) {
+        long started = System.nanoTime();
+        Instant loadedFrom = Instant.now();
+        EmailBloomFilter next = new EmailBloomFilter(
+                Math.max(MIN_EXPECTED_EMAILS, delegate.count() * 2), falsePositiveRate);
+        building = next;
+        try {
+            long afterId = 0;
+            List<User> page;
+            do {
+                page = delegate.findPage(afterId, pageSize);
+                for (User user : page) {
+                    next.put(user.get_email());
+                }
+                if (!page.isEmpty()) {
+                    afterId = page.get(page.size() - 1).get_id();
+                }
+            } while (page.size() == pageSize);
+            filter = next;
+            refreshedFrom = loadedFrom;
+            saturationReported.set(false);
+        } finally {
+            building = null;
+        }
+        logger.info("Email filter loaded with {} emails ({} bits, {} hashes) in {} ms", next.getInsertions(),
+                next.getBitCount(), next.getHashCount(), (System.nanoTime() - started) / 1_000_000);
+    }
+
+    // Добавляет email пользователей, измененных с прошлой загрузки или пополнения, в том числе чужими процессами.
+    // Уже известные email не добавляются повторно, чтобы перекрытие не раздувало счетчик заполнения
+    public synchronized int refresh(int pageSize) {
+        EmailBloomFilter current = filter;
+        if (current == null) {
+            return 0;
+        }
+        Instant started = Instant.now();
+        Instant since = refreshedFrom.minus(REFRESH_OVERLAP);
+        long afterId = 0;
+        int added = 0;
+        List<User> page;
+        do {
+            page = delegate.findChangedSince(since, afterId, pageSize);
+            for (User user : page) {
+                if (user.get_deletedAt() == null && !current.mightContain(user.get_email())) {
+                    put(user.get_email());
+                    added++;
+                }
+            }
+            if (!page.isEmpty()) {
+                User last = page.get(page.size() - 1);
+                since = last.get_updatedAt().atZone(ZoneId.systemDefault()).toInstant();
+                afterId = last.get_id();
+            }
+        } while (page.size() == pageSize);
+        refreshedFrom = started;
+        if (added > 0) {
+            logger.info("Email filter refreshed with {} emails written elsewhere", added);
+        }
+        return added;
+    }
+
+    public void startRefresh(Duration interval, int pageSize) {
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                refresh(pageSize);
+            } catch (Exception e) {
+                logger.error("Email filter refresh failed", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Email filter refresh scheduled every {}", interval);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    public boolean isLoaded() {
+        return filter != null;
+    }
+
+    // Вызовы, которым фильтр сэкономил запрос
+    public long getSkippedProbeCount() {
+        return skippedProbes.sum();
+    }
+
+    public long getProbeCount() {
+        return probes.sum();
+    }
+
+    // Пробы, в которых фильтр сказал "может быть", а база - "нет"
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    @Override
+    public User save(User user) throws IllegalStateException, SystemException {
+        if (existsByEmail(user.get_email())) {
+            logger.warn("Email already taken, insert skipped: {}", user.get_email());
+            throw new DuplicateEmailException(user.get_email(), null);
+        }
+        User saved = delegate.save(user);
+        put(saved.get_email());
+        return saved;
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        EmailBloomFilter current = filter;
+        if (current == null) {
+            return delegate.existsByEmail(email);
+        }
+        if (!current.mightContain(email)) {
+            skippedProbes.increment();
+            return false;
+        }
+        probes.increment();
+        boolean exists = delegate.existsByEmail(email);
+        if (!exists) {
+            falsePositives.increment();
+        }
+        return exists;
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public User update(User user) throws IllegalStateException, SystemException {
+        User updated = delegate.update(user);
+        put(updated.get_email());
+        return updated;
+    }
+
+    // Освобожденный email остается в фильтре: это только лишняя проба при следующей проверке
+    @Override
+    public void delete(Long id) throws IllegalStateException, SystemException {
+        delegate.delete(id);
+    }
+
+    @Override
+    public List<User> saveAll(List<User> users) throws IllegalStateException, SystemException {
+        List<User> saved = delegate.saveAll(users);
+        putAll(saved);
+        return saved;
+    }
+
+    @Override
+    public List<User> findAllById(Collection<Long> ids) {
+        return delegate.findAllById(ids);
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<User> findPageInRange(long afterId, long beforeId, int limit) {
+        return delegate.findPageInRange(afterId, beforeId, limit);
+    }
+
+    @Override
+    public List<Long> findIdBoundaries(int parts) {
+        return delegate.findIdBoundaries(parts);
+    }
+
+    @Override
+    public long count() {
+        return delegate.count();
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) throws IllegalStateException, SystemException {
+        UpsertResult result = delegate.upsertByEmail(user);
+        put(result.getUser().get_email());
+        return result;
+    }
+
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) throws IllegalStateException, SystemException {
+        List<UpsertResult> results = delegate.upsertAll(users);
+        for (UpsertResult result : results) {
+            put(result.getUser().get_email());
+        }
+        return results;
+    }
+
+    // Фильтр мог быть построен, когда пользователь уже был удален
+    @Override
+    public boolean restore(Long id) throws IllegalStateException, SystemException {
+        boolean restored = delegate.restore(id);
+        if (restored) {
+            delegate.findById(id).ifPresent(user -> put(user.get_email()));
+        }
+        return restored;
+    }
+
+    @Override
+    public int purgeDeleted(LocalDateTime deletedBefore, int batchSize) {
+        return delegate.purgeDeleted(deletedBefore, batchSize);
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, long afterId, int limit) {
+        return delegate.findChangedSince(since, afterId, limit);
+    }
+
+    @Override
+    public Map<Integer, Long> countByAgeBucket(int bucketSize) {
+        return delegate.countByAgeBucket(bucketSize);
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsPerDay(LocalDate from, LocalDate to) {
+        return delegate.countSignupsPerDay(from, to);
+    }
+
+    @Override
+    public Map<String, Long> countByEmailDomain(int limit) {
+        return delegate.countByEmailDomain(limit);
+    }
+
+    @Override
+    public void bulkInsert(List<User> users) throws IllegalStateException, SystemException {
+        delegate.bulkInsert(users);
+        putAll(users);
+    }
+
+    @Override
+    public List<User> findPageWithDeleted(long afterId, int limit) {
+        return delegate.findPageWithDeleted(afterId, limit);
+    }
+
+    @Override
+    public int insertMoved(List<User> users) throws IllegalStateException, SystemException {
+        int inserted = delegate.insertMoved(users);
+        for (User user : users) {
+            if (user.get_deletedAt() == null) {
+                put(user.get_email());
+            }
+        }
+        return inserted;
+    }
+
+    @Override
+    public int removeMoved(Collection<Long> ids) throws IllegalStateException, SystemException {
+        return delegate.removeMoved(ids);
+    }
+
+    private void putAll(List<User> users) {
+        for (User user : users) {
+            put(user.get_email());
+        }
+    }
+
+    private void put(String email) {
+        EmailBloomFilter next = building;
+        if (next != null) {
+            next.put(email);
+        }
+        EmailBloomFilter current = filter;
+        if (current != null) {
+            current.put(email);
+            if (current.isSaturated() && saturationReported.compareAndSet(false, true)) {
+                logger.warn("Email filter is over capacity with {} emails, false positive rate grows until reload",
+                        current.getInsertions());
+            }
+        }
+    }
+}
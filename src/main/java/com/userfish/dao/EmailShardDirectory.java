@@ -0,0 +1,119 @@
+package com.userfish.dao;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.util.HibernateTransactionTemplate;
+
+// Глобальный справочник email -> шард. Уникальность email между шардами держится на первичном
+// ключе этой таблицы: email сначала занимается здесь, затем пользователь пишется в шард.
+// claimedAt - время последнего захвата или переноса записи, по нему отличается брошенная запись от
+// записи, строка которой еще пишется в шард
+public class EmailShardDirectory {
+    private static final Logger logger = LoggerFactory.getLogger(EmailShardDirectory.class);
+
+    private final HibernateTransactionTemplate transactionTemplate;
+
+    // Таблицу создает SchemaInitializer.applyEmailShardDirectory
+    public EmailShardDirectory(HibernateTransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // false, если email уже занят: конфликт не бросает исключение и не портит транзакцию справочника
+    public boolean claim(String email, int shard) {
+        try {
+            return transactionTemplate.execute(() -> transactionTemplate.currentSession()
+                    .createNativeMutationQuery("insert into user_email_shards (email, shard, claimedAt)"
+                            + " values (:email, :shard, :claimedAt) on conflict do nothing")
+                    .setParameter("email", email)
+                    .setParameter("shard", shard)
+                    .setParameter("claimedAt", LocalDateTime.now())
+                    .executeUpdate() == 1);
+        } catch (Exception e) {
+            logger.error("Error claiming email: {}", email, e);
+            throw new RuntimeException("Failed to claim email: " + email, e);
+        }
+    }
+
+    public void release(String email) {
+        try {
+            transactionTemplate.execute(() -> transactionTemplate.currentSession()
+                    .createNativeMutationQuery("delete from user_email_shards where email = :email")
+                    .setParameter("email", email)
+                    .executeUpdate());
+        } catch (Exception e) {
+            logger.error("Error releasing email: {}", email, e);
+            throw new RuntimeException("Failed to release email: " + email, e);
+        }
+    }
+
+    // Запись создается, если ее не было: так справочник заполняется при переходе с одной базы на шарды
+    public void reassign(String email, int shard) {
+        try {
+            transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                LocalDateTime now = LocalDateTime.now();
+                int updated = session
+                        .createNativeMutationQuery("update user_email_shards set shard = :shard, claimedAt = :claimedAt"
+                                + " where email = :email")
+                        .setParameter("email", email)
+                        .setParameter("shard", shard)
+                        .setParameter("claimedAt", now)
+                        .executeUpdate();
+                if (updated == 0) {
+                    session.createNativeMutationQuery("insert into user_email_shards (email, shard, claimedAt)"
+                            + " values (:email, :shard, :claimedAt)")
+                            .setParameter("email", email)
+                            .setParameter("shard", shard)
+                            .setParameter("claimedAt", now)
+                            .executeUpdate();
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            logger.error("Error reassigning email: {}", email, e);
+            throw new RuntimeException("Failed to reassign email: " + email, e);
+        }
+    }
+
+    // Переносит запись шарда fromShard, не тронутую с staleBefore, в toShard. Перенос обновляет claimedAt,
+    // поэтому из двух одновременных попыток забрать одну запись удается только первая
+    public boolean takeOver(String email, int fromShard, int toShard, LocalDateTime staleBefore) {
+        try {
+            return transactionTemplate.execute(() -> transactionTemplate.currentSession()
+                    .createNativeMutationQuery("update user_email_shards set shard = :toShard, claimedAt = :claimedAt"
+                            + " where email = :email and shard = :fromShard"
+                            + " and (claimedAt is null or claimedAt <= :staleBefore)")
+                    .setParameter("email", email)
+                    .setParameter("fromShard", fromShard)
+                    .setParameter("toShard", toShard)
+                    .setParameter("claimedAt", LocalDateTime.now())
+                    .setParameter("staleBefore", staleBefore)
+                    .executeUpdate() == 1);
+        } catch (Exception e) {
+            logger.error("Error taking over email: {}", email, e);
+            throw new RuntimeException("Failed to take over email: " + email, e);
+        }
+    }
+
+    // null, если email свободен
+    public Integer lookup(String email) {
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                Session session = transactionTemplate.currentSession();
+                List<Integer> shards = session
+                        .createNativeQuery("select shard from user_email_shards where email = :email", Integer.class)
+                        .setParameter("email", email)
+                        .getResultList();
+                return shards.isEmpty() ? null : shards.get(0);
+            });
+        } catch (Exception e) {
+            logger.error("Error looking up email: {}", email, e);
+            throw new RuntimeException("Failed to look up email: " + email, e);
+        }
+    }
+}
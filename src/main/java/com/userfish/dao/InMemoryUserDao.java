@@ -0,0 +1,690 @@
+package com.userfish.dao;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.StampedLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+
+import jakarta.transaction.SystemException;
+
+// UserDao без базы данных для тестов и бенчмарков сервисного слоя. Повторяет поведение UserDaoImpl:
+// уникальность email среди живых строк, мягкое удаление, keyset-выборки. Outbox-события не пишутся
+public class InMemoryUserDao implements UserDao {
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryUserDao.class);
+    private static final int NAME_LENGTH = 100;
+    private static final int EMAIL_LENGTH = 150;
+    private static final Comparator<User> CHANGE_ORDER =
+            Comparator.comparing(User::get_updatedAt).thenComparingLong(User::get_id);
+
+    private final boolean softDelete;
+    private final StampedLock lock = new StampedLock();
+    // Все строки, включая tombstone-ы. Память растет с числом строк, а не с наибольшим id:
+    // bulkInsert и insertMoved приносят разреженные id (восстановление снимка, остатки шардов)
+    private final LongUserMap rows = new LongUserMap();
+    private final SortedIdIndex ids = new SortedIdIndex();
+    // Те же строки в порядке (updatedAt, id) для keyset-выборки findChangedSince
+    private final TreeSet<User> byUpdatedAt = new TreeSet<>(CHANGE_ORDER);
+    private final Map<String, Long> liveIdsByEmail = new HashMap<>();
+    private long nextId = 1;
+    private long liveCount;
+
+    public InMemoryUserDao() {
+        this(true);
+    }
+
+    public InMemoryUserDao(boolean softDelete) {
+        this.softDelete = softDelete;
+    }
+
+    @Override
+    public User save(User user) throws IllegalStateException, SystemException {
+        if (user.get_id() != 0) {
+            throw new RuntimeException("Failed to save user: detached entity passed to persist: " + user);
+        }
+        checkColumns(user, "save");
+
+        long stamp = lock.writeLock();
+        try {
+            if (liveIdsByEmail.containsKey(user.get_email())) {
+                logger.error("Constraint violation while saving user: {}", user.get_email());
+                throw new DuplicateEmailException(user.get_email(), null);
+            }
+            insert(user, LocalDateTime.now());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        logger.info("User saved successfully with ID: {}", user.get_id());
+        return user;
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        User row = row(id);
+        return Optional.ofNullable(row != null && row.get_deletedAt() == null ? copy(row) : null);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return findPage(0, Integer.MAX_VALUE);
+    }
+
+    // merge: отсутствующая строка вставляется заново, как это делает Hibernate для detached-сущности
+    @Override
+    public User update(User user) throws IllegalStateException, SystemException {
+        checkColumns(user, "update");
+        if (user.get_createdAt() == null) {
+            throw new RuntimeException("Failed to update user: createdAt must not be null");
+        }
+
+        User updated;
+        long stamp = lock.writeLock();
+        try {
+            Long owner = liveIdsByEmail.get(user.get_email());
+            User current = rowAt(user.get_id());
+            if (current == null || current.get_deletedAt() != null) {
+                if (owner != null) {
+                    throw new DuplicateEmailException(user.get_email(), null);
+                }
+                updated = copy(user);
+                updated.set_id(0);
+                insert(updated, LocalDateTime.now());
+            } else {
+                if (owner != null && owner != current.get_id()) {
+                    logger.error("Constraint violation while updating user: {}", user.get_email());
+                    throw new DuplicateEmailException(user.get_email(), null);
+                }
+                updated = copy(user);
+                boolean dirty = !current.get_name().equals(user.get_name())
+                        || current.get_age() != user.get_age()
+                        || !current.get_email().equals(user.get_email())
+                        || !current.get_createdAt().equals(user.get_createdAt());
+                updated.set_updatedAt(dirty ? LocalDateTime.now() : current.get_updatedAt());
+                updated.set_deletedAt(null);
+                liveIdsByEmail.remove(current.get_email());
+                liveIdsByEmail.put(updated.get_email(), updated.get_id());
+                putRow(updated);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        logger.info("User updated successfully: {}", updated);
+        return copy(updated);
+    }
+
+    @Override
+    public void delete(Long id) throws IllegalStateException, SystemException {
+        long stamp = lock.writeLock();
+        try {
+            User current = rowAt(id);
+            if (current == null || current.get_deletedAt() != null) {
+                logger.warn("User not found for deletion with id: {}", id);
+                return;
+            }
+            liveIdsByEmail.remove(current.get_email());
+            liveCount--;
+            if (softDelete) {
+                User deleted = copy(current);
+                LocalDateTime now = LocalDateTime.now();
+                deleted.set_deletedAt(now);
+                deleted.set_updatedAt(now);
+                putRow(deleted);
+            } else {
+                removeRow(id);
+            }
+            logger.info("User deleted successfully: {}", current);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Пачка вставляется целиком или не вставляется совсем, как одна транзакция
+    @Override
+    public List<User> saveAll(List<User> users) throws IllegalStateException, SystemException {
+        for (User user : users) {
+            if (user.get_id() != 0) {
+                throw new RuntimeException("Failed to save users: detached entity passed to persist: " + user);
+            }
+            checkColumns(user, "save");
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            LinkedHashSet<String> emails = new LinkedHashSet<>();
+            for (User user : users) {
+                if (!emails.add(user.get_email()) || liveIdsByEmail.containsKey(user.get_email())) {
+                    logger.error("Constraint violation while saving batch of {} users", users.size());
+                    throw new DuplicateEmailException(null, null);
+                }
+            }
+            LocalDateTime now = LocalDateTime.now();
+            for (User user : users) {
+                insert(user, now);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        logger.info("Saved batch of {} users", users.size());
+        return users;
+    }
+
+    @Override
+    public List<User> findAllById(Collection<Long> ids) {
+        List<User> users = new ArrayList<>(ids.size());
+        for (Long id : new LinkedHashSet<>(ids)) {
+            findById(id).ifPresent(users::add);
+        }
+        logger.debug("Found {} of {} requested users", users.size(), ids.size());
+        return users;
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        List<User> page;
+        long stamp = lock.readLock();
+        try {
+            page = scan(afterId, Long.MAX_VALUE, limit, false);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        page.replaceAll(InMemoryUserDao::copy);
+        return page;
+    }
+
+    @Override
+    public List<User> findPageInRange(long afterId, long beforeId, int limit) {
+        List<User> page;
+        long stamp = lock.readLock();
+        try {
+            page = scan(afterId, beforeId, limit, false);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        page.replaceAll(InMemoryUserDao::copy);
+        return page;
+    }
+
+    @Override
+    public List<Long> findIdBoundaries(int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Number of parts must be positive number");
+        }
+        long stamp = lock.readLock();
+        try {
+            long[] liveIds = new long[(int) liveCount];
+            int n = 0;
+            for (int position = 0; position < ids.size(); position++) {
+                User row = rows.get(ids.get(position));
+                if (row != null && row.get_deletedAt() == null) {
+                    liveIds[n++] = row.get_id();
+                }
+            }
+            return boundaries(liveIds, parts);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public long count() {
+        long stamp = lock.tryOptimisticRead();
+        long count = liveCount;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = liveCount;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        long stamp = lock.readLock();
+        try {
+            return liveIdsByEmail.containsKey(email);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) throws IllegalStateException, SystemException {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    // Повтор email внутри пачки склеивается: побеждает последняя запись, как в UserDaoImpl
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) throws IllegalStateException, SystemException {
+        Map<String, User> byEmail = new LinkedHashMap<>();
+        for (User user : users) {
+            checkColumns(user, "upsert");
+            byEmail.put(user.get_email(), user);
+        }
+
+        Map<String, Boolean> insertedByEmail = new HashMap<>();
+        long stamp = lock.writeLock();
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            for (User user : byEmail.values()) {
+                Long id = liveIdsByEmail.get(user.get_email());
+                if (id == null) {
+                    user.set_id(0);
+                    insert(user, now);
+                    insertedByEmail.put(user.get_email(), true);
+                } else {
+                    User current = rows.get(id);
+                    User updated = copy(current);
+                    updated.set_name(user.get_name());
+                    updated.set_age(user.get_age());
+                    updated.set_updatedAt(now);
+                    putRow(updated);
+                    user.set_id(id);
+                    user.set_createdAt(current.get_createdAt());
+                    user.set_updatedAt(now);
+                    insertedByEmail.put(user.get_email(), false);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        List<UpsertResult> results = new ArrayList<>(users.size());
+        for (User user : users) {
+            results.add(new UpsertResult(byEmail.get(user.get_email()), insertedByEmail.get(user.get_email())));
+        }
+        logger.info("Upserted {} users", byEmail.size());
+        return results;
+    }
+
+    @Override
+    public boolean restore(Long id) throws IllegalStateException, SystemException {
+        long stamp = lock.writeLock();
+        try {
+            User current = rowAt(id);
+            if (current == null || current.get_deletedAt() == null) {
+                logger.warn("No deleted user to restore with id: {}", id);
+                return false;
+            }
+            if (liveIdsByEmail.containsKey(current.get_email())) {
+                logger.error("Constraint violation while restoring user with id: {}", id);
+                throw new DuplicateEmailException(null, null);
+            }
+            User restored = copy(current);
+            restored.set_deletedAt(null);
+            restored.set_updatedAt(LocalDateTime.now());
+            putRow(restored);
+            liveIdsByEmail.put(restored.get_email(), id);
+            liveCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        logger.info("User restored with id: {}", id);
+        return true;
+    }
+
+    @Override
+    public int purgeDeleted(LocalDateTime deletedBefore, int batchSize) {
+        List<Long> expired = new ArrayList<>();
+        long stamp = lock.writeLock();
+        try {
+            for (int position = 0; position < ids.size() && expired.size() < batchSize; position++) {
+                User row = rows.get(ids.get(position));
+                if (row != null && row.get_deletedAt() != null && row.get_deletedAt().isBefore(deletedBefore)) {
+                    expired.add(row.get_id());
+                }
+            }
+            for (Long id : expired) {
+                removeRow(id);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return expired.size();
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, long afterId, int limit) {
+        User position = new User();
+        position.set_updatedAt(LocalDateTime.ofInstant(since, ZoneId.systemDefault()));
+        position.set_id(afterId);
+        List<User> page = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            for (User row : byUpdatedAt.tailSet(position, false)) {
+                if (page.size() == limit) {
+                    break;
+                }
+                page.add(row);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        page.replaceAll(InMemoryUserDao::copy);
+        return page;
+    }
+
+    @Override
+    public Map<Integer, Long> countByAgeBucket(int bucketSize) {
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("Age bucket size must be positive number");
+        }
+        Map<Integer, Long> buckets = new TreeMap<>();
+        long stamp = lock.readLock();
+        try {
+            rows.forEachValue(row -> {
+                if (row.get_deletedAt() == null) {
+                    buckets.merge(row.get_age() / bucketSize * bucketSize, 1L, Long::sum);
+                }
+            });
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return new LinkedHashMap<>(buckets);
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsPerDay(LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> signups = new TreeMap<>();
+        long stamp = lock.readLock();
+        try {
+            rows.forEachValue(row -> {
+                if (row.get_deletedAt() == null) {
+                    LocalDate day = row.get_createdAt().toLocalDate();
+                    if (!day.isBefore(from) && day.isBefore(to)) {
+                        signups.merge(day, 1L, Long::sum);
+                    }
+                }
+            });
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return new LinkedHashMap<>(signups);
+    }
+
+    @Override
+    public Map<String, Long> countByEmailDomain(int limit) {
+        Map<String, Long> domains = new HashMap<>();
+        long stamp = lock.readLock();
+        try {
+            for (String email : liveIdsByEmail.keySet()) {
+                domains.merge(email.substring(email.indexOf('@') + 1).toLowerCase(), 1L, Long::sum);
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return topDomains(domains, limit);
+    }
+
+    // Строки сохраняют свои id, счетчик сдвигается за максимальный из них
+    @Override
+    public void bulkInsert(List<User> users) throws IllegalStateException, SystemException {
+        long maxId = 0;
+        for (User user : users) {
+            if (user.get_id() <= 0 || user.get_createdAt() == null) {
+                throw new RuntimeException("Failed to bulk insert users: id and createdAt are required: " + user);
+            }
+            checkColumns(user, "bulk insert");
+            maxId = Math.max(maxId, user.get_id());
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            LinkedHashSet<String> emails = new LinkedHashSet<>();
+            LinkedHashSet<Long> ids = new LinkedHashSet<>();
+            for (User user : users) {
+                if (!ids.add(user.get_id()) || rowAt(user.get_id()) != null) {
+                    throw new RuntimeException("Failed to bulk insert users: duplicate id " + user.get_id());
+                }
+                if (!emails.add(user.get_email()) || liveIdsByEmail.containsKey(user.get_email())) {
+                    logger.error("Constraint violation while bulk inserting {} users", users.size());
+                    throw new DuplicateEmailException(null, null);
+                }
+            }
+            List<User> inserted = new ArrayList<>(users.size());
+            for (User user : users) {
+                User row = copy(user);
+                if (row.get_updatedAt() == null) {
+                    row.set_updatedAt(row.get_createdAt());
+                }
+                row.set_deletedAt(null);
+                inserted.add(row);
+                liveIdsByEmail.put(row.get_email(), row.get_id());
+                liveCount++;
+            }
+            putNewRows(inserted);
+            nextId = Math.max(nextId, maxId + 1);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        logger.info("Bulk inserted {} users", users.size());
+    }
+
+    @Override
+    public List<User> findPageWithDeleted(long afterId, int limit) {
+        List<User> page;
+        long stamp = lock.readLock();
+        try {
+            page = scan(afterId, Long.MAX_VALUE, limit, true);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        page.replaceAll(InMemoryUserDao::copy);
+        return page;
+    }
+
+    @Override
+    public int insertMoved(List<User> users) throws IllegalStateException, SystemException {
+        long maxId = 0;
+        for (User user : users) {
+            if (user.get_id() <= 0 || user.get_createdAt() == null) {
+                throw new RuntimeException("Failed to insert moved users: id and createdAt are required: " + user);
+            }
+            checkColumns(user, "insert moved");
+            maxId = Math.max(maxId, user.get_id());
+        }
+
+        long stamp = lock.writeLock();
+        try {
+            List<User> missing = new ArrayList<>();
+            LinkedHashSet<Long> ids = new LinkedHashSet<>();
+            LinkedHashSet<String> emails = new LinkedHashSet<>();
+            for (User user : users) {
+                if (!ids.add(user.get_id()) || rowAt(user.get_id()) != null) {
+                    continue;
+                }
+                if (user.get_deletedAt() == null
+                        && (!emails.add(user.get_email()) || liveIdsByEmail.containsKey(user.get_email()))) {
+                    logger.error("Constraint violation while inserting {} moved users", users.size());
+                    throw new DuplicateEmailException(null, null);
+                }
+                missing.add(user);
+            }
+            List<User> inserted = new ArrayList<>(missing.size());
+            for (User user : missing) {
+                User row = copy(user);
+                if (row.get_updatedAt() == null) {
+                    row.set_updatedAt(row.get_createdAt());
+                }
+                inserted.add(row);
+                if (row.get_deletedAt() == null) {
+                    liveIdsByEmail.put(row.get_email(), row.get_id());
+                    liveCount++;
+                }
+            }
+            putNewRows(inserted);
+            nextId = Math.max(nextId, maxId + 1);
+            logger.info("Inserted {} of {} moved users", missing.size(), users.size());
+            return missing.size();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int removeMoved(Collection<Long> ids) throws IllegalStateException, SystemException {
+        int removed = 0;
+        long stamp = lock.writeLock();
+        try {
+            for (Long id : ids) {
+                User row = rowAt(id);
+                if (row == null) {
+                    continue;
+                }
+                removeRow(id);
+                if (row.get_deletedAt() == null) {
+                    liveIdsByEmail.remove(row.get_email(), id);
+                    liveCount--;
+                }
+                removed++;
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return removed;
+    }
+
+    // Чтение без блокировки: строки неизменяемы после публикации, запись заменяет ячейку целиком
+    private User row(Long id) {
+        long stamp = lock.tryOptimisticRead();
+        User row = rowAt(id);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                row = rowAt(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return row;
+    }
+
+    private User rowAt(Long id) {
+        return id != null && id > 0 ? rows.get(id) : null;
+    }
+
+    // Строки с id из (afterId, beforeId) по возрастанию id; вызывается под блокировкой
+    private List<User> scan(long afterId, long beforeId, int limit, boolean withDeleted) {
+        List<User> page = new ArrayList<>();
+        for (int position = ids.positionAfter(afterId); position < ids.size() && page.size() < limit; position++) {
+            long id = ids.get(position);
+            if (id >= beforeId) {
+                break;
+            }
+            User row = rows.get(id);
+            if (row != null && (withDeleted || row.get_deletedAt() == null)) {
+                page.add(row);
+            }
+        }
+        return page;
+    }
+
+    // Вызывается под блокировкой записи: строка заменяется целиком сразу во всех индексах
+    private void putRow(User row) {
+        User previous = rows.put(row.get_id(), row);
+        if (previous == null) {
+            ids.add(row.get_id());
+        } else {
+            byUpdatedAt.remove(previous);
+        }
+        byUpdatedAt.add(row);
+    }
+
+    // Строки с id, которых еще нет; id из середины вливаются в индекс одним проходом
+    private void putNewRows(List<User> newRows) {
+        long[] newIds = new long[newRows.size()];
+        for (int i = 0; i < newRows.size(); i++) {
+            User row = newRows.get(i);
+            rows.put(row.get_id(), row);
+            byUpdatedAt.add(row);
+            newIds[i] = row.get_id();
+        }
+        Arrays.sort(newIds);
+        ids.addAll(newIds);
+    }
+
+    private void removeRow(long id) {
+        User previous = rows.remove(id);
+        if (previous != null) {
+            byUpdatedAt.remove(previous);
+            ids.markRemoved(rows::containsKey);
+        }
+    }
+
+    // Вызывается под блокировкой записи; как и @PrePersist, проставляет id и даты в переданном объекте
+    private void insert(User user, LocalDateTime now) {
+        long id = nextId++;
+        user.set_id(id);
+        if (user.get_createdAt() == null) {
+            user.set_createdAt(now);
+        }
+        user.set_updatedAt(user.get_createdAt());
+        user.set_deletedAt(null);
+        putRow(copy(user));
+        liveIdsByEmail.put(user.get_email(), id);
+        liveCount++;
+    }
+
+    // Равные по числу id части отсортированного массива, как ntile в базе
+    static List<Long> boundaries(long[] sortedIds, int parts) {
+        List<Long> boundaries = new ArrayList<>();
+        if (sortedIds.length == 0) {
+            return boundaries;
+        }
+        boundaries.add(sortedIds[0]);
+        int buckets = Math.min(parts, sortedIds.length);
+        for (int bucket = 1; bucket <= buckets; bucket++) {
+            boundaries.add(sortedIds[(int) ((long) bucket * sortedIds.length / buckets) - 1] + 1);
+        }
+        return boundaries;
+    }
+
+    static Map<String, Long> topDomains(Map<String, Long> domains, int limit) {
+        Map<String, Long> top = new LinkedHashMap<>();
+        domains.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .forEach(entry -> top.put(entry.getKey(), entry.getValue()));
+        return top;
+    }
+
+    private static void checkColumns(User user, String operation) {
+        if (user.get_name() == null || user.get_email() == null) {
+            throw new RuntimeException("Failed to " + operation + " user: not-null property references a null value");
+        }
+        if (user.get_name().length() > NAME_LENGTH || user.get_email().length() > EMAIL_LENGTH) {
+            throw new RuntimeException("Failed to " + operation + " user: value too long for column");
+        }
+    }
+
+    private static User copy(User user) {
+        User copy = new User();
+        copy.set_id(user.get_id());
+        copy.set_name(user.get_name());
+        copy.set_age(user.get_age());
+        copy.set_email(user.get_email());
+        copy.set_createdAt(user.get_createdAt());
+        copy.set_updatedAt(user.get_updatedAt());
+        copy.set_deletedAt(user.get_deletedAt());
+        return copy;
+    }
+}
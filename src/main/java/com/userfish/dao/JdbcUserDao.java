@@ -0,0 +1,878 @@
+package com.userfish.dao;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.Deadline;
+import com.userfish.util.DeadlineCounters;
+import com.userfish.util.DeadlineExceededException;
+
+import jakarta.transaction.SystemException;
+
+// UserDao без Hibernate для горячих путей: ни сессии, ни контекста персистентности, ни рефлексии.
+// Строка раскладывается в User по номерам колонок, запись пачками идет через addBatch/executeBatch.
+// Тексты запросов постоянные, поэтому подготовленные операторы переиспользуются кэшем пула (c3p0 max_statements)
+// и драйвера PostgreSQL (серверные prepared statements после prepareThreshold вызовов).
+// Семантика та же, что у UserDaoImpl, включая события outbox в той же транзакции
+public class JdbcUserDao implements UserDao, DeadlineCounters {
+    private static final Logger logger = LoggerFactory.getLogger(JdbcUserDao.class);
+    // 5 параметров на строку, PostgreSQL допускает не больше 65535 параметров в запросе
+    private static final int UPSERT_CHUNK_SIZE = 1000;
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final String QUERY_CANCELED = "57014";
+
+    private static final String COLUMNS = "_id, name, age, email, createdAt, updatedAt, deletedAt";
+    private static final String FIND_BY_ID =
+            "select " + COLUMNS + " from users where _id = ? and deletedAt is null";
+    private static final String FIND_BY_ID_FOR_UPDATE = FIND_BY_ID + " for update";
+    private static final String FIND_ALL =
+            "select " + COLUMNS + " from users where deletedAt is null";
+    private static final String FIND_ALL_BY_ID =
+            "select " + COLUMNS + " from users where _id = any(?) and deletedAt is null";
+    private static final String FIND_PAGE =
+            "select " + COLUMNS + " from users where _id > ? and deletedAt is null order by _id limit ?";
+    private static final String FIND_PAGE_WITH_DELETED =
+            "select " + COLUMNS + " from users where _id > ? order by _id limit ?";
+    private static final String FIND_PAGE_IN_RANGE = "select " + COLUMNS + " from users"
+            + " where _id > ? and _id < ? and deletedAt is null order by _id limit ?";
+    private static final String ID_BOUNDS = "select min(_id), max(_id) from users where deletedAt is null";
+    private static final String FIND_CHANGED_SINCE =
+            "select " + COLUMNS + " from users"
+            + " where updatedAt > ? or (updatedAt = ? and _id > ?) order by updatedAt, _id limit ?";
+    private static final String COUNT = "select count(*) from users where deletedAt is null";
+    private static final String EXISTS_BY_EMAIL =
+            "select 1 from users where email = ? and deletedAt is null limit 1";
+    private static final String INSERT =
+            "insert into users (name, age, email, createdAt, updatedAt) values (?, ?, ?, ?, ?)";
+    private static final String UPDATE =
+            "update users set name = ?, age = ?, email = ?, createdAt = ?, updatedAt = ? where _id = ?";
+    private static final String SOFT_DELETE =
+            "update users set deletedAt = ?, updatedAt = ? where _id = ? and deletedAt is null";
+    private static final String HARD_DELETE = "delete from users where _id = ? and deletedAt is null";
+    private static final String RESTORE =
+            "update users set deletedAt = null, updatedAt = ? where _id = ? and deletedAt is not null";
+    private static final String PURGE_DELETED = "delete from users where _id in ("
+            + "select _id from users where deletedAt is not null and deletedAt < ? limit ?)";
+    private static final String REMOVE_MOVED = "delete from users where _id = any(?)";
+    private static final String RECORD_CHANGE =
+            "insert into user_changes (userId, type, changedAt) values (?, ?, ?)";
+    private static final String SIGNUPS_PER_DAY =
+            "select cast(createdAt as date), count(*) from users"
+            + " where deletedAt is null and createdAt >= ? and createdAt < ?"
+            + " group by cast(createdAt as date) order by cast(createdAt as date)";
+    private static final String DOMAIN = "lower(substring(email from position('@' in email) + 1))";
+    private static final String COUNT_BY_EMAIL_DOMAIN =
+            "select " + DOMAIN + ", count(*) from users where deletedAt is null"
+            + " group by " + DOMAIN + " order by count(*) desc, " + DOMAIN + " limit ?";
+
+    private final DataSource dataSource;
+    private final boolean softDelete;
+    private final LongAdder expiredBeforeStart = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public JdbcUserDao(DataSource dataSource) {
+        this(dataSource, true);
+    }
+
+    public JdbcUserDao(DataSource dataSource, boolean softDelete) {
+        this.dataSource = dataSource;
+        this.softDelete = softDelete;
+    }
+
+    @Override
+    public long getExpiredBeforeStartCount() {
+        return expiredBeforeStart.sum();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    @FunctionalInterface
+    private interface SqlWork<T> {
+        T apply(Connection connection) throws SQLException;
+    }
+
+    @Override
+    public User save(User user) throws IllegalStateException, SystemException {
+        try {
+            inTransaction(connection -> {
+                LocalDateTime now = LocalDateTime.now();
+                try (PreparedStatement statement = prepareInsert(connection)) {
+                    bindInsert(statement, user, now);
+                    statement.executeUpdate();
+                    readGeneratedIds(statement, List.of(user));
+                }
+                recordChanges(connection, List.of(user.get_id()), UserChangeEvent.Type.CREATED);
+                return null;
+            });
+            logger.info("User saved successfully with ID: {}", user.get_id());
+            return user;
+        } catch (SQLException e) {
+            if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                logger.error("Constraint violation while saving user: {}", user.get_email(), e);
+                throw new DuplicateEmailException(user.get_email(), e);
+            }
+            logger.error("Error saving user: {}", user, e);
+            throw failure("Failed to save user: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, FIND_BY_ID)) {
+                    statement.setLong(1, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return Optional.ofNullable(resultSet.next() ? mapRow(resultSet) : null);
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding user by id: {}", id, e);
+            throw failure("Failed to find user by id: " + id, e);
+        }
+    }
+
+    @Override
+    public List<User> findAll() {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, FIND_ALL)) {
+                    return mapRows(statement);
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding all users", e);
+            throw failure("Failed to retrieve users", e);
+        }
+    }
+
+    // Как merge в Hibernate: отсутствующая строка вставляется заново, updatedAt меняется только при изменениях
+    @Override
+    public User update(User user) throws IllegalStateException, SystemException {
+        try {
+            User updated = inTransaction(connection -> {
+                User current;
+                try (PreparedStatement statement = prepare(connection, FIND_BY_ID_FOR_UPDATE)) {
+                    statement.setLong(1, user.get_id());
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        current = resultSet.next() ? mapRow(resultSet) : null;
+                    }
+                }
+
+                User result = copy(user);
+                LocalDateTime now = LocalDateTime.now();
+                if (current == null) {
+                    try (PreparedStatement statement = prepareInsert(connection)) {
+                        bindInsert(statement, result, result.get_createdAt());
+                        statement.executeUpdate();
+                        readGeneratedIds(statement, List.of(result));
+                    }
+                } else if (isDirty(current, user)) {
+                    try (PreparedStatement statement = prepare(connection, UPDATE)) {
+                        statement.setString(1, user.get_name());
+                        statement.setInt(2, user.get_age());
+                        statement.setString(3, user.get_email());
+                        statement.setObject(4, user.get_createdAt());
+                        statement.setObject(5, now);
+                        statement.setLong(6, user.get_id());
+                        statement.executeUpdate();
+                    }
+                    result.set_updatedAt(now);
+                } else {
+                    result.set_updatedAt(current.get_updatedAt());
+                }
+                result.set_deletedAt(null);
+                recordChanges(connection, List.of(result.get_id()), UserChangeEvent.Type.UPDATED);
+                return result;
+            });
+            logger.info("User updated successfully: {}", updated);
+            return updated;
+        } catch (SQLException e) {
+            if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                logger.error("Constraint violation while updating user: {}", user.get_email(), e);
+                throw new DuplicateEmailException(user.get_email(), e);
+            }
+            logger.error("Error updating user: {}", user, e);
+            throw failure("Failed to update user", e);
+        }
+    }
+
+    @Override
+    public void delete(Long id) throws IllegalStateException, SystemException {
+        try {
+            boolean deleted = inTransaction(connection -> {
+                int rows;
+                if (softDelete) {
+                    LocalDateTime now = LocalDateTime.now();
+                    try (PreparedStatement statement = prepare(connection, SOFT_DELETE)) {
+                        statement.setObject(1, now);
+                        statement.setObject(2, now);
+                        statement.setLong(3, id);
+                        rows = statement.executeUpdate();
+                    }
+                } else {
+                    try (PreparedStatement statement = prepare(connection, HARD_DELETE)) {
+                        statement.setLong(1, id);
+                        rows = statement.executeUpdate();
+                    }
+                }
+                if (rows > 0) {
+                    recordChanges(connection, List.of(id), UserChangeEvent.Type.DELETED);
+                }
+                return rows > 0;
+            });
+            if (deleted) {
+                logger.info("User deleted successfully with id: {}", id);
+            } else {
+                logger.warn("User not found for deletion with id: {}", id);
+            }
+        } catch (SQLException e) {
+            logger.error("Error deleting user with id: {}", id, e);
+            throw failure("Failed to delete user with id: " + id, e);
+        }
+    }
+
+    // Один пакет INSERT и один пакет событий на всю пачку, в одной транзакции
+    @Override
+    public List<User> saveAll(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return users;
+        }
+        try {
+            inTransaction(connection -> {
+                LocalDateTime now = LocalDateTime.now();
+                try (PreparedStatement statement = prepareInsert(connection)) {
+                    for (User user : users) {
+                        bindInsert(statement, user, now);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                    readGeneratedIds(statement, users);
+                }
+                List<Long> ids = new ArrayList<>(users.size());
+                for (User user : users) {
+                    ids.add(user.get_id());
+                }
+                recordChanges(connection, ids, UserChangeEvent.Type.CREATED);
+                return null;
+            });
+            logger.info("Saved batch of {} users", users.size());
+            return users;
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                logger.error("Constraint violation while saving batch of {} users", users.size(), e);
+                throw new DuplicateEmailException(null, e);
+            }
+            logger.error("Error saving batch of {} users", users.size(), e);
+            throw failure("Failed to save users: " + e.getMessage(), e);
+        }
+    }
+
+    // Массив id передается одним параметром, текст запроса не зависит от их числа
+    @Override
+    public List<User> findAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return withConnection(connection -> {
+                Array idArray = connection.createArrayOf("bigint", new LinkedHashSet<>(ids).toArray());
+                try (PreparedStatement statement = prepare(connection, FIND_ALL_BY_ID)) {
+                    statement.setArray(1, idArray);
+                    return mapRows(statement);
+                } finally {
+                    idArray.free();
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding users by ids", e);
+            throw failure("Failed to find users by ids", e);
+        }
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, FIND_PAGE)) {
+                    statement.setLong(1, afterId);
+                    statement.setInt(2, limit);
+                    return mapRows(statement);
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding users after id: {}", afterId, e);
+            throw failure("Failed to retrieve users after id: " + afterId, e);
+        }
+    }
+
+    @Override
+    public List<User> findPageInRange(long afterId, long beforeId, int limit) {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, FIND_PAGE_IN_RANGE)) {
+                    statement.setLong(1, afterId);
+                    statement.setLong(2, beforeId);
+                    statement.setInt(3, limit);
+                    return mapRows(statement);
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding users between ids {} and {}", afterId, beforeId, e);
+            throw failure("Failed to retrieve users between ids " + afterId + " and " + beforeId, e);
+        }
+    }
+
+    // Число частей подставляется в ntile числом, как размер интервала в countByAgeBucket.
+    // ntile читает все живые строки (deletedAt проверяется в таблице), так что это полный лишний проход
+    @Override
+    public List<Long> findIdBoundaries(int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Number of parts must be positive number");
+        }
+        String sql = parts == 1 ? ID_BOUNDS : "select min(_id), max(_id) from ("
+                + "select _id, ntile(" + parts + ") over (order by _id) as bucket"
+                + " from users where deletedAt is null) t group by bucket order by bucket";
+        try {
+            return withConnection(connection -> {
+                List<Long> boundaries = new ArrayList<>();
+                try (PreparedStatement statement = prepare(connection, sql);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        long min = resultSet.getLong(1);
+                        if (resultSet.wasNull()) {
+                            continue;
+                        }
+                        if (boundaries.isEmpty()) {
+                            boundaries.add(min);
+                        }
+                        boundaries.add(resultSet.getLong(2) + 1);
+                    }
+                }
+                return boundaries;
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding id boundaries for {} parts", parts, e);
+            throw failure("Failed to find id boundaries", e);
+        }
+    }
+
+    @Override
+    public long count() {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, COUNT);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    resultSet.next();
+                    return resultSet.getLong(1);
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error counting users", e);
+            throw failure("Failed to count users", e);
+        }
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, EXISTS_BY_EMAIL)) {
+                    statement.setString(1, email);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next();
+                    }
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error checking email: {}", email, e);
+            throw failure("Failed to check email: " + email, e);
+        }
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) throws IllegalStateException, SystemException {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    // Тот же INSERT ... ON CONFLICT, что в UserDaoImpl: работает только с частичным индексом PostgreSQL
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return inTransaction(connection -> {
+                // Один оператор не может обновить строку дважды, поэтому дубликаты email внутри пачки склеиваются
+                Map<String, User> byEmail = new LinkedHashMap<>();
+                for (User user : users) {
+                    byEmail.put(user.get_email(), user);
+                }
+                List<User> unique = new ArrayList<>(byEmail.values());
+
+                Map<String, Boolean> insertedByEmail = new LinkedHashMap<>();
+                for (int from = 0; from < unique.size(); from += UPSERT_CHUNK_SIZE) {
+                    upsertChunk(connection, unique.subList(from, Math.min(from + UPSERT_CHUNK_SIZE, unique.size())),
+                            byEmail, insertedByEmail);
+                }
+
+                List<UpsertResult> results = new ArrayList<>(users.size());
+                for (User user : users) {
+                    results.add(new UpsertResult(byEmail.get(user.get_email()), insertedByEmail.get(user.get_email())));
+                }
+                logger.info("Upserted {} users", unique.size());
+                return results;
+            });
+        } catch (SQLException e) {
+            logger.error("Error upserting batch of {} users", users.size(), e);
+            throw failure("Failed to upsert users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean restore(Long id) throws IllegalStateException, SystemException {
+        try {
+            boolean restored = inTransaction(connection -> {
+                int rows;
+                try (PreparedStatement statement = prepare(connection, RESTORE)) {
+                    statement.setObject(1, LocalDateTime.now());
+                    statement.setLong(2, id);
+                    rows = statement.executeUpdate();
+                }
+                if (rows > 0) {
+                    recordChanges(connection, List.of(id), UserChangeEvent.Type.RESTORED);
+                }
+                return rows > 0;
+            });
+            if (restored) {
+                logger.info("User restored with id: {}", id);
+            } else {
+                logger.warn("No deleted user to restore with id: {}", id);
+            }
+            return restored;
+        } catch (SQLException e) {
+            if (UNIQUE_VIOLATION.equals(e.getSQLState())) {
+                logger.error("Constraint violation while restoring user with id: {}", id, e);
+                throw new DuplicateEmailException(null, e);
+            }
+            logger.error("Error restoring user with id: {}", id, e);
+            throw failure("Failed to restore user with id: " + id, e);
+        }
+    }
+
+    @Override
+    public int purgeDeleted(LocalDateTime deletedBefore, int batchSize) {
+        try {
+            return inTransaction(connection -> {
+                try (PreparedStatement statement = prepare(connection, PURGE_DELETED)) {
+                    statement.setObject(1, deletedBefore);
+                    statement.setInt(2, batchSize);
+                    return statement.executeUpdate();
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error purging users deleted before: {}", deletedBefore, e);
+            throw failure("Failed to purge deleted users", e);
+        }
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, long afterId, int limit) {
+        LocalDateTime sinceTime = LocalDateTime.ofInstant(since, ZoneId.systemDefault());
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, FIND_CHANGED_SINCE)) {
+                    statement.setObject(1, sinceTime);
+                    statement.setObject(2, sinceTime);
+                    statement.setLong(3, afterId);
+                    statement.setInt(4, limit);
+                    return mapRows(statement);
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding users changed since: {}", since, e);
+            throw failure("Failed to find users changed since: " + since, e);
+        }
+    }
+
+    // Размер интервала подставляется в запрос числом: параметр в group by PostgreSQL не считает тем же выражением
+    @Override
+    public Map<Integer, Long> countByAgeBucket(int bucketSize) {
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("Age bucket size must be positive number");
+        }
+        String bucket = "age / " + bucketSize + " * " + bucketSize;
+        try {
+            return withConnection(connection -> {
+                Map<Integer, Long> buckets = new LinkedHashMap<>();
+                try (PreparedStatement statement = prepare(connection, "select " + bucket + ", count(*) from users"
+                        + " where deletedAt is null group by " + bucket + " order by " + bucket);
+                     ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        buckets.put(resultSet.getInt(1), resultSet.getLong(2));
+                    }
+                }
+                return buckets;
+            });
+        } catch (SQLException e) {
+            logger.error("Error counting users by age bucket of {}", bucketSize, e);
+            throw failure("Failed to count users by age", e);
+        }
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsPerDay(LocalDate from, LocalDate to) {
+        try {
+            return withConnection(connection -> {
+                Map<LocalDate, Long> signups = new LinkedHashMap<>();
+                try (PreparedStatement statement = prepare(connection, SIGNUPS_PER_DAY)) {
+                    statement.setObject(1, from.atStartOfDay());
+                    statement.setObject(2, to.atStartOfDay());
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            signups.put(resultSet.getObject(1, LocalDate.class), resultSet.getLong(2));
+                        }
+                    }
+                }
+                return signups;
+            });
+        } catch (SQLException e) {
+            logger.error("Error counting signups from {} to {}", from, to, e);
+            throw failure("Failed to count signups per day", e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> countByEmailDomain(int limit) {
+        try {
+            return withConnection(connection -> {
+                Map<String, Long> domains = new LinkedHashMap<>();
+                try (PreparedStatement statement = prepare(connection, COUNT_BY_EMAIL_DOMAIN)) {
+                    statement.setInt(1, limit);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            domains.put(resultSet.getString(1), resultSet.getLong(2));
+                        }
+                    }
+                }
+                return domains;
+            });
+        } catch (SQLException e) {
+            logger.error("Error counting users by email domain", e);
+            throw failure("Failed to count users by email domain", e);
+        }
+    }
+
+    @Override
+    public void bulkInsert(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return;
+        }
+        try {
+            inTransaction(connection -> {
+                UserBulkInsert.insert(connection, users);
+                return null;
+            });
+            logger.info("Bulk inserted {} users", users.size());
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                logger.error("Constraint violation while bulk inserting {} users", users.size(), e);
+                throw new DuplicateEmailException(null, e);
+            }
+            logger.error("Error bulk inserting {} users", users.size(), e);
+            throw failure("Failed to bulk insert users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<User> findPageWithDeleted(long afterId, int limit) {
+        try {
+            return withConnection(connection -> {
+                try (PreparedStatement statement = prepare(connection, FIND_PAGE_WITH_DELETED)) {
+                    statement.setLong(1, afterId);
+                    statement.setInt(2, limit);
+                    return mapRows(statement);
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error finding users with deleted after id: {}", afterId, e);
+            throw failure("Failed to retrieve users with deleted after id: " + afterId, e);
+        }
+    }
+
+    @Override
+    public int insertMoved(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return 0;
+        }
+        try {
+            int inserted = inTransaction(connection -> UserBulkInsert.insertMissing(connection, users));
+            logger.info("Inserted {} of {} moved users", inserted, users.size());
+            return inserted;
+        } catch (SQLException e) {
+            if (isUniqueViolation(e)) {
+                logger.error("Constraint violation while inserting {} moved users", users.size(), e);
+                throw new DuplicateEmailException(null, e);
+            }
+            logger.error("Error inserting {} moved users", users.size(), e);
+            throw failure("Failed to insert moved users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int removeMoved(Collection<Long> ids) throws IllegalStateException, SystemException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try {
+            return inTransaction(connection -> {
+                Array idArray = connection.createArrayOf("bigint", new LinkedHashSet<>(ids).toArray());
+                try (PreparedStatement statement = prepare(connection, REMOVE_MOVED)) {
+                    statement.setArray(1, idArray);
+                    return statement.executeUpdate();
+                } finally {
+                    idArray.free();
+                }
+            });
+        } catch (SQLException e) {
+            logger.error("Error removing {} moved users", ids.size(), e);
+            throw failure("Failed to remove moved users", e);
+        }
+    }
+
+    private void upsertChunk(Connection connection, List<User> chunk, Map<String, User> byEmail,
+                             Map<String, Boolean> insertedByEmail) throws SQLException {
+        StringBuilder sql = new StringBuilder("insert into users (name, age, email, createdAt, updatedAt) values ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i > 0 ? ", (?, ?, ?, ?, ?)" : "(?, ?, ?, ?, ?)");
+        }
+        sql.append(" on conflict (email) where deletedAt is null do update")
+                .append(" set name = excluded.name, age = excluded.age, updatedAt = excluded.updatedAt")
+                .append(" returning _id, email, createdAt, (xmax = 0)");
+
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> created = new ArrayList<>();
+        List<Long> updated = new ArrayList<>();
+        try (PreparedStatement statement = prepare(connection, sql.toString())) {
+            int index = 1;
+            for (User user : chunk) {
+                statement.setString(index++, user.get_name());
+                statement.setInt(index++, user.get_age());
+                statement.setString(index++, user.get_email());
+                statement.setObject(index++, user.get_createdAt() != null ? user.get_createdAt() : now);
+                statement.setObject(index++, now);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    User user = byEmail.get(resultSet.getString(2));
+                    boolean inserted = resultSet.getBoolean(4);
+                    user.set_id(resultSet.getLong(1));
+                    user.set_createdAt(resultSet.getObject(3, LocalDateTime.class));
+                    user.set_updatedAt(now);
+                    insertedByEmail.put(user.get_email(), inserted);
+                    (inserted ? created : updated).add(user.get_id());
+                }
+            }
+        }
+        recordChanges(connection, created, UserChangeEvent.Type.CREATED);
+        recordChanges(connection, updated, UserChangeEvent.Type.UPDATED);
+    }
+
+    // Событие пишется в той же транзакции, что и изменение пользователя (transactional outbox)
+    private void recordChanges(Connection connection, List<Long> userIds, UserChangeEvent.Type type)
+            throws SQLException {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        try (PreparedStatement statement = prepare(connection, RECORD_CHANGE)) {
+            for (Long userId : userIds) {
+                statement.setLong(1, userId);
+                statement.setString(2, type.name());
+                statement.setObject(3, now);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    private <T> T withConnection(SqlWork<T> work) throws SQLException {
+        checkDeadline();
+        try (Connection connection = dataSource.getConnection()) {
+            return work.apply(connection);
+        }
+    }
+
+    private <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        checkDeadline();
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                T result = work.apply(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                rollback(connection);
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    // Оставшийся срок вызова становится таймаутом оператора, как в HibernateTransactionTemplate
+    private PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        applyDeadline(statement);
+        return statement;
+    }
+
+    private PreparedStatement prepareInsert(Connection connection) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS);
+        applyDeadline(statement);
+        return statement;
+    }
+
+    private void applyDeadline(Statement statement) throws SQLException {
+        Deadline deadline = Deadline.current();
+        if (deadline != null) {
+            long remainingMillis = deadline.remainingMillis();
+            if (remainingMillis <= 0) {
+                timedOut.increment();
+                throw new DeadlineExceededException(deadline, null);
+            }
+            statement.setQueryTimeout((int) Math.min(Integer.MAX_VALUE, (remainingMillis + 999) / 1000));
+        }
+    }
+
+    private void checkDeadline() {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            expiredBeforeStart.increment();
+            throw new DeadlineExceededException(deadline, null);
+        }
+    }
+
+    private static void bindInsert(PreparedStatement statement, User user, LocalDateTime now) throws SQLException {
+        if (user.get_createdAt() == null) {
+            user.set_createdAt(now);
+        }
+        user.set_updatedAt(user.get_createdAt());
+        statement.setString(1, user.get_name());
+        statement.setInt(2, user.get_age());
+        statement.setString(3, user.get_email());
+        statement.setObject(4, user.get_createdAt());
+        statement.setObject(5, user.get_updatedAt());
+    }
+
+    // Ключи возвращаются в порядке строк пакета; в PostgreSQL это все колонки, поэтому _id берется по имени
+    private static void readGeneratedIds(Statement statement, List<User> users) throws SQLException {
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+            for (User user : users) {
+                if (!keys.next()) {
+                    throw new SQLException("Database returned fewer generated keys than inserted rows");
+                }
+                user.set_id(keys.getLong("_id"));
+            }
+        }
+    }
+
+    private static List<User> mapRows(PreparedStatement statement) throws SQLException {
+        List<User> users = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                users.add(mapRow(resultSet));
+            }
+        }
+        return users;
+    }
+
+    // Порядок колонок задан константой COLUMNS
+    private static User mapRow(ResultSet resultSet) throws SQLException {
+        User user = new User();
+        user.set_id(resultSet.getLong(1));
+        user.set_name(resultSet.getString(2));
+        user.set_age(resultSet.getInt(3));
+        user.set_email(resultSet.getString(4));
+        user.set_createdAt(resultSet.getObject(5, LocalDateTime.class));
+        user.set_updatedAt(resultSet.getObject(6, LocalDateTime.class));
+        user.set_deletedAt(resultSet.getObject(7, LocalDateTime.class));
+        return user;
+    }
+
+    private static boolean isDirty(User current, User user) {
+        return !current.get_name().equals(user.get_name())
+                || current.get_age() != user.get_age()
+                || !current.get_email().equals(user.get_email())
+                || !current.get_createdAt().equals(user.get_createdAt());
+    }
+
+    private static User copy(User user) {
+        User copy = new User();
+        copy.set_id(user.get_id());
+        copy.set_name(user.get_name());
+        copy.set_age(user.get_age());
+        copy.set_email(user.get_email());
+        copy.set_createdAt(user.get_createdAt());
+        copy.set_updatedAt(user.get_updatedAt());
+        copy.set_deletedAt(user.get_deletedAt());
+        return copy;
+    }
+
+    // Пакет сообщает о нарушении уникальности через цепочку исключений
+    private static boolean isUniqueViolation(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            if (UNIQUE_VIOLATION.equals(next.getSQLState())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Отмена оператора по таймауту при заданном сроке вызова - это истекший срок, а не сбой базы
+    private RuntimeException failure(String message, SQLException e) {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && (e instanceof SQLTimeoutException || QUERY_CANCELED.equals(e.getSQLState()))) {
+            timedOut.increment();
+            return new DeadlineExceededException(deadline, e);
+        }
+        return new RuntimeException(message, e);
+    }
+
+    private static void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.error("Error rolling back transaction", e);
+        }
+    }
+}
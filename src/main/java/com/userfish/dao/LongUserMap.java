@@ -0,0 +1,143 @@
+package com.userfish.dao;
+
+import java.util.function.Consumer;
+
+import com.userfish.model.User;
+
+// Хэш-таблица id -> User с открытой адресацией и линейным пробированием, ключи хранятся примитивами.
+// id строк положительны, поэтому 0 в keys означает пустую ячейку. Изменения - только под блокировкой записи
+// владельца; при росте таблица заменяется целиком, так что оптимистичный читатель всегда видит согласованную
+// пару массивов и не выходит за их границы, а неверный ответ отбрасывает проверкой штампа
+final class LongUserMap {
+    private static final int MIN_CAPACITY = 1024;
+
+    private static final class Table {
+        private final long[] keys;
+        private final User[] values;
+
+        private Table(int capacity) {
+            keys = new long[capacity];
+            values = new User[capacity];
+        }
+    }
+
+    private volatile Table table = new Table(MIN_CAPACITY);
+    private int size;
+
+    User get(long id) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        int slot = slot(id, mask);
+        for (int probe = 0; probe <= mask; probe++) {
+            long key = current.keys[slot];
+            if (key == id) {
+                return current.values[slot];
+            }
+            if (key == 0) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    boolean containsKey(long id) {
+        return get(id) != null;
+    }
+
+    // Возвращает прежнюю строку с тем же id или null
+    User put(long id, User row) {
+        if (id <= 0) {
+            throw new IllegalArgumentException("User id must be positive number: " + id);
+        }
+        Table current = table;
+        int mask = current.keys.length - 1;
+        int slot = slot(id, mask);
+        while (current.keys[slot] != 0) {
+            if (current.keys[slot] == id) {
+                User previous = current.values[slot];
+                current.values[slot] = row;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        current.keys[slot] = id;
+        current.values[slot] = row;
+        size++;
+        // Заполнение не выше 1/2: цепочки пробирования остаются короткими
+        if (size * 2 > current.keys.length) {
+            resize(current.keys.length * 2);
+        }
+        return null;
+    }
+
+    // Удаление со сдвигом назад: следующие ячейки цепочки переезжают на освободившееся место,
+    // поэтому пробирование по-прежнему останавливается на первой пустой ячейке
+    User remove(long id) {
+        Table current = table;
+        int mask = current.keys.length - 1;
+        int slot = slot(id, mask);
+        while (current.keys[slot] != id) {
+            if (current.keys[slot] == 0) {
+                return null;
+            }
+            slot = (slot + 1) & mask;
+        }
+        User previous = current.values[slot];
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (current.keys[next] != 0) {
+            int home = slot(current.keys[next], mask);
+            // Ячейку можно сдвинуть в дыру, только если ее домашняя позиция не лежит между дырой и ею самой
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                current.keys[hole] = current.keys[next];
+                current.values[hole] = current.values[next];
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        current.keys[hole] = 0;
+        current.values[hole] = null;
+        size--;
+        return previous;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Порядок обхода не определен
+    void forEachValue(Consumer<User> action) {
+        Table current = table;
+        for (int slot = 0; slot < current.keys.length; slot++) {
+            if (current.keys[slot] != 0) {
+                action.accept(current.values[slot]);
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        Table current = table;
+        Table next = new Table(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < current.keys.length; i++) {
+            long key = current.keys[i];
+            if (key != 0) {
+                int slot = slot(key, mask);
+                while (next.keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                next.keys[slot] = key;
+                next.values[slot] = current.values[i];
+            }
+        }
+        table = next;
+    }
+
+    // Перемешивание как в SplitMix64: подряд идущие id расходятся по всей таблице
+    private static int slot(long id, int mask) {
+        long hash = id * 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 32;
+        return (int) hash & mask;
+    }
+}
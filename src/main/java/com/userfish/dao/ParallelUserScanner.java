@@ -0,0 +1,169 @@
+package com.userfish.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+
+// Полный проход по живым пользователям несколькими соединениями сразу. Пространство _id делится на диапазоны,
+// каждый читается своим потоком страницами по ключу, а страницы передаются обработчику в вызывающем потоке.
+// Обработчик вызывается строго по одному разу за раз, поэтому писать в общий Writer можно без синхронизации.
+// Очереди страниц ограничены: если обработчик не успевает, чтение приостанавливается, а не копится в памяти
+public class ParallelUserScanner {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelUserScanner.class);
+    // Диапазонов больше, чем потоков, чтобы неравные по плотности диапазоны не оставляли потоки без работы
+    private static final int RANGES_PER_THREAD = 4;
+    private static final int BUFFERED_PAGES_PER_THREAD = 2;
+
+    public enum Partitioning {
+        // Отрезок [min, max] делится на равные по ширине части: два дешевых запроса, но дыры в id дают перекос
+        MIN_MAX,
+        // Границы по распределению id (ntile по всем живым строкам): части равны по числу строк,
+        // но подсчет границ - отдельный полный проход таблицы до начала сканирования
+        SAMPLED
+    }
+
+    public interface BatchHandler {
+        void handle(List<User> batch) throws Exception;
+    }
+
+    private final UserDao userDao;
+    private final int threads;
+    private final int pageSize;
+
+    // threads не должен превышать размер пула соединений: каждый поток держит соединение на время запроса страницы
+    public ParallelUserScanner(UserDao userDao, int threads, int pageSize) {
+        if (threads <= 0 || pageSize <= 0) {
+            throw new IllegalArgumentException("Threads and page size must be positive numbers");
+        }
+        this.userDao = userDao;
+        this.threads = threads;
+        this.pageSize = pageSize;
+    }
+
+    // ordered = true отдает страницы по возрастанию _id (последующие диапазоны ждут в буфере),
+    // false - в порядке готовности, что быстрее, когда обработчику порядок не важен
+    public long scan(Partitioning partitioning, boolean ordered, BatchHandler handler) throws Exception {
+        long started = System.nanoTime();
+        List<long[]> ranges = ranges(partitioning, threads * RANGES_PER_THREAD);
+        if (ranges.isEmpty()) {
+            return 0;
+        }
+
+        List<BlockingQueue<Object>> queues = new ArrayList<>();
+        if (ordered) {
+            for (int i = 0; i < ranges.size(); i++) {
+                queues.add(new ArrayBlockingQueue<>(BUFFERED_PAGES_PER_THREAD));
+            }
+        } else {
+            queues.add(new ArrayBlockingQueue<>(threads * BUFFERED_PAGES_PER_THREAD));
+        }
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, ranges.size()), runnable -> {
+            Thread thread = new Thread(runnable, "user-scan-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long scanned = 0;
+        try {
+            // Диапазоны стартуют по порядку, поэтому в упорядоченном режиме первый недочитанный всегда уже читается
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                BlockingQueue<Object> queue = queues.get(ordered ? i : 0);
+                executor.execute(() -> readRange(range[0], range[1], queue));
+            }
+            int remaining = ranges.size();
+            int current = 0;
+            while (remaining > 0) {
+                Object item = queues.get(ordered ? current : 0).take();
+                if (item instanceof RangeFailure) {
+                    throw ((RangeFailure) item).exception;
+                }
+                if (item == RangeDone.INSTANCE) {
+                    remaining--;
+                    current++;
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                List<User> page = (List<User>) item;
+                handler.handle(page);
+                scanned += page.size();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        logger.info("Scanned {} users in {} ranges with {} threads ({}, {}) in {} ms", scanned, ranges.size(),
+                Math.min(threads, ranges.size()), partitioning, ordered ? "ordered" : "unordered",
+                (System.nanoTime() - started) / 1_000_000);
+        return scanned;
+    }
+
+    // Диапазоны [from, to) по возрастанию, покрывающие все живые id
+    List<long[]> ranges(Partitioning partitioning, int parts) {
+        List<Long> boundaries = userDao.findIdBoundaries(partitioning == Partitioning.SAMPLED ? parts : 1);
+        List<long[]> ranges = new ArrayList<>();
+        if (boundaries.isEmpty()) {
+            return ranges;
+        }
+        if (partitioning == Partitioning.SAMPLED) {
+            for (int i = 0; i + 1 < boundaries.size(); i++) {
+                ranges.add(new long[] {boundaries.get(i), boundaries.get(i + 1)});
+            }
+            return ranges;
+        }
+        long from = boundaries.get(0);
+        long to = boundaries.get(1);
+        long width = Math.max(1, (to - from + parts - 1) / parts);
+        for (long start = from; start < to; start += width) {
+            ranges.add(new long[] {start, Math.min(to, start + width)});
+        }
+        return ranges;
+    }
+
+    private void readRange(long fromId, long toId, BlockingQueue<Object> queue) {
+        try {
+            long afterId = fromId - 1;
+            List<User> page;
+            do {
+                page = userDao.findPageInRange(afterId, toId, pageSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).get_id();
+                queue.put(page);
+            } while (page.size() == pageSize);
+            queue.put(RangeDone.INSTANCE);
+        } catch (InterruptedException e) {
+            // Проход отменен: обработчик упал или другой диапазон завершился ошибкой
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            logger.error("Error scanning users in range [{}, {})", fromId, toId, e);
+            try {
+                queue.put(new RangeFailure(e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private enum RangeDone {
+        INSTANCE
+    }
+
+    private static final class RangeFailure {
+        private final Exception exception;
+
+        private RangeFailure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+}
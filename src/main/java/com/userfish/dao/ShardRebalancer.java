@@ -0,0 +1,90 @@
+package com.userfish.dao;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+
+import jakarta.transaction.SystemException;
+
+// Перенос строк при смене числа шардов. Все строки каждого исходного шарда, включая удаленные (их можно
+// восстановить и после переноса), читаются страницами по _id. Строка, которой по новой схеме floorMod(id, M)
+// место в другой базе, вставляется туда как есть, email живой строки переписывается в справочнике, а из исходного
+// шарда строка убирается физически. Пользователь не менялся, поэтому в outbox ни одной из баз событий нет.
+// Справочник заодно заполняется и для оставшихся на месте строк, поэтому тот же перенос переводит одну базу на шарды.
+// Прерванный перенос можно запустить заново: уже вставленные строки пропускаются.
+// Рассчитан на остановленную запись: после переноса identity целевых шардов нужно заново выставить
+// через SchemaInitializer.applyShardIdentity
+public class ShardRebalancer {
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    private final List<UserDao> sourceShards;
+    private final List<UserDao> targetShards;
+    private final EmailShardDirectory directory;
+
+    // Один и тот же экземпляр UserDao в обоих списках означает одну базу: строки, оставшиеся в ней, не трогаются
+    public ShardRebalancer(List<UserDao> sourceShards, List<UserDao> targetShards, EmailShardDirectory directory) {
+        if (sourceShards.isEmpty() || targetShards.isEmpty()) {
+            throw new IllegalArgumentException("Source and target shards must not be empty");
+        }
+        this.sourceShards = List.copyOf(sourceShards);
+        this.targetShards = List.copyOf(targetShards);
+        this.directory = directory;
+    }
+
+    public long rebalance(int batchSize) throws IllegalStateException, SystemException {
+        long moved = 0;
+        for (int source = 0; source < sourceShards.size(); source++) {
+            UserDao sourceDao = sourceShards.get(source);
+            long shardMoved = 0;
+            long afterId = 0;
+            List<User> page;
+            do {
+                page = sourceDao.findPageWithDeleted(afterId, batchSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                afterId = page.get(page.size() - 1).get_id();
+                shardMoved += move(sourceDao, page);
+            } while (page.size() == batchSize);
+            logger.info("Moved {} rows out of source shard {}", shardMoved, source);
+            moved += shardMoved;
+        }
+        logger.info("Rebalanced {} shards into {}: {} rows moved", sourceShards.size(), targetShards.size(), moved);
+        return moved;
+    }
+
+    private int move(UserDao sourceDao, List<User> page) throws IllegalStateException, SystemException {
+        Map<Integer, List<User>> byTarget = new LinkedHashMap<>();
+        for (User user : page) {
+            int target = ShardedUserDao.shardOf(user.get_id(), targetShards.size());
+            if (targetShards.get(target) != sourceDao) {
+                byTarget.computeIfAbsent(target, k -> new ArrayList<>()).add(user);
+            } else if (user.get_deletedAt() == null) {
+                // Номер шарда мог сдвинуться и без переноса строки, а при переходе с одной базы записи еще нет
+                directory.reassign(user.get_email(), target);
+            }
+        }
+
+        // Порядок шагов такой, что после сбоя на любом из них повторный запуск доводит перенос до конца
+        int moved = 0;
+        for (Map.Entry<Integer, List<User>> entry : byTarget.entrySet()) {
+            targetShards.get(entry.getKey()).insertMoved(entry.getValue());
+            List<Long> ids = new ArrayList<>();
+            for (User user : entry.getValue()) {
+                if (user.get_deletedAt() == null) {
+                    directory.reassign(user.get_email(), entry.getKey());
+                }
+                ids.add(user.get_id());
+            }
+            sourceDao.removeMoved(ids);
+            moved += entry.getValue().size();
+        }
+        return moved;
+    }
+}
@@ -0,0 +1,611 @@
+package com.userfish.dao;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+import com.userfish.util.Deadline;
+
+import jakarta.transaction.SystemException;
+
+// Пользователи разнесены по нескольким базам. Строка с id живет в шарде floorMod(id, N): identity
+// каждого шарда выдает только свои остатки (SchemaInitializer.applyShardIdentity), поэтому чтение по id
+// идет в одну базу без справочника. Новый пользователь попадает в шард по хэшу email, а уникальность
+// email между шардами держит EmailShardDirectory. Выборки без id опрашивают все шарды параллельно.
+// Пакетные операции атомарны только внутри одного шарда
+public class ShardedUserDao implements UserDao, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardedUserDao.class);
+    private static final int CLAIM_ATTEMPTS = 3;
+    // Запись справочника без строки в шарде старше этого считается брошенной после сбоя между двумя базами
+    private static final Duration ORPHANED_CLAIM_AGE = Duration.ofMinutes(1);
+
+    private final List<UserDao> shards;
+    private final EmailShardDirectory directory;
+    private final ExecutorService executor;
+    private final Duration orphanedClaimAge;
+
+    public ShardedUserDao(List<UserDao> shards, EmailShardDirectory directory) {
+        this(shards, directory, ORPHANED_CLAIM_AGE);
+    }
+
+    public ShardedUserDao(List<UserDao> shards, EmailShardDirectory directory, Duration orphanedClaimAge) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.shards = List.copyOf(shards);
+        this.directory = directory;
+        this.orphanedClaimAge = orphanedClaimAge;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(shards.size(), runnable -> {
+            Thread thread = new Thread(runnable, "user-shard-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static int shardOf(long id, int shardCount) {
+        return (int) Math.floorMod(id, (long) shardCount);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public User save(User user) throws IllegalStateException, SystemException {
+        int shard = shardForEmail(user.get_email());
+        if (!claim(user.get_email(), shard)) {
+            logger.error("Email already claimed by another shard: {}", user.get_email());
+            throw new DuplicateEmailException(user.get_email(), null);
+        }
+        User saved;
+        try {
+            saved = shards.get(shard).save(user);
+        } catch (RuntimeException | SystemException e) {
+            directory.release(user.get_email());
+            throw e;
+        }
+        checkRouting(saved, shard);
+        return saved;
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        return shardFor(id).findById(id);
+    }
+
+    @Override
+    public List<User> findAll() {
+        List<User> users = new ArrayList<>();
+        for (List<User> shardUsers : scatter(UserDao::findAll)) {
+            users.addAll(shardUsers);
+        }
+        users.sort(Comparator.comparingLong(User::get_id));
+        return users;
+    }
+
+    // Новый email занимается до записи, старый освобождается только после успешного обновления
+    @Override
+    public User update(User user) throws IllegalStateException, SystemException {
+        int shard = shardOf(user.get_id(), shards.size());
+        UserDao dao = shards.get(shard);
+        Optional<User> current = dao.findById(user.get_id());
+        boolean emailChanged = current.isEmpty() || !current.get().get_email().equals(user.get_email());
+        if (emailChanged && !claim(user.get_email(), shard)) {
+            logger.error("Email already claimed by another shard: {}", user.get_email());
+            throw new DuplicateEmailException(user.get_email(), null);
+        }
+
+        User updated;
+        try {
+            updated = dao.update(user);
+        } catch (RuntimeException | SystemException e) {
+            if (emailChanged) {
+                directory.release(user.get_email());
+            }
+            throw e;
+        }
+        if (emailChanged && current.isPresent()) {
+            directory.release(current.get().get_email());
+        }
+        checkRouting(updated, shard);
+        return updated;
+    }
+
+    @Override
+    public void delete(Long id) throws IllegalStateException, SystemException {
+        UserDao dao = shardFor(id);
+        Optional<User> current = dao.findById(id);
+        dao.delete(id);
+        if (current.isPresent()) {
+            directory.release(current.get().get_email());
+        }
+    }
+
+    @Override
+    public List<User> saveAll(List<User> users) throws IllegalStateException, SystemException {
+        List<String> claimed = new ArrayList<>(users.size());
+        Map<Integer, List<User>> byShard = new LinkedHashMap<>();
+        for (User user : users) {
+            int shard = shardForEmail(user.get_email());
+            if (!claim(user.get_email(), shard)) {
+                logger.error("Email already claimed while saving batch of {} users", users.size());
+                releaseAll(claimed);
+                throw new DuplicateEmailException(null, null);
+            }
+            claimed.add(user.get_email());
+            byShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(user);
+        }
+
+        List<Integer> pending = new ArrayList<>(byShard.keySet());
+        try {
+            while (!pending.isEmpty()) {
+                shards.get(pending.get(0)).saveAll(byShard.get(pending.get(0)));
+                pending.remove(0);
+            }
+        } catch (RuntimeException | SystemException e) {
+            // Уже сохраненные шарды не откатываются, освобождаются только email несохраненных
+            for (Integer shard : pending) {
+                for (User user : byShard.get(shard)) {
+                    directory.release(user.get_email());
+                }
+            }
+            throw e;
+        }
+        for (Map.Entry<Integer, List<User>> entry : byShard.entrySet()) {
+            for (User user : entry.getValue()) {
+                checkRouting(user, entry.getKey());
+            }
+        }
+        logger.info("Saved batch of {} users across {} shards", users.size(), byShard.size());
+        return users;
+    }
+
+    @Override
+    public List<User> findAllById(Collection<Long> ids) {
+        LinkedHashSet<Long> uniqueIds = new LinkedHashSet<>(ids);
+        Map<Integer, List<Long>> idsByShard = new LinkedHashMap<>();
+        for (Long id : uniqueIds) {
+            idsByShard.computeIfAbsent(shardOf(id, shards.size()), k -> new ArrayList<>()).add(id);
+        }
+        Map<Long, User> found = new LinkedHashMap<>();
+        for (List<User> shardUsers : scatter(idsByShard, UserDao::findAllById)) {
+            for (User user : shardUsers) {
+                found.put(user.get_id(), user);
+            }
+        }
+        List<User> users = new ArrayList<>(found.size());
+        for (Long id : uniqueIds) {
+            User user = found.get(id);
+            if (user != null) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    // Каждый шард отдает свои первые limit строк после курсора, общий ответ - первые limit из слияния
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        List<User> users = new ArrayList<>();
+        for (List<User> shardUsers : scatter(dao -> dao.findPage(afterId, limit))) {
+            users.addAll(shardUsers);
+        }
+        users.sort(Comparator.comparingLong(User::get_id));
+        return new ArrayList<>(users.subList(0, Math.min(limit, users.size())));
+    }
+
+    @Override
+    public List<User> findPageInRange(long afterId, long beforeId, int limit) {
+        List<User> users = new ArrayList<>();
+        for (List<User> shardUsers : scatter(dao -> dao.findPageInRange(afterId, beforeId, limit))) {
+            users.addAll(shardUsers);
+        }
+        users.sort(Comparator.comparingLong(User::get_id));
+        return new ArrayList<>(users.subList(0, Math.min(limit, users.size())));
+    }
+
+    // id шардов чередуются по модулю, поэтому равные части каждого шарда близки к общим;
+    // внутренние границы выбираются равномерно из объединения шардовых
+    @Override
+    public List<Long> findIdBoundaries(int parts) {
+        List<Long> points = new ArrayList<>();
+        for (List<Long> shardBoundaries : scatter(dao -> dao.findIdBoundaries(parts))) {
+            points.addAll(shardBoundaries);
+        }
+        long[] sorted = points.stream().mapToLong(Long::longValue).sorted().distinct().toArray();
+        List<Long> boundaries = new ArrayList<>();
+        if (sorted.length == 0) {
+            return boundaries;
+        }
+        boundaries.add(sorted[0]);
+        int interior = sorted.length - 2;
+        for (int part = 1; part < parts && interior > 0; part++) {
+            long point = sorted[1 + (int) ((long) part * interior / parts)];
+            if (point > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(point);
+            }
+        }
+        if (sorted[sorted.length - 1] > boundaries.get(boundaries.size() - 1)) {
+            boundaries.add(sorted[sorted.length - 1]);
+        }
+        return boundaries;
+    }
+
+    @Override
+    public long count() {
+        long count = 0;
+        for (Long shardCount : scatter(UserDao::count)) {
+            count += shardCount;
+        }
+        return count;
+    }
+
+    // Справочник указывает единственный шард, где email может быть живым
+    @Override
+    public boolean existsByEmail(String email) {
+        Integer shard = directory.lookup(email);
+        return shard != null && shard < shards.size() && shards.get(shard).existsByEmail(email);
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) throws IllegalStateException, SystemException {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    // Email, уже известный справочнику, обновляется в своем шарде, новый - занимается по хэшу
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) throws IllegalStateException, SystemException {
+        List<String> claimed = new ArrayList<>();
+        Map<String, Integer> shardByEmail = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> positionsByShard = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < users.size(); i++) {
+                String email = users.get(i).get_email();
+                Integer shard = shardByEmail.get(email);
+                if (shard == null) {
+                    shard = resolveUpsertShard(email, claimed);
+                    shardByEmail.put(email, shard);
+                }
+                positionsByShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(i);
+            }
+        } catch (RuntimeException e) {
+            releaseAll(claimed);
+            throw e;
+        }
+
+        UpsertResult[] results = new UpsertResult[users.size()];
+        List<Integer> pending = new ArrayList<>(positionsByShard.keySet());
+        try {
+            while (!pending.isEmpty()) {
+                List<Integer> positions = positionsByShard.get(pending.get(0));
+                List<User> batch = new ArrayList<>(positions.size());
+                for (int position : positions) {
+                    batch.add(users.get(position));
+                }
+                List<UpsertResult> shardResults = shards.get(pending.get(0)).upsertAll(batch);
+                for (int i = 0; i < positions.size(); i++) {
+                    results[positions.get(i)] = shardResults.get(i);
+                }
+                pending.remove(0);
+            }
+        } catch (RuntimeException | SystemException e) {
+            for (String email : claimed) {
+                if (pending.contains(shardByEmail.get(email))) {
+                    directory.release(email);
+                }
+            }
+            throw e;
+        }
+        return List.of(results);
+    }
+
+    // После восстановления email снова занимается; если его успели взять в другом шарде, строка удаляется обратно
+    @Override
+    public boolean restore(Long id) throws IllegalStateException, SystemException {
+        int shard = shardOf(id, shards.size());
+        UserDao dao = shards.get(shard);
+        Optional<User> deleted = findDeleted(dao, id);
+        if (deleted.isEmpty()) {
+            return false;
+        }
+        // Email занимается до восстановления: при конфликте строка в шарде не меняется и в outbox ничего не пишется
+        String email = deleted.get().get_email();
+        if (!claim(email, shard)) {
+            logger.error("Constraint violation while restoring user with id: {}", id);
+            throw new DuplicateEmailException(email, null);
+        }
+        boolean restored;
+        try {
+            restored = dao.restore(id);
+        } catch (RuntimeException | SystemException e) {
+            directory.release(email);
+            throw e;
+        }
+        if (!restored) {
+            directory.release(email);
+        }
+        return restored;
+    }
+
+    // Шарды чистятся по очереди, пока не наберется batchSize: равенство batchSize по-прежнему
+    // означает, что удаленные строки могли остаться
+    @Override
+    public int purgeDeleted(LocalDateTime deletedBefore, int batchSize) {
+        int purged = 0;
+        for (UserDao dao : shards) {
+            if (purged >= batchSize) {
+                break;
+            }
+            purged += dao.purgeDeleted(deletedBefore, batchSize - purged);
+        }
+        return purged;
+    }
+
+    @Override
+    public List<User> findChangedSince(Instant since, long afterId, int limit) {
+        List<User> users = new ArrayList<>();
+        for (List<User> shardUsers : scatter(dao -> dao.findChangedSince(since, afterId, limit))) {
+            users.addAll(shardUsers);
+        }
+        users.sort(Comparator.comparing(User::get_updatedAt).thenComparingLong(User::get_id));
+        return new ArrayList<>(users.subList(0, Math.min(limit, users.size())));
+    }
+
+    @Override
+    public Map<Integer, Long> countByAgeBucket(int bucketSize) {
+        Map<Integer, Long> buckets = new TreeMap<>();
+        for (Map<Integer, Long> shardBuckets : scatter(dao -> dao.countByAgeBucket(bucketSize))) {
+            shardBuckets.forEach((bucket, count) -> buckets.merge(bucket, count, Long::sum));
+        }
+        return new LinkedHashMap<>(buckets);
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsPerDay(LocalDate from, LocalDate to) {
+        Map<LocalDate, Long> signups = new TreeMap<>();
+        for (Map<LocalDate, Long> shardSignups : scatter(dao -> dao.countSignupsPerDay(from, to))) {
+            shardSignups.forEach((day, count) -> signups.merge(day, count, Long::sum));
+        }
+        return new LinkedHashMap<>(signups);
+    }
+
+    // Вершина по каждому шарду не дает точной общей вершины, поэтому шарды отдают все домены
+    @Override
+    public Map<String, Long> countByEmailDomain(int limit) {
+        Map<String, Long> domains = new HashMap<>();
+        for (Map<String, Long> shardDomains : scatter(dao -> dao.countByEmailDomain(Integer.MAX_VALUE))) {
+            shardDomains.forEach((domain, count) -> domains.merge(domain, count, Long::sum));
+        }
+        return InMemoryUserDao.topDomains(domains, limit);
+    }
+
+    // Строки раскладываются по шардам своих id, email занимаются за теми же шардами
+    @Override
+    public void bulkInsert(List<User> users) throws IllegalStateException, SystemException {
+        List<String> claimed = new ArrayList<>(users.size());
+        Map<Integer, List<User>> byShard = new LinkedHashMap<>();
+        for (User user : users) {
+            int shard = shardOf(user.get_id(), shards.size());
+            if (!claim(user.get_email(), shard)) {
+                logger.error("Email already claimed while bulk inserting {} users", users.size());
+                releaseAll(claimed);
+                throw new DuplicateEmailException(null, null);
+            }
+            claimed.add(user.get_email());
+            byShard.computeIfAbsent(shard, k -> new ArrayList<>()).add(user);
+        }
+
+        List<Integer> pending = new ArrayList<>(byShard.keySet());
+        try {
+            while (!pending.isEmpty()) {
+                shards.get(pending.get(0)).bulkInsert(byShard.get(pending.get(0)));
+                pending.remove(0);
+            }
+        } catch (RuntimeException | SystemException e) {
+            for (Integer shard : pending) {
+                for (User user : byShard.get(shard)) {
+                    directory.release(user.get_email());
+                }
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public List<User> findPageWithDeleted(long afterId, int limit) {
+        List<User> users = new ArrayList<>();
+        for (List<User> shardUsers : scatter(dao -> dao.findPageWithDeleted(afterId, limit))) {
+            users.addAll(shardUsers);
+        }
+        users.sort(Comparator.comparingLong(User::get_id));
+        return new ArrayList<>(users.subList(0, Math.min(limit, users.size())));
+    }
+
+    // Строка попадает в шард своего id, а email живой строки переписывается в справочнике на этот шард
+    @Override
+    public int insertMoved(List<User> users) throws IllegalStateException, SystemException {
+        Map<Integer, List<User>> byShard = new LinkedHashMap<>();
+        for (User user : users) {
+            byShard.computeIfAbsent(shardOf(user.get_id(), shards.size()), k -> new ArrayList<>()).add(user);
+        }
+        int inserted = 0;
+        for (Map.Entry<Integer, List<User>> entry : byShard.entrySet()) {
+            inserted += shards.get(entry.getKey()).insertMoved(entry.getValue());
+            for (User user : entry.getValue()) {
+                if (user.get_deletedAt() == null) {
+                    directory.reassign(user.get_email(), entry.getKey());
+                }
+            }
+        }
+        return inserted;
+    }
+
+    // Справочник не меняется: email уже указывает на шард, куда строка перенесена
+    @Override
+    public int removeMoved(Collection<Long> ids) throws IllegalStateException, SystemException {
+        Map<Integer, List<Long>> byShard = new LinkedHashMap<>();
+        for (Long id : ids) {
+            byShard.computeIfAbsent(shardOf(id, shards.size()), k -> new ArrayList<>()).add(id);
+        }
+        int removed = 0;
+        for (Map.Entry<Integer, List<Long>> entry : byShard.entrySet()) {
+            removed += shards.get(entry.getKey()).removeMoved(entry.getValue());
+        }
+        return removed;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    private UserDao shardFor(Long id) {
+        if (id == null) {
+            throw new IllegalArgumentException("User id must not be null");
+        }
+        return shards.get(shardOf(id, shards.size()));
+    }
+
+    // Удаленную строку findById не видит, поэтому она берется из страницы вместе с удаленными
+    private static Optional<User> findDeleted(UserDao dao, long id) {
+        List<User> page = dao.findPageWithDeleted(id - 1, 1);
+        if (page.isEmpty() || page.get(0).get_id() != id || page.get(0).get_deletedAt() == null) {
+            return Optional.empty();
+        }
+        return Optional.of(page.get(0));
+    }
+
+    private int shardForEmail(String email) {
+        if (email == null) {
+            throw new IllegalArgumentException("User email must not be null");
+        }
+        return Math.floorMod(email.hashCode(), shards.size());
+    }
+
+    private int resolveUpsertShard(String email, List<String> claimed) {
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            Integer shard = directory.lookup(email);
+            if (shard != null) {
+                return shard;
+            }
+            int target = shardForEmail(email);
+            if (directory.claim(email, target)) {
+                claimed.add(email);
+                return target;
+            }
+        }
+        throw new IllegalStateException("Email keeps moving between shards: " + email);
+    }
+
+    // Справочник и шард - разные базы: сбой между захватом email и записью строки оставляет запись справочника
+    // без пользователя. Такая запись, если она старше orphanedClaimAge, переходит новому владельцу, иначе email
+    // отклонялся бы навсегда, хотя existsByEmail его не видит. Свежая запись может принадлежать еще идущей записи
+    private boolean claim(String email, int shard) {
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            if (directory.claim(email, shard)) {
+                return true;
+            }
+            Integer owner = directory.lookup(email);
+            if (owner == null) {
+                continue;
+            }
+            if (owner < shards.size() && shards.get(owner).existsByEmail(email)) {
+                return false;
+            }
+            if (directory.takeOver(email, owner, shard, LocalDateTime.now().minus(orphanedClaimAge))) {
+                logger.warn("Took over orphaned email claim of shard {}: {}", owner, email);
+                return true;
+            }
+            return false;
+        }
+        throw new IllegalStateException("Email keeps moving between shards: " + email);
+    }
+
+    private void releaseAll(List<String> emails) {
+        for (String email : emails) {
+            directory.release(email);
+        }
+    }
+
+    // Id из чужого остатка значит, что identity шарда не настроена под текущее число шардов
+    private void checkRouting(User user, int shard) {
+        int expected = shardOf(user.get_id(), shards.size());
+        if (expected != shard) {
+            logger.error("User {} was written to shard {} but routes to shard {}", user.get_id(), shard, expected);
+            throw new IllegalStateException("Shard " + shard + " issued id " + user.get_id()
+                    + " that routes to shard " + expected + "; identity is not aligned with " + shards.size() + " shards");
+        }
+    }
+
+    private <T> List<T> scatter(Function<UserDao, T> call) {
+        Map<Integer, Void> all = new LinkedHashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            all.put(shard, null);
+        }
+        return scatter(all, (dao, ignored) -> call.apply(dao));
+    }
+
+    // Запросы к шардам идут параллельно и наследуют срок вызова текущего потока
+    private <A, T> List<T> scatter(Map<Integer, A> argsByShard, ShardCall<A, T> call) {
+        if (argsByShard.size() == 1) {
+            Map.Entry<Integer, A> only = argsByShard.entrySet().iterator().next();
+            return List.of(call.apply(shards.get(only.getKey()), only.getValue()));
+        }
+        Deadline deadline = Deadline.current();
+        List<Future<T>> futures = new ArrayList<>(argsByShard.size());
+        for (Map.Entry<Integer, A> entry : argsByShard.entrySet()) {
+            UserDao dao = shards.get(entry.getKey());
+            A args = entry.getValue();
+            futures.add(executor.submit(() -> deadline != null
+                    ? deadline.run(() -> call.apply(dao, args))
+                    : call.apply(dao, args)));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Failed to query shards", e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<A, T> {
+        T apply(UserDao dao, A args);
+    }
+}
@@ -0,0 +1,98 @@
+package com.userfish.dao;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+// Возрастающий массив id для keyset-выборок: поиск позиции после afterId - двоичный, дальше чтение подряд.
+// Новые id обычно больше всех прежних и дописываются в конец, пачки с id из середины вливаются одним проходом.
+// Удаленные id не вырезаются сразу: читатели пропускают их по отсутствию строки, а массив уплотняется,
+// когда таких становится больше половины. Изменения и чтение - под блокировкой владельца
+final class SortedIdIndex {
+    private long[] ids = new long[1024];
+    private int size;
+    private int removed;
+
+    void add(long id) {
+        if (size == 0 || id > ids[size - 1]) {
+            ensureCapacity(size + 1);
+            ids[size++] = id;
+            return;
+        }
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position >= 0) {
+            // id вернулся после удаления: старая запись снова живая
+            removed = Math.max(0, removed - 1);
+            return;
+        }
+        int insertAt = -position - 1;
+        ensureCapacity(size + 1);
+        System.arraycopy(ids, insertAt, ids, insertAt + 1, size - insertAt);
+        ids[insertAt] = id;
+        size++;
+    }
+
+    // sortedIds - возрастающие id без повторов
+    void addAll(long[] sortedIds) {
+        if (sortedIds.length == 0) {
+            return;
+        }
+        if (size == 0 || sortedIds[0] > ids[size - 1]) {
+            ensureCapacity(size + sortedIds.length);
+            System.arraycopy(sortedIds, 0, ids, size, sortedIds.length);
+            size += sortedIds.length;
+            return;
+        }
+        long[] merged = new long[Math.max(ids.length, size + sortedIds.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size || j < sortedIds.length) {
+            if (j == sortedIds.length || (i < size && ids[i] < sortedIds[j])) {
+                merged[n++] = ids[i++];
+            } else if (i == size || sortedIds[j] < ids[i]) {
+                merged[n++] = sortedIds[j++];
+            } else {
+                merged[n++] = ids[i++];
+                j++;
+                removed = Math.max(0, removed - 1);
+            }
+        }
+        ids = merged;
+        size = n;
+    }
+
+    // Отмечает удаление id; isLive решает, какие id переживут уплотнение
+    void markRemoved(LongPredicate isLive) {
+        removed++;
+        if (removed * 2 > size) {
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (isLive.test(ids[i])) {
+                    ids[n++] = ids[i];
+                }
+            }
+            size = n;
+            removed = 0;
+        }
+    }
+
+    // Позиция первого id больше afterId
+    int positionAfter(long afterId) {
+        int position = Arrays.binarySearch(ids, 0, size, afterId);
+        return position >= 0 ? position + 1 : -position - 1;
+    }
+
+    long get(int position) {
+        return ids[position];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > ids.length) {
+            ids = Arrays.copyOf(ids, Math.max(capacity, ids.length * 2));
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.userfish.dao;
+
+import com.userfish.model.User;
+
+public class UpsertResult {
+    private final User user;
+    private final boolean inserted;
+
+    public UpsertResult(User user, boolean inserted) {
+        this.user = user;
+        this.inserted = inserted;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public boolean isInserted() {
+        return inserted;
+    }
+
+    public boolean isUpdated() {
+        return !inserted;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UpsertResult{%s, %s}", inserted ? "inserted" : "updated", user);
+    }
+}
@@ -0,0 +1,123 @@
+package com.userfish.dao;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.postgresql.PGConnection;
+
+import com.userfish.model.User;
+
+// Загрузка строк с готовыми id, датами и отметкой удаления (снимок, перенос между шардами) на голом соединении.
+// В PostgreSQL это COPY: один поток данных на пачку, без разбора отдельных операторов
+final class UserBulkInsert {
+    private static final String COPY_USERS =
+            "copy users (_id, name, age, email, createdAt, updatedAt, deletedAt) from stdin with (format csv)";
+    private static final String INSERT_USER =
+            "insert into users (_id, name, age, email, createdAt, updatedAt, deletedAt) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND_EXISTING_IDS = "select _id from users where _id = any(?)";
+
+    private UserBulkInsert() {}
+
+    // Последовательность _id сдвигается за максимальный загруженный id, чтобы новые вставки не конфликтовали
+    static void insert(Connection connection, List<User> users) throws SQLException {
+        if (connection.isWrapperFor(PGConnection.class)) {
+            copyIn(connection, users);
+        } else {
+            batchInsert(connection, users);
+        }
+    }
+
+    // Повторный перенос после сбоя: строки, id которых уже есть в базе, пропускаются. Возвращает число вставленных
+    static int insertMissing(Connection connection, List<User> users) throws SQLException {
+        Set<Long> existing = new HashSet<>();
+        Long[] ids = users.stream().map(User::get_id).toArray(Long[]::new);
+        Array idArray = connection.createArrayOf("bigint", ids);
+        try (PreparedStatement statement = connection.prepareStatement(FIND_EXISTING_IDS)) {
+            statement.setArray(1, idArray);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    existing.add(resultSet.getLong(1));
+                }
+            }
+        } finally {
+            idArray.free();
+        }
+        List<User> missing = new ArrayList<>();
+        for (User user : users) {
+            if (!existing.contains(user.get_id())) {
+                missing.add(user);
+            }
+        }
+        if (!missing.isEmpty()) {
+            insert(connection, missing);
+        }
+        return missing.size();
+    }
+
+    private static void copyIn(Connection connection, List<User> users) throws SQLException {
+        StringBuilder csv = new StringBuilder(users.size() * 96);
+        for (User user : users) {
+            csv.append(user.get_id()).append(',');
+            appendCsvField(csv, user.get_name()).append(',');
+            csv.append(user.get_age()).append(',');
+            appendCsvField(csv, user.get_email()).append(',');
+            csv.append(user.get_createdAt()).append(',').append(updatedAt(user)).append(',');
+            // Пустое поле без кавычек - NULL
+            csv.append(user.get_deletedAt() != null ? user.get_deletedAt().toString() : "").append('\n');
+        }
+        try {
+            connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn(COPY_USERS, new StringReader(csv.toString()));
+        } catch (IOException e) {
+            throw new SQLException("Failed to stream users into COPY", e);
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("select setval(pg_get_serial_sequence('users', '_id'), (select max(_id) from users))");
+        }
+    }
+
+    // Встроенные базы без COPY (H2 в тестах): пакетный INSERT с явными id. Шаг identity шарда
+    // здесь не известен, его заново выставляет SchemaInitializer.applyShardIdentity
+    private static void batchInsert(Connection connection, List<User> users) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_USER)) {
+            for (User user : users) {
+                statement.setLong(1, user.get_id());
+                statement.setString(2, user.get_name());
+                statement.setInt(3, user.get_age());
+                statement.setString(4, user.get_email());
+                statement.setObject(5, user.get_createdAt());
+                statement.setObject(6, updatedAt(user));
+                statement.setObject(7, user.get_deletedAt());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            long maxId;
+            try (ResultSet resultSet = statement.executeQuery("select max(_id) from users")) {
+                resultSet.next();
+                maxId = resultSet.getLong(1);
+            }
+            statement.executeUpdate("alter table users alter column _id restart with " + (maxId + 1));
+        }
+    }
+
+    private static LocalDateTime updatedAt(User user) {
+        return user.get_updatedAt() != null ? user.get_updatedAt() : user.get_createdAt();
+    }
+
+    private static StringBuilder appendCsvField(StringBuilder csv, String value) {
+        return csv.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+}
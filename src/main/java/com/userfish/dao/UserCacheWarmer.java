@@ -0,0 +1,118 @@
+package com.userfish.dao;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+
+// Прогрев после старта: соединения пула, планы запросов и кэш операторов на каждом соединении,
+// затем последние созданные пользователи читаются параллельными диапазонами по _id.
+// Все идет через тот UserDao, с которым работает приложение: основная база, JdbcUserDao или шарды
+public class UserCacheWarmer {
+    private static final Logger logger = LoggerFactory.getLogger(UserCacheWarmer.class);
+    private static final int STATEMENT_ROUNDS = 20;
+
+    private final UserDao userDao;
+    private final int threads;
+    private final int chunkSize;
+    private final Consumer<List<User>> listener;
+
+    public UserCacheWarmer(UserDao userDao, int threads, int chunkSize) {
+        this(userDao, threads, chunkSize, users -> { });
+    }
+
+    // listener получает каждый прочитанный диапазон, например, чтобы наполнить кэш приложения
+    public UserCacheWarmer(UserDao userDao, int threads, int chunkSize, Consumer<List<User>> listener) {
+        this.userDao = userDao;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.listener = listener;
+    }
+
+    public int warmUp(int preloadUsers, long timeoutMillis) {
+        long started = System.nanoTime();
+        long deadline = started + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "user-cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            // Только наименьший и наибольший id по индексу первичного ключа, без чтения строк
+            List<Long> boundaries = userDao.findIdBoundaries(1);
+            long maxId = boundaries.isEmpty() ? 1L : boundaries.get(boundaries.size() - 1) - 1;
+            warmStatements(executor, maxId, deadline);
+            int preloaded = boundaries.isEmpty()
+                    ? 0
+                    : preload(executor, boundaries.get(0), maxId + 1, preloadUsers, deadline);
+            logger.info("Warm-up finished in {} ms: {} threads, {} users preloaded through {}",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), threads, preloaded,
+                    userDao.getClass().getSimpleName());
+            return preloaded;
+        } catch (TimeoutException e) {
+            logger.warn("Warm-up did not finish in {} ms, continuing startup", timeoutMillis);
+            return 0;
+        } catch (Exception e) {
+            logger.warn("Warm-up failed, continuing startup", e);
+            return 0;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Каждый поток держит свое соединение, поэтому кэш подготовленных операторов c3p0 прогревается на всех
+    private void warmStatements(ExecutorService executor, long sampleId, long deadline) throws Exception {
+        Instant now = Instant.now();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                for (int round = 0; round < STATEMENT_ROUNDS; round++) {
+                    userDao.findById(sampleId);
+                    userDao.findAllById(List.of(sampleId));
+                    userDao.findPage(sampleId - 1, 1);
+                    userDao.findChangedSince(now, 1);
+                    userDao.count();
+                }
+                return null;
+            }));
+        }
+        await(futures, deadline);
+    }
+
+    // Последние preloadUsers id до endId читаются кусками по chunkSize id от новых к старым;
+    // удаленные строки и пропуски в id делают куски меньше
+    private int preload(ExecutorService executor, long minId, long endId, int preloadUsers, long deadline)
+            throws Exception {
+        AtomicInteger preloaded = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (long offset = 0; offset < preloadUsers && endId - offset > minId; offset += chunkSize) {
+            long beforeId = endId - offset;
+            long afterId = Math.max(minId, beforeId - Math.min(chunkSize, preloadUsers - offset)) - 1;
+            futures.add(executor.submit(() -> {
+                List<User> users = userDao.findPageInRange(afterId, beforeId, chunkSize);
+                listener.accept(users);
+                preloaded.addAndGet(users.size());
+                return null;
+            }));
+        }
+        await(futures, deadline);
+        return preloaded.get();
+    }
+
+    private static void await(List<Future<?>> futures, long deadline) throws Exception {
+        for (Future<?> future : futures) {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+}
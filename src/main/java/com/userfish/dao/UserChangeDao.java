@@ -0,0 +1,11 @@
+package com.userfish.dao;
+
+import java.util.List;
+
+import com.userfish.model.UserChangeEvent;
+
+public interface UserChangeDao {
+    // События после позиции (xid, seq) в порядке (xid, seq), только от транзакций, которые уже не могут
+    // добавить в журнал ничего нового
+    List<UserChangeEvent> findAfter(long afterTransactionId, long afterSequence, int limit);
+}
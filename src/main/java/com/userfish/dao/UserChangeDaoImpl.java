@@ -0,0 +1,59 @@
+package com.userfish.dao;
+
+import java.util.List;
+
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.HibernateTransactionTemplate;
+import com.userfish.util.HibernateUtil;
+import com.userfish.util.SchemaInitializer;
+
+public class UserChangeDaoImpl implements UserChangeDao {
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeDaoImpl.class);
+
+    // Наименьший xid среди еще идущих транзакций: все транзакции с меньшим номером уже закоммичены или откачены
+    private static final String TRANSACTION_WATERMARK =
+            "select cast(cast(pg_snapshot_xmin(pg_current_snapshot()) as text) as bigint)";
+
+    private final HibernateTransactionTemplate transactionTemplate;
+
+    public UserChangeDaoImpl() {
+        this(HibernateUtil.getTransactionTemplate());
+    }
+
+    public UserChangeDaoImpl(HibernateTransactionTemplate transactionTemplate) {
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    // Номер seq выдается при вставке, а строка видна после коммита, поэтому позиция по seq теряет события
+    // долгих транзакций. Журнал читается по (xid, seq) и только до границы xmin: транзакция с меньшим xid
+    // уже завершилась, а новая получит xid не меньше границы. Чтение всегда идет в основную базу, реплика
+    // может отставать. Вне PostgreSQL xid у всех событий 0 и граница не применяется
+    @Override
+    public List<UserChangeEvent> findAfter(long afterTransactionId, long afterSequence, int limit) {
+        try {
+            return transactionTemplate.executeReadOnlyOnPrimary(() -> {
+                Session session = transactionTemplate.currentSession();
+                long watermark = SchemaInitializer.isPostgres(session.getSessionFactory())
+                        ? session.createNativeQuery(TRANSACTION_WATERMARK, Long.class).getSingleResult()
+                        : Long.MAX_VALUE;
+                return session.createQuery("from UserChangeEvent e where e._transactionId < :watermark"
+                                + " and (e._transactionId > :afterTransactionId"
+                                + " or (e._transactionId = :afterTransactionId and e._sequence > :afterSequence))"
+                                + " order by e._transactionId, e._sequence", UserChangeEvent.class)
+                        .setParameter("watermark", watermark)
+                        .setParameter("afterTransactionId", afterTransactionId)
+                        .setParameter("afterSequence", afterSequence)
+                        .setMaxResults(limit)
+                        .getResultList();
+            });
+        } catch (Exception e) {
+            logger.error("Error reading user changes after position: {}:{}", afterTransactionId, afterSequence, e);
+            throw new RuntimeException(
+                    "Failed to read user changes after position: " + afterTransactionId + ":" + afterSequence, e);
+        }
+    }
+}
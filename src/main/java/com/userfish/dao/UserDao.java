@@ -1,6 +1,11 @@
 package com.userfish.dao;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import com.userfish.model.User;
@@ -13,4 +18,41 @@ public interface UserDao {
     List<User> findAll();
     User update(User user) throws IllegalStateException, SystemException;
     void delete(Long id) throws IllegalStateException, SystemException;
+    List<User> saveAll(List<User> users) throws IllegalStateException, SystemException;
+    List<User> findAllById(Collection<Long> ids);
+    List<User> findPage(long afterId, int limit);
+    // Страница живых пользователей с afterId < _id < beforeId по возрастанию _id
+    List<User> findPageInRange(long afterId, long beforeId, int limit);
+    // Границы b0 < b1 < ... < bk (k <= parts) для чтения диапазонами [b(i), b(i+1)): b0 - наименьший живой id,
+    // bk - наибольший плюс один, внутренние делят живые строки примерно поровну. Пусто, если пользователей нет
+    List<Long> findIdBoundaries(int parts);
+    long count();
+    // Есть ли живой пользователь с таким email; проба уникального индекса без загрузки строки
+    boolean existsByEmail(String email);
+    UpsertResult upsertByEmail(User user) throws IllegalStateException, SystemException;
+    List<UpsertResult> upsertAll(List<User> users) throws IllegalStateException, SystemException;
+    boolean restore(Long id) throws IllegalStateException, SystemException;
+    int purgeDeleted(LocalDateTime deletedBefore, int batchSize);
+    // Включая tombstone-ы с заданным deletedAt, чтобы потребитель видел удаления. Жесткое удаление
+    // и очистка tombstone-ов (purgeDeleted) строку убирают, поэтому читать нужно чаще, чем идет очистка
+    List<User> findChangedSince(Instant since, long afterId, int limit);
+    // Агрегаты по живым строкам: ключ - нижняя граница интервала возрастов, по возрастанию
+    Map<Integer, Long> countByAgeBucket(int bucketSize);
+    // Регистрации по дням createdAt в [from, to), дни без регистраций не возвращаются
+    Map<LocalDate, Long> countSignupsPerDay(LocalDate from, LocalDate to);
+    // Самые частые домены email первыми
+    Map<String, Long> countByEmailDomain(int limit);
+    // Вставка с сохранением id и дат (загрузка снимка), события в outbox не пишутся
+    void bulkInsert(List<User> users) throws IllegalStateException, SystemException;
+    // Перенос между шардами: страница всех строк по _id, включая удаленные
+    List<User> findPageWithDeleted(long afterId, int limit);
+    // Вставка перенесенных строк как есть (id, даты, отметка удаления) без событий в outbox.
+    // Строки с уже существующим id пропускаются, чтобы прерванный перенос можно было повторить
+    int insertMoved(List<User> users) throws IllegalStateException, SystemException;
+    // Физическое удаление строк, перенесенных в другой шард, без событий в outbox
+    int removeMoved(Collection<Long> ids) throws IllegalStateException, SystemException;
+
+    default List<User> findChangedSince(Instant since, int limit) {
+        return findChangedSince(since, 0, limit);
+    }
 }
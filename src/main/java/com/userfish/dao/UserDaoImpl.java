@@ -1,15 +1,27 @@
 package com.userfish.dao;
 
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.hibernate.Session;
 import org.hibernate.exception.ConstraintViolationException;
-import org.hibernate.Transaction;
+import org.hibernate.query.NativeQuery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.DeadlineExceededException;
+import com.userfish.util.HibernateTransactionTemplate;
 import com.userfish.util.HibernateUtil;
 
 import jakarta.persistence.criteria.CriteriaQuery;
@@ -17,108 +29,569 @@ import jakarta.transaction.SystemException;
 
 public class UserDaoImpl implements UserDao {
     private static final Logger logger = LoggerFactory.getLogger(UserDaoImpl.class);
+    // 5 параметров на строку, PostgreSQL допускает не больше 65535 параметров в запросе
+    private static final int UPSERT_CHUNK_SIZE = 1000;
+    private final HibernateTransactionTemplate transactionTemplate;
+    private final boolean softDelete;
+
+    public UserDaoImpl() {
+        this(HibernateUtil.getTransactionTemplate(), HibernateUtil.isSoftDeleteEnabled());
+    }
+
+    public UserDaoImpl(HibernateTransactionTemplate transactionTemplate) {
+        this(transactionTemplate, true);
+    }
+
+    public UserDaoImpl(HibernateTransactionTemplate transactionTemplate, boolean softDelete) {
+        this.transactionTemplate = transactionTemplate;
+        this.softDelete = softDelete;
+    }
 
     @Override
     public User save(User user) throws IllegalStateException, SystemException {
-         Transaction transaction = null;
-        Session session = null;
-        try {
-            session = HibernateUtil.openSession();
-            transaction = session.beginTransaction();
-            
-            session.persist(user);
-            transaction.commit();
-            
-            logger.info("User saved successfully with ID: {}", user.get_id());
-            return user;
+        try {
+            return transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                session.persist(user);
+                recordChange(session, user.get_id(), UserChangeEvent.Type.CREATED);
+                logger.info("User saved successfully with ID: {}", user.get_id());
+                return user;
+            });
         } catch (ConstraintViolationException e) {
-            if (transaction != null && transaction.isActive()) {
-                transaction.rollback();
-            }
             logger.error("Constraint violation while saving user: {}", user.get_email(), e);
-            throw new RuntimeException("Email already exists: " + user.get_email(), e);
+            throw new DuplicateEmailException(user.get_email(), e);
         } catch (Exception e) {
-            if (transaction != null && transaction.isActive()) {
-                transaction.rollback();
-            }
             logger.error("Error saving user: {}", user, e);
-            throw new RuntimeException("Failed to save user: " + e.getMessage(), e);
-        } finally {
-            if (session != null && session.isOpen()) {
-                session.close();
-            }
+            throw failure("Failed to save user: " + e.getMessage(), e);
         }
     }
 
     @Override
     public Optional<User> findById(Long id) {
-         try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            User user = session.get(User.class, id);
-            if (user != null) {
-                logger.debug("User found by id {}: {}", id, user);
-            } else {
-                logger.debug("User not found by id: {}", id);
-            }
-            return Optional.ofNullable(user);
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                User user = transactionTemplate.currentSession().get(User.class, id);
+                if (user != null) {
+                    logger.debug("User found by id {}: {}", id, user);
+                } else {
+                    logger.debug("User not found by id: {}", id);
+                }
+                return Optional.ofNullable(user);
+            });
         } catch (Exception e) {
             logger.error("Error finding user by id: {}", id, e);
-            throw new RuntimeException("Failed to find user by id: " + id, e);
+            throw failure("Failed to find user by id: " + id, e);
         }
     }
 
     @Override
     public List<User> findAll() {
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            CriteriaQuery<User> criteriaQuery = session.getCriteriaBuilder()
-                    .createQuery(User.class);
-            criteriaQuery.from(User.class);
-            List<User> users = session.createQuery(criteriaQuery).getResultList();
-            logger.debug("Found {} users", users.size());
-            return users;
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                Session session = transactionTemplate.currentSession();
+                CriteriaQuery<User> criteriaQuery = session.getCriteriaBuilder()
+                        .createQuery(User.class);
+                criteriaQuery.from(User.class);
+                List<User> users = session.createQuery(criteriaQuery).getResultList();
+                logger.debug("Found {} users", users.size());
+                return users;
+            });
         } catch (Exception e) {
             logger.error("Error finding all users", e);
-            throw new RuntimeException("Failed to retrieve users", e);
+            throw failure("Failed to retrieve users", e);
         }
     }
 
     @Override
     public User update(User user) throws IllegalStateException, SystemException {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            User updatedUser = session.merge(user);
-            transaction.commit();
-            logger.info("User updated successfully: {}", updatedUser);
-            return updatedUser;
+        try {
+            return transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                User updatedUser = session.merge(user);
+                recordChange(session, updatedUser.get_id(), UserChangeEvent.Type.UPDATED);
+                // Нарушение уникальности должно проявиться здесь, а не при коммите внешней единицы работы
+                session.flush();
+                logger.info("User updated successfully: {}", updatedUser);
+                return updatedUser;
+            });
         } catch (ConstraintViolationException e) {
-            if (transaction != null) transaction.rollback();
             logger.error("Constraint violation while updating user: {}", user.get_email(), e);
-            throw new RuntimeException("Email already exists: " + user.get_email(), e);
+            throw new DuplicateEmailException(user.get_email(), e);
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
             logger.error("Error updating user: {}", user, e);
-            throw new RuntimeException("Failed to update user", e);
+            throw failure("Failed to update user", e);
         }
     }
 
     @Override
     public void delete(Long id) throws IllegalStateException, SystemException {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            User user = session.get(User.class, id);
-            if (user != null) {
-                session.remove(user);
-                logger.info("User deleted successfully: {}", user);
-            } else {
-                logger.warn("User not found for deletion with id: {}", id);
-            }
-            transaction.commit();
+        try {
+            transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                User user = session.get(User.class, id);
+                if (user != null) {
+                    // Мягкое удаление: строка остается tombstone-ом до фоновой очистки
+                    if (softDelete) {
+                        user.set_deletedAt(LocalDateTime.now());
+                        session.flush();
+                    } else {
+                        session.remove(user);
+                    }
+                    recordChange(session, id, UserChangeEvent.Type.DELETED);
+                    logger.info("User deleted successfully: {}", user);
+                } else {
+                    logger.warn("User not found for deletion with id: {}", id);
+                }
+                return null;
+            });
         } catch (Exception e) {
-            if (transaction != null) transaction.rollback();
             logger.error("Error deleting user with id: {}", id, e);
-            throw new RuntimeException("Failed to delete user with id: " + id, e);
+            throw failure("Failed to delete user with id: " + id, e);
         }
     }
 
+    @Override
+    public List<User> saveAll(List<User> users) throws IllegalStateException, SystemException {
+        try {
+            return transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                for (User user : users) {
+                    session.persist(user);
+                    recordChange(session, user.get_id(), UserChangeEvent.Type.CREATED);
+                }
+                logger.info("Saved batch of {} users", users.size());
+                return users;
+            });
+        } catch (ConstraintViolationException e) {
+            logger.error("Constraint violation while saving batch of {} users", users.size(), e);
+            throw new DuplicateEmailException(null, e);
+        } catch (Exception e) {
+            logger.error("Error saving batch of {} users", users.size(), e);
+            throw failure("Failed to save users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public List<User> findAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                List<User> users = transactionTemplate.currentSession()
+                        .createQuery("from User u where u._id in :ids", User.class)
+                        .setParameter("ids", ids)
+                        .getResultList();
+                logger.debug("Found {} of {} requested users", users.size(), ids.size());
+                return users;
+            });
+        } catch (Exception e) {
+            logger.error("Error finding users by ids", e);
+            throw failure("Failed to find users by ids", e);
+        }
+    }
+
+    @Override
+    public List<User> findPage(long afterId, int limit) {
+        try {
+            return transactionTemplate.executeReadOnly(() -> transactionTemplate.currentSession()
+                    .createQuery("from User u where u._id > :afterId order by u._id", User.class)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(limit)
+                    .getResultList());
+        } catch (Exception e) {
+            logger.error("Error finding users after id: {}", afterId, e);
+            throw failure("Failed to retrieve users after id: " + afterId, e);
+        }
+    }
+
+    @Override
+    public List<User> findPageInRange(long afterId, long beforeId, int limit) {
+        try {
+            return transactionTemplate.executeReadOnly(() -> transactionTemplate.currentSession()
+                    .createQuery("from User u where u._id > :afterId and u._id < :beforeId order by u._id", User.class)
+                    .setParameter("afterId", afterId)
+                    .setParameter("beforeId", beforeId)
+                    .setMaxResults(limit)
+                    .getResultList());
+        } catch (Exception e) {
+            logger.error("Error finding users between ids {} and {}", afterId, beforeId, e);
+            throw failure("Failed to retrieve users between ids " + afterId + " and " + beforeId, e);
+        }
+    }
+
+    // Одна часть - min/max по индексу первичного ключа. Несколько - ntile по всем живым строкам: это полный
+    // проход индекса с проверкой deletedAt в строках таблицы, то есть лишний просмотр таблицы перед сканированием
+    @Override
+    public List<Long> findIdBoundaries(int parts) {
+        if (parts <= 0) {
+            throw new IllegalArgumentException("Number of parts must be positive number");
+        }
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                Session session = transactionTemplate.currentSession();
+                List<Object[]> buckets = parts == 1
+                        ? session.createQuery("select min(u._id), max(u._id) from User u", Object[].class)
+                                .getResultList()
+                        : session.createNativeQuery("select min(_id), max(_id) from ("
+                                + "select _id, ntile(" + parts + ") over (order by _id) as bucket"
+                                + " from users where deletedAt is null) t group by bucket order by bucket",
+                                Object[].class)
+                                .getResultList();
+                return boundaries(buckets);
+            });
+        } catch (Exception e) {
+            logger.error("Error finding id boundaries for {} parts", parts, e);
+            throw failure("Failed to find id boundaries", e);
+        }
+    }
+
+    @Override
+    public long count() {
+        try {
+            return transactionTemplate.executeReadOnly(() -> transactionTemplate.currentSession()
+                    .createQuery("select count(u) from User u", Long.class)
+                    .getSingleResult());
+        } catch (Exception e) {
+            logger.error("Error counting users", e);
+            throw failure("Failed to count users", e);
+        }
+    }
+
+    @Override
+    public boolean existsByEmail(String email) {
+        try {
+            return transactionTemplate.executeReadOnly(() -> !transactionTemplate.currentSession()
+                    .createQuery("select u._id from User u where u._email = :email", Long.class)
+                    .setParameter("email", email)
+                    .setMaxResults(1)
+                    .getResultList()
+                    .isEmpty());
+        } catch (Exception e) {
+            logger.error("Error checking email: {}", email, e);
+            throw failure("Failed to check email: " + email, e);
+        }
+    }
+
+    @Override
+    public UpsertResult upsertByEmail(User user) throws IllegalStateException, SystemException {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    // INSERT ... ON CONFLICT: повтор уже известного email обновляет строку за один запрос,
+    // без исключения и отката. xmax = 0 только у только что вставленных строк
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                // Один оператор не может обновить строку дважды, поэтому дубликаты email внутри пачки склеиваются
+                Map<String, User> byEmail = new LinkedHashMap<>();
+                for (User user : users) {
+                    byEmail.put(user.get_email(), user);
+                }
+                List<User> unique = new ArrayList<>(byEmail.values());
+
+                Map<String, Boolean> insertedByEmail = new LinkedHashMap<>();
+                for (int from = 0; from < unique.size(); from += UPSERT_CHUNK_SIZE) {
+                    upsertChunk(session, unique.subList(from, Math.min(from + UPSERT_CHUNK_SIZE, unique.size())),
+                            insertedByEmail);
+                }
+
+                List<UpsertResult> results = new ArrayList<>(users.size());
+                for (User user : users) {
+                    User stored = byEmail.get(user.get_email());
+                    results.add(new UpsertResult(stored, insertedByEmail.get(user.get_email())));
+                }
+                logger.info("Upserted {} users", unique.size());
+                return results;
+            });
+        } catch (Exception e) {
+            logger.error("Error upserting batch of {} users", users.size(), e);
+            throw failure("Failed to upsert users: " + e.getMessage(), e);
+        }
+    }
+
+    private void upsertChunk(Session session, List<User> chunk, Map<String, Boolean> insertedByEmail) {
+        StringBuilder sql = new StringBuilder(
+                "insert into users (name, age, email, createdAt, updatedAt) values ");
+        for (int i = 0; i < chunk.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append("(:name").append(i).append(", :age").append(i).append(", :email").append(i)
+                    .append(", :createdAt").append(i).append(", :updatedAt").append(i).append(')');
+        }
+        sql.append(" on conflict (email) where deletedAt is null do update")
+                .append(" set name = excluded.name, age = excluded.age, updatedAt = excluded.updatedAt")
+                .append(" returning _id, email, createdAt, (xmax = 0)");
+
+        LocalDateTime now = LocalDateTime.now();
+        NativeQuery<Object[]> query = session.createNativeQuery(sql.toString(), Object[].class);
+        for (int i = 0; i < chunk.size(); i++) {
+            User user = chunk.get(i);
+            query.setParameter("name" + i, user.get_name());
+            query.setParameter("age" + i, user.get_age());
+            query.setParameter("email" + i, user.get_email());
+            query.setParameter("createdAt" + i, user.get_createdAt() != null ? user.get_createdAt() : now);
+            query.setParameter("updatedAt" + i, now);
+        }
+
+        Map<String, User> byEmail = new LinkedHashMap<>();
+        for (User user : chunk) {
+            byEmail.put(user.get_email(), user);
+        }
+        for (Object[] row : query.getResultList()) {
+            User user = byEmail.get((String) row[1]);
+            boolean inserted = (Boolean) row[3];
+            user.set_id(((Number) row[0]).longValue());
+            user.set_createdAt(toLocalDateTime(row[2]));
+            user.set_updatedAt(now);
+            insertedByEmail.put(user.get_email(), inserted);
+            recordChange(session, user.get_id(),
+                    inserted ? UserChangeEvent.Type.CREATED : UserChangeEvent.Type.UPDATED);
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Object value) {
+        if (value instanceof Timestamp) {
+            return ((Timestamp) value).toLocalDateTime();
+        }
+        return (LocalDateTime) value;
+    }
+
+    @Override
+    public boolean restore(Long id) throws IllegalStateException, SystemException {
+        try {
+            return transactionTemplate.execute(() -> {
+                Session session = transactionTemplate.currentSession();
+                // Удаленные строки скрыты @SQLRestriction, поэтому восстановление идет нативным запросом
+                int restored = session.createNativeMutationQuery(
+                        "update users set deletedAt = null, updatedAt = :now where _id = :id and deletedAt is not null")
+                        .setParameter("now", LocalDateTime.now())
+                        .setParameter("id", id)
+                        .executeUpdate();
+                if (restored == 0) {
+                    logger.warn("No deleted user to restore with id: {}", id);
+                    return false;
+                }
+                recordChange(session, id, UserChangeEvent.Type.RESTORED);
+                logger.info("User restored with id: {}", id);
+                return true;
+            });
+        } catch (ConstraintViolationException e) {
+            logger.error("Constraint violation while restoring user with id: {}", id, e);
+            throw new DuplicateEmailException(null, e);
+        } catch (Exception e) {
+            logger.error("Error restoring user with id: {}", id, e);
+            throw failure("Failed to restore user with id: " + id, e);
+        }
+    }
+
+    @Override
+    public int purgeDeleted(LocalDateTime deletedBefore, int batchSize) {
+        try {
+            return transactionTemplate.execute(() -> transactionTemplate.currentSession()
+                    .createNativeMutationQuery("delete from users where _id in ("
+                            + "select _id from users where deletedAt is not null and deletedAt < :deletedBefore"
+                            + " limit :batchSize)")
+                    .setParameter("deletedBefore", deletedBefore)
+                    .setParameter("batchSize", batchSize)
+                    .executeUpdate());
+        } catch (Exception e) {
+            logger.error("Error purging users deleted before: {}", deletedBefore, e);
+            throw failure("Failed to purge deleted users", e);
+        }
+    }
+
+    // Keyset-продолжение по (updatedAt, _id): следующая страница начинается после последней строки предыдущей
+    // Нативный запрос: @SQLRestriction скрыл бы tombstone-ы, а потребителю нужны и удаления
+    @Override
+    public List<User> findChangedSince(Instant since, long afterId, int limit) {
+        LocalDateTime sinceTime = LocalDateTime.ofInstant(since, ZoneId.systemDefault());
+        try {
+            return transactionTemplate.executeReadOnly(() -> transactionTemplate.currentSession()
+                    .createNativeQuery("select * from users where updatedAt > :since"
+                            + " or (updatedAt = :since and _id > :afterId)"
+                            + " order by updatedAt, _id", User.class)
+                    .setParameter("since", sinceTime)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(limit)
+                    .getResultList());
+        } catch (Exception e) {
+            logger.error("Error finding users changed since: {}", since, e);
+            throw failure("Failed to find users changed since: " + since, e);
+        }
+    }
+
+    // Размер интервала подставляется в запрос числом: параметр в group by PostgreSQL не считает тем же выражением
+    @Override
+    public Map<Integer, Long> countByAgeBucket(int bucketSize) {
+        if (bucketSize <= 0) {
+            throw new IllegalArgumentException("Age bucket size must be positive number");
+        }
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                String bucket = "u._age / " + bucketSize + " * " + bucketSize;
+                Map<Integer, Long> buckets = new LinkedHashMap<>();
+                for (Object[] row : transactionTemplate.currentSession()
+                        .createQuery("select " + bucket + ", count(u) from User u group by " + bucket
+                                + " order by " + bucket, Object[].class)
+                        .getResultList()) {
+                    buckets.put(((Number) row[0]).intValue(), (Long) row[1]);
+                }
+                return buckets;
+            });
+        } catch (Exception e) {
+            logger.error("Error counting users by age bucket of {}", bucketSize, e);
+            throw failure("Failed to count users by age", e);
+        }
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsPerDay(LocalDate from, LocalDate to) {
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                Map<LocalDate, Long> signups = new LinkedHashMap<>();
+                for (Object[] row : transactionTemplate.currentSession()
+                        .createQuery("select cast(u._createdAt as LocalDate), count(u) from User u"
+                                + " where u._createdAt >= :from and u._createdAt < :to"
+                                + " group by cast(u._createdAt as LocalDate)"
+                                + " order by cast(u._createdAt as LocalDate)", Object[].class)
+                        .setParameter("from", from.atStartOfDay())
+                        .setParameter("to", to.atStartOfDay())
+                        .getResultList()) {
+                    signups.put((LocalDate) row[0], (Long) row[1]);
+                }
+                return signups;
+            });
+        } catch (Exception e) {
+            logger.error("Error counting signups from {} to {}", from, to, e);
+            throw failure("Failed to count signups per day", e);
+        }
+    }
+
+    @Override
+    public Map<String, Long> countByEmailDomain(int limit) {
+        String domain = "lower(substring(u._email, locate('@', u._email) + 1))";
+        try {
+            return transactionTemplate.executeReadOnly(() -> {
+                Map<String, Long> domains = new LinkedHashMap<>();
+                for (Object[] row : transactionTemplate.currentSession()
+                        .createQuery("select " + domain + ", count(u) from User u group by " + domain
+                                + " order by count(u) desc, " + domain, Object[].class)
+                        .setMaxResults(limit)
+                        .getResultList()) {
+                    domains.put((String) row[0], (Long) row[1]);
+                }
+                return domains;
+            });
+        } catch (Exception e) {
+            logger.error("Error counting users by email domain", e);
+            throw failure("Failed to count users by email domain", e);
+        }
+    }
+
+    @Override
+    public void bulkInsert(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(() -> {
+                transactionTemplate.currentSession().doWork(connection -> UserBulkInsert.insert(connection, users));
+                logger.info("Bulk inserted {} users", users.size());
+                return null;
+            });
+        } catch (ConstraintViolationException e) {
+            logger.error("Constraint violation while bulk inserting {} users", users.size(), e);
+            throw new DuplicateEmailException(null, e);
+        } catch (Exception e) {
+            logger.error("Error bulk inserting {} users", users.size(), e);
+            throw failure("Failed to bulk insert users: " + e.getMessage(), e);
+        }
+    }
+
+    // Удаленные строки скрыты @SQLRestriction, поэтому страница читается нативным запросом, и всегда из основной базы
+    @Override
+    public List<User> findPageWithDeleted(long afterId, int limit) {
+        try {
+            return transactionTemplate.executeReadOnlyOnPrimary(() -> transactionTemplate.currentSession()
+                    .createNativeQuery("select * from users where _id > :afterId order by _id", User.class)
+                    .setParameter("afterId", afterId)
+                    .setMaxResults(limit)
+                    .getResultList());
+        } catch (Exception e) {
+            logger.error("Error finding users with deleted after id: {}", afterId, e);
+            throw failure("Failed to retrieve users with deleted after id: " + afterId, e);
+        }
+    }
+
+    @Override
+    public int insertMoved(List<User> users) throws IllegalStateException, SystemException {
+        if (users.isEmpty()) {
+            return 0;
+        }
+        try {
+            return transactionTemplate.execute(() -> {
+                int inserted = transactionTemplate.currentSession()
+                        .doReturningWork(connection -> UserBulkInsert.insertMissing(connection, users));
+                logger.info("Inserted {} of {} moved users", inserted, users.size());
+                return inserted;
+            });
+        } catch (ConstraintViolationException e) {
+            logger.error("Constraint violation while inserting {} moved users", users.size(), e);
+            throw new DuplicateEmailException(null, e);
+        } catch (Exception e) {
+            logger.error("Error inserting {} moved users", users.size(), e);
+            throw failure("Failed to insert moved users: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int removeMoved(Collection<Long> ids) throws IllegalStateException, SystemException {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        try {
+            return transactionTemplate.execute(() -> transactionTemplate.currentSession()
+                    .createNativeMutationQuery("delete from users where _id in (:ids)")
+                    .setParameterList("ids", ids)
+                    .executeUpdate());
+        } catch (Exception e) {
+            logger.error("Error removing {} moved users", ids.size(), e);
+            throw failure("Failed to remove moved users", e);
+        }
+    }
+
+    // Строки (min, max) идущих подряд частей превращаются в границы [min первой, max + 1 каждой]
+    private static List<Long> boundaries(List<Object[]> buckets) {
+        List<Long> boundaries = new ArrayList<>();
+        for (Object[] bucket : buckets) {
+            if (bucket[0] == null) {
+                continue;
+            }
+            if (boundaries.isEmpty()) {
+                boundaries.add(((Number) bucket[0]).longValue());
+            }
+            boundaries.add(((Number) bucket[1]).longValue() + 1);
+        }
+        return boundaries;
+    }
+
+    // Истекший срок вызова пробрасывается как есть, чтобы вызывающий мог отличить его от сбоя
+    private static RuntimeException failure(String message, Exception e) {
+        if (e instanceof DeadlineExceededException) {
+            return (DeadlineExceededException) e;
+        }
+        return new RuntimeException(message, e);
+    }
+
+    // Событие пишется в той же транзакции, что и изменение пользователя (transactional outbox)
+    private void recordChange(Session session, long userId, UserChangeEvent.Type type) {
+        session.persist(new UserChangeEvent(userId, type));
+    }
 }
@@ -0,0 +1,53 @@
+package com.userfish.dao;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Сводка по живым пользователям, собранная агрегатными запросами без загрузки строк
+public class UserStats {
+    private final long total;
+    private final int ageBucketSize;
+    private final Map<Integer, Long> countByAgeBucket;
+    private final Map<LocalDate, Long> signupsPerDay;
+    private final Map<String, Long> countByEmailDomain;
+
+    public UserStats(long total, int ageBucketSize, Map<Integer, Long> countByAgeBucket,
+                     Map<LocalDate, Long> signupsPerDay, Map<String, Long> countByEmailDomain) {
+        this.total = total;
+        this.ageBucketSize = ageBucketSize;
+        this.countByAgeBucket = Collections.unmodifiableMap(new LinkedHashMap<>(countByAgeBucket));
+        this.signupsPerDay = Collections.unmodifiableMap(new LinkedHashMap<>(signupsPerDay));
+        this.countByEmailDomain = Collections.unmodifiableMap(new LinkedHashMap<>(countByEmailDomain));
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public int getAgeBucketSize() {
+        return ageBucketSize;
+    }
+
+    // Ключ - нижняя граница интервала возрастов [key, key + ageBucketSize), по возрастанию
+    public Map<Integer, Long> getCountByAgeBucket() {
+        return countByAgeBucket;
+    }
+
+    // Дни без регистраций присутствуют с нулем, по возрастанию даты
+    public Map<LocalDate, Long> getSignupsPerDay() {
+        return signupsPerDay;
+    }
+
+    // Самые частые домены первыми
+    public Map<String, Long> getCountByEmailDomain() {
+        return countByEmailDomain;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserStats{total=%d, ageBuckets=%s, signupsPerDay=%s, emailDomains=%s}",
+                total, countByAgeBucket, signupsPerDay, countByEmailDomain);
+    }
+}
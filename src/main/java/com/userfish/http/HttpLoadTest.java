@@ -0,0 +1,154 @@
+package com.userfish.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// Замкнутый цикл: каждый из concurrency клиентов отправляет следующий запрос сразу после ответа
+public class HttpLoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(HttpLoadTest.class);
+    private static final Pattern ID_PATTERN = Pattern.compile("\"id\":(\\d+)");
+
+    private final URI baseUri;
+    private final int concurrency;
+    private final Duration duration;
+    private final ExecutorService clientExecutor;
+    private final HttpClient client;
+
+    // Пул клиента останавливается в конце run, поэтому прогон выполняется один раз
+    public HttpLoadTest(URI baseUri, int concurrency, Duration duration) {
+        this.baseUri = baseUri;
+        this.concurrency = concurrency;
+        this.duration = duration;
+        this.clientExecutor = Executors.newFixedThreadPool(concurrency);
+        this.client = HttpClient.newBuilder()
+                .executor(clientExecutor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public Result run() throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        try {
+            long[] ids = sampleIds();
+            if (ids.length == 0) {
+                throw new IllegalArgumentException("Server has no users to request");
+            }
+            logger.info("Load test against {} with {} clients for {}", baseUri, concurrency, duration);
+
+            long started = System.nanoTime();
+            long deadline = started + duration.toNanos();
+            List<Future<Worker>> futures = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                futures.add(workers.submit(() -> new Worker().run(ids, deadline)));
+            }
+
+            List<long[]> latencies = new ArrayList<>();
+            int total = 0;
+            long errors = 0;
+            for (Future<Worker> future : futures) {
+                Worker worker = future.get();
+                latencies.add(Arrays.copyOf(worker.latencies, worker.count));
+                total += worker.count;
+                errors += worker.errors;
+            }
+            long elapsed = System.nanoTime() - started;
+
+            long[] merged = new long[total];
+            int offset = 0;
+            for (long[] part : latencies) {
+                System.arraycopy(part, 0, merged, offset, part.length);
+                offset += part.length;
+            }
+            return new Result(merged, elapsed, errors);
+        } finally {
+            workers.shutdownNow();
+            clientExecutor.shutdown();
+        }
+    }
+
+    private long[] sampleIds() throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(
+                HttpRequest.newBuilder(baseUri.resolve("/users?limit=1000")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        Matcher matcher = ID_PATTERN.matcher(response.body());
+        List<Long> ids = new ArrayList<>();
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private final class Worker {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        Worker run(long[] ids, long deadline) {
+            while (System.nanoTime() < deadline) {
+                long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+                HttpRequest request = HttpRequest.newBuilder(baseUri.resolve("/users/" + id)).GET().build();
+                long requestStarted = System.nanoTime();
+                try {
+                    HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                    if (response.statusCode() != 200) {
+                        errors++;
+                    }
+                } catch (IOException e) {
+                    errors++;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                record(System.nanoTime() - requestStarted);
+            }
+            return this;
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    public static final class Result {
+        private final long[] latencyNanos;
+        private final long elapsedNanos;
+        private final long errors;
+
+        Result(long[] latencyNanos, long elapsedNanos, long errors) {
+            this.latencyNanos = latencyNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.errors = errors;
+        }
+
+        public long[] getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package com.userfish.http;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.userfish.Service.AdmissionRejectedException;
+import com.userfish.Service.UserNotFoundException;
+import com.userfish.Service.UserService;
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.UserStats;
+import com.userfish.model.User;
+import com.userfish.util.Deadline;
+import com.userfish.util.DeadlineExceededException;
+import com.userfish.util.UserJson;
+
+public class UserHttpServer {
+    private static final Logger logger = LoggerFactory.getLogger(UserHttpServer.class);
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_IDS = 1000;
+    private static final int MAX_BODY_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final UserService userService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration requestTimeout;
+
+    public UserHttpServer(UserService userService, int port, int threads) throws IOException {
+        this(userService, port, threads, null);
+    }
+
+    // requestTimeout ограничивает каждый запрос вместе с запросами к базе, null - без ограничения
+    public UserHttpServer(UserService userService, int port, int threads, Duration requestTimeout) throws IOException {
+        this.userService = userService;
+        this.requestTimeout = requestTimeout;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        // Ограниченная очередь: при перегрузке обработка переходит в поток диспетчера и прием новых запросов замедляется
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64), new ThreadPoolExecutor.CallerRunsPolicy());
+        server.setExecutor(executor);
+        server.createContext("/users", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("HTTP server listening on port {}", getPort());
+    }
+
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        logger.info("HTTP server stopped");
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (requestTimeout != null) {
+                Deadline.after(requestTimeout).run(() -> {
+                    route(exchange);
+                    return null;
+                });
+            } else {
+                route(exchange);
+            }
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (UserNotFoundException e) {
+            sendError(exchange, 404, e.getMessage());
+        } catch (DuplicateEmailException e) {
+            sendError(exchange, 409, e.getMessage());
+        } catch (AdmissionRejectedException e) {
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendError(exchange, 429, e.getMessage());
+        } catch (DeadlineExceededException e) {
+            sendError(exchange, 504, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error handling {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            sendError(exchange, 500, "Internal server error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void route(HttpExchange exchange) throws Exception {
+        String method = exchange.getRequestMethod();
+        // Контекст /users ловит любой путь с этим префиксом, поэтому сегменты сверяются точно:
+        // /users, /users/stats и /users/{id}
+        String[] segments = exchange.getRequestURI().getPath().substring(1).split("/");
+        if (!"users".equals(segments[0]) || segments.length > 2) {
+            sendError(exchange, 404, "Not found: " + exchange.getRequestURI().getPath());
+            return;
+        }
+        String idPart = segments.length == 2 ? segments[1] : "";
+
+        if (idPart.isEmpty()) {
+            if ("GET".equals(method)) {
+                listUsers(exchange);
+            } else if ("POST".equals(method)) {
+                createUser(exchange);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+            return;
+        }
+
+        if ("stats".equals(idPart)) {
+            if ("GET".equals(method)) {
+                getStats(exchange);
+            } else {
+                sendError(exchange, 405, "Method not allowed");
+            }
+            return;
+        }
+
+        long id = parseId(idPart);
+        switch (method) {
+            case "GET":
+                getUser(exchange, id);
+                break;
+            case "PUT":
+                updateUser(exchange, id);
+                break;
+            case "DELETE":
+                deleteUser(exchange, id);
+                break;
+            default:
+                sendError(exchange, 405, "Method not allowed");
+        }
+    }
+
+    private void getUser(HttpExchange exchange, long id) throws IOException {
+        Optional<User> user = userService.getUserById(id);
+        if (user.isEmpty()) {
+            throw new UserNotFoundException(id);
+        }
+        try (Writer writer = startResponse(exchange, 200)) {
+            UserJson.write(user.get(), writer);
+        }
+    }
+
+    // GET /users/stats?ageBucket=10&days=30&domains=20 - агрегаты без выгрузки пользователей
+    private void getStats(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        UserStats stats = userService.getUserStats(
+                query.containsKey("ageBucket") ? parseLimit(query.get("ageBucket")) : 10,
+                query.containsKey("days") ? parseLimit(query.get("days")) : 30,
+                query.containsKey("domains") ? parseLimit(query.get("domains")) : 20);
+        try (Writer writer = startResponse(exchange, 200)) {
+            UserJson.write(stats, writer);
+        }
+    }
+
+    // GET /users?ids=1,2,3 - пакетное чтение, GET /users?after=ID&limit=N - постраничный список
+    private void listUsers(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        List<User> users;
+        Long next = null;
+        String ids = query.get("ids");
+        if (ids != null) {
+            List<Long> parsedIds = new ArrayList<>();
+            for (String id : ids.split(",")) {
+                if (!id.isEmpty()) {
+                    parsedIds.add(parseId(id));
+                }
+            }
+            if (parsedIds.size() > MAX_IDS) {
+                throw new IllegalArgumentException("Too many ids, maximum is " + MAX_IDS);
+            }
+            users = userService.getUsersByIds(parsedIds);
+        } else {
+            long after = query.containsKey("after") ? parseId(query.get("after")) : 0;
+            int limit = query.containsKey("limit") ? parseLimit(query.get("limit")) : DEFAULT_PAGE_SIZE;
+            users = userService.getUsersAfter(after, limit);
+            if (users.size() == limit) {
+                next = users.get(users.size() - 1).get_id();
+            }
+        }
+
+        try (Writer writer = startResponse(exchange, 200)) {
+            writer.write("{\"users\":[");
+            for (int i = 0; i < users.size(); i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                UserJson.write(users.get(i), writer);
+            }
+            writer.write("],\"next\":");
+            writer.write(next != null ? Long.toString(next) : "null");
+            writer.write('}');
+        }
+    }
+
+    private void createUser(HttpExchange exchange) throws Exception {
+        Map<String, String> fields = UserJson.parseObject(readBody(exchange));
+        if (fields.get("age") == null) {
+            throw new IllegalArgumentException("Age is required");
+        }
+        User user = userService.createUser(fields.get("name"), parseAge(fields.get("age")), fields.get("email"));
+        try (Writer writer = startResponse(exchange, 201)) {
+            UserJson.write(user, writer);
+        }
+    }
+
+    private void updateUser(HttpExchange exchange, long id) throws Exception {
+        Map<String, String> fields = UserJson.parseObject(readBody(exchange));
+        User user = userService.updateUser(id, fields.get("name"), parseAge(fields.get("age")), fields.get("email"));
+        try (Writer writer = startResponse(exchange, 200)) {
+            UserJson.write(user, writer);
+        }
+    }
+
+    private void deleteUser(HttpExchange exchange, long id) throws Exception {
+        if (!userService.deleteUser(id)) {
+            throw new UserNotFoundException(id);
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    // Ответ пишется потоково (chunked) прямо в тело, без промежуточной строки
+    private Writer startResponse(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8),
+                BUFFER_SIZE);
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        try (Writer writer = startResponse(exchange, status)) {
+            writer.write("{\"error\":");
+            UserJson.writeString(message, writer);
+            writer.write('}');
+        } catch (IOException e) {
+            logger.debug("Could not send error response: {}", e.getMessage());
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (body.size() + read > MAX_BODY_SIZE) {
+                    throw new IllegalArgumentException("Request body is too large");
+                }
+                body.write(buffer, 0, read);
+            }
+            return body.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    private static long parseId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid user ID: " + value);
+        }
+    }
+
+    private static int parseLimit(String value) {
+        try {
+            int limit = Integer.parseInt(value);
+            if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+                throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+            }
+            return limit;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + value);
+        }
+    }
+
+    private static Integer parseAge(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Integer.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid age: " + value);
+        }
+    }
+}
@@ -3,8 +3,14 @@ package com.userfish.model;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
+import org.hibernate.annotations.SQLRestriction;
+
 @Entity
-@Table(name = "users")
+@SQLRestriction("deletedAt is null")
+@Table(name = "users", indexes = {
+    @Index(name = "idx_users_updated_at", columnList = "updatedAt, _id"),
+    @Index(name = "idx_users_created_at", columnList = "createdAt")
+})
 public class User {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -20,12 +26,20 @@ public class User {
 
     
 
-    @Column(name = "email", nullable = false, unique = true, length = 150)
+    // Уникальность email среди живых строк обеспечивает частичный индекс, см. SchemaInitializer
+    @Column(name = "email", nullable = false, length = 150)
     private String _email;
 
     @Column(name = "createdAt", nullable = false)
     private LocalDateTime _createdAt;
 
+    // Для существующих строк значение проставит default при добавлении колонки
+    @Column(name = "updatedAt", nullable = false, columnDefinition = "timestamp(6) default current_timestamp")
+    private LocalDateTime _updatedAt;
+
+    @Column(name = "deletedAt")
+    private LocalDateTime _deletedAt;
+
      
 
      public User() {}
@@ -42,6 +56,12 @@ public class User {
         if (_createdAt == null) {
             _createdAt = LocalDateTime.now();
         }
+        _updatedAt = _createdAt;
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        _updatedAt = LocalDateTime.now();
     }
 
     public long get_id() {
@@ -79,6 +99,20 @@ public class User {
         this._createdAt = _createdAt;
     }
 
+    public LocalDateTime get_updatedAt() {
+        return _updatedAt;
+    }
+    public void set_updatedAt(LocalDateTime _updatedAt) {
+        this._updatedAt = _updatedAt;
+    }
+
+    public LocalDateTime get_deletedAt() {
+        return _deletedAt;
+    }
+    public void set_deletedAt(LocalDateTime _deletedAt) {
+        this._deletedAt = _deletedAt;
+    }
+
     @Override
     public String toString() {
         return String.format("User{id=%d, name='%s', age='%s', email='%s', createdAt=%s}",
@@ -0,0 +1,68 @@
+package com.userfish.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "user_changes")
+public class UserChangeEvent {
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED,
+        RESTORED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "seq")
+    private long _sequence;
+
+    @Column(name = "userId", nullable = false)
+    private long _userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 8)
+    private Type _type;
+
+    @Column(name = "changedAt", nullable = false)
+    private LocalDateTime _changedAt;
+
+    // Номер транзакции, записавшей событие, заполняется базой (SchemaInitializer задает значение по умолчанию)
+    @Column(name = "xid", insertable = false, updatable = false)
+    private Long _transactionId;
+
+    public UserChangeEvent() {}
+
+    public UserChangeEvent(long userId, Type type) {
+        this._userId = userId;
+        this._type = type;
+        this._changedAt = LocalDateTime.now();
+    }
+
+    public long get_sequence() {
+        return _sequence;
+    }
+
+    public long get_userId() {
+        return _userId;
+    }
+
+    public Type get_type() {
+        return _type;
+    }
+
+    public LocalDateTime get_changedAt() {
+        return _changedAt;
+    }
+
+    public long get_transactionId() {
+        return _transactionId != null ? _transactionId : 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("UserChangeEvent{seq=%d, xid=%d, userId=%d, type=%s, changedAt=%s}",
+                _sequence, get_transactionId(), _userId, _type, _changedAt);
+    }
+}
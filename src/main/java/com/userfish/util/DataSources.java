@@ -0,0 +1,23 @@
+package com.userfish.util;
+
+import javax.sql.DataSource;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+
+public final class DataSources {
+
+    private DataSources() {}
+
+    // Пул соединений SessionFactory (c3p0 вместе с его кэшем подготовленных операторов) для DAO на чистом JDBC
+    public static DataSource of(SessionFactory sessionFactory) {
+        ConnectionProvider connectionProvider = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry().getService(ConnectionProvider.class);
+        if (!connectionProvider.isUnwrappableAs(DataSource.class)) {
+            throw new IllegalStateException("Connection provider " + connectionProvider.getClass().getName()
+                    + " does not expose a DataSource");
+        }
+        return connectionProvider.unwrap(DataSource.class);
+    }
+}
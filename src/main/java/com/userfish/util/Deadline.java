@@ -0,0 +1,70 @@
+package com.userfish.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+// Срок выполнения вызова. Привязывается к потоку на время run(), HibernateTransactionTemplate
+// передает оставшееся время в таймауты запросов. Вложенный срок не может продлить внешний
+public final class Deadline {
+    private static final ThreadLocal<Deadline> current = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+    private final Duration timeout;
+
+    private Deadline(long deadlineNanos, Duration timeout) {
+        this.deadlineNanos = deadlineNanos;
+        this.timeout = timeout;
+    }
+
+    public static Deadline after(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        return new Deadline(System.nanoTime() + timeout.toNanos(), timeout);
+    }
+
+    // null, если срок не задан
+    public static Deadline current() {
+        return current.get();
+    }
+
+    public <T, E extends Exception> T run(TransactionCallback<T, E> callback) throws E {
+        Deadline outer = current.get();
+        if (outer != null && outer.deadlineNanos - deadlineNanos <= 0) {
+            return callback.doInTransaction();
+        }
+        current.set(this);
+        try {
+            return callback.doInTransaction();
+        } finally {
+            if (outer != null) {
+                current.set(outer);
+            } else {
+                current.remove();
+            }
+        }
+    }
+
+    public long remainingMillis() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public void check() {
+        if (isExpired()) {
+            throw new DeadlineExceededException(this, null);
+        }
+    }
+
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{timeout=" + timeout.toMillis() + "ms, remaining=" + remainingMillis() + "ms}";
+    }
+}
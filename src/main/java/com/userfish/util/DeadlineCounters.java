@@ -0,0 +1,31 @@
+package com.userfish.util;
+
+import java.util.Collection;
+
+// Вызовы, прерванные сроком: истекшим еще до начала работы и отмененные таймаутом базы
+public interface DeadlineCounters {
+    long getExpiredBeforeStartCount();
+
+    long getTimedOutCount();
+
+    // Сумма по всем источникам на момент вызова: список может пополняться, пока приложение стартует
+    static DeadlineCounters sum(Collection<? extends DeadlineCounters> counters) {
+        return new DeadlineCounters() {
+            @Override
+            public long getExpiredBeforeStartCount() {
+                return counters.stream().mapToLong(DeadlineCounters::getExpiredBeforeStartCount).sum();
+            }
+
+            @Override
+            public long getTimedOutCount() {
+                return counters.stream().mapToLong(DeadlineCounters::getTimedOutCount).sum();
+            }
+
+            @Override
+            public String toString() {
+                return "Deadlines{expiredBeforeStart=" + getExpiredBeforeStartCount()
+                        + " timedOut=" + getTimedOutCount() + "}";
+            }
+        };
+    }
+}
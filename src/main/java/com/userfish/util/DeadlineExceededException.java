@@ -0,0 +1,16 @@
+package com.userfish.util;
+
+public class DeadlineExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final Deadline deadline;
+
+    public DeadlineExceededException(Deadline deadline, Throwable cause) {
+        super("Deadline of " + deadline.getTimeout().toMillis() + " ms exceeded", cause);
+        this.deadline = deadline;
+    }
+
+    public Deadline getDeadline() {
+        return deadline;
+    }
+}
@@ -0,0 +1,199 @@
+package com.userfish.util;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.hibernate.QueryTimeoutException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class HibernateTransactionTemplate implements TransactionTemplate, DeadlineCounters {
+    private static final Logger logger = LoggerFactory.getLogger(HibernateTransactionTemplate.class);
+    private final Supplier<SessionFactory> sessionFactorySupplier;
+    private final Supplier<SessionFactory> readOnlySessionFactorySupplier;
+    private final long readYourWritesWindowNanos;
+    private final ThreadLocal<Session> currentSession = new ThreadLocal<>();
+    private final ThreadLocal<Long> lastWriteNanos = new ThreadLocal<>();
+    private final LongAdder expiredBeforeStart = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public HibernateTransactionTemplate(Supplier<SessionFactory> sessionFactorySupplier) {
+        this(sessionFactorySupplier, null, 0);
+    }
+
+    public HibernateTransactionTemplate(Supplier<SessionFactory> sessionFactorySupplier,
+                                        Supplier<SessionFactory> readOnlySessionFactorySupplier,
+                                        long readYourWritesWindowMillis) {
+        this.sessionFactorySupplier = sessionFactorySupplier;
+        this.readOnlySessionFactorySupplier = readOnlySessionFactorySupplier;
+        this.readYourWritesWindowNanos = TimeUnit.MILLISECONDS.toNanos(readYourWritesWindowMillis);
+    }
+
+    @Override
+    public <T, E extends Exception> T execute(TransactionCallback<T, E> callback) throws E {
+        checkDeadline();
+        Session bound = currentSession.get();
+        if (bound != null) {
+            if (bound.isDefaultReadOnly()) {
+                throw new IllegalStateException("Cannot join a read-only unit of work for writing");
+            }
+            return callback.doInTransaction();
+        }
+
+        T result = run(sessionFactorySupplier.get(), false, callback);
+        lastWriteNanos.set(System.nanoTime());
+        return result;
+    }
+
+    @Override
+    public <T, E extends Exception> T executeReadOnly(TransactionCallback<T, E> callback) throws E {
+        checkDeadline();
+        // Вложенный вызов читает в той же сессии, что и внешняя единица работы
+        if (currentSession.get() != null) {
+            return callback.doInTransaction();
+        }
+
+        SessionFactory readOnlySessionFactory = readOnlySessionFactorySupplier != null
+                ? readOnlySessionFactorySupplier.get()
+                : null;
+        if (readOnlySessionFactory == null || wroteRecently()) {
+            return run(sessionFactorySupplier.get(), false, callback);
+        }
+        return run(readOnlySessionFactory, true, callback);
+    }
+
+    // Чтение, которому отставание реплики недопустимо: идет в основную базу, но записью не считается
+    // и не переводит последующие чтения потока на основную базу
+    public <T, E extends Exception> T executeReadOnlyOnPrimary(TransactionCallback<T, E> callback) throws E {
+        checkDeadline();
+        if (currentSession.get() != null) {
+            return callback.doInTransaction();
+        }
+        return run(sessionFactorySupplier.get(), true, callback);
+    }
+
+    public Session currentSession() {
+        Session session = currentSession.get();
+        if (session == null) {
+            throw new IllegalStateException("No unit of work is bound to the current thread");
+        }
+        return session;
+    }
+
+    public boolean isActive() {
+        return currentSession.get() != null;
+    }
+
+    @Override
+    public long getExpiredBeforeStartCount() {
+        return expiredBeforeStart.sum();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    private <T, E extends Exception> T run(SessionFactory sessionFactory, boolean readOnly,
+                                           TransactionCallback<T, E> callback) throws E {
+        Session session = sessionFactory.openSession();
+        Transaction transaction = null;
+        currentSession.set(session);
+        try {
+            if (readOnly) {
+                session.setDefaultReadOnly(true);
+            }
+            transaction = session.beginTransaction();
+            Deadline deadline = Deadline.current();
+            if (deadline != null) {
+                applyTimeout(sessionFactory, session, deadline);
+            }
+            T result = callback.doInTransaction();
+            transaction.commit();
+            return result;
+        } catch (Throwable e) {
+            rollback(transaction);
+            Deadline deadline = Deadline.current();
+            if (deadline != null && !(e instanceof DeadlineExceededException) && isTimeout(e)) {
+                timedOut.increment();
+                logger.warn("Unit of work cancelled after {} ms deadline", deadline.getTimeout().toMillis());
+                throw new DeadlineExceededException(deadline, e);
+            }
+            throw e;
+        } finally {
+            currentSession.remove();
+            if (session.isOpen()) {
+                session.close();
+            }
+        }
+    }
+
+    // Оставшееся время уходит в таймаут запросов Hibernate (целые секунды, округление вверх),
+    // а в PostgreSQL еще и в statement_timeout транзакции, который покрывает загрузку сущностей,
+    // flush и ожидание блокировок с точностью до миллисекунд
+    private void applyTimeout(SessionFactory sessionFactory, Session session, Deadline deadline) {
+        long remainingMillis = deadline.remainingMillis();
+        if (remainingMillis <= 0) {
+            expiredBeforeStart.increment();
+            throw new DeadlineExceededException(deadline, null);
+        }
+        long querySeconds = (remainingMillis + 999) / 1000;
+        session.setProperty("jakarta.persistence.query.timeout", (int) Math.min(Integer.MAX_VALUE, querySeconds * 1000));
+        if (sessionFactory.unwrap(SessionFactoryImplementor.class).getJdbcServices().getDialect()
+                instanceof PostgreSQLDialect) {
+            session.createNativeMutationQuery("set local statement_timeout = " + remainingMillis).executeUpdate();
+        }
+    }
+
+    private void checkDeadline() {
+        Deadline deadline = Deadline.current();
+        if (deadline != null && deadline.isExpired()) {
+            expiredBeforeStart.increment();
+            throw new DeadlineExceededException(deadline, null);
+        }
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlineExceededException
+                    || cause instanceof QueryTimeoutException
+                    || cause instanceof jakarta.persistence.QueryTimeoutException
+                    || cause instanceof SQLTimeoutException
+                    || (cause instanceof SQLException && "57014".equals(((SQLException) cause).getSQLState()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean wroteRecently() {
+        Long lastWrite = lastWriteNanos.get();
+        if (lastWrite == null || readYourWritesWindowNanos <= 0) {
+            return false;
+        }
+        if (System.nanoTime() - lastWrite < readYourWritesWindowNanos) {
+            return true;
+        }
+        lastWriteNanos.remove();
+        return false;
+    }
+
+    private void rollback(Transaction transaction) {
+        if (transaction == null || !transaction.isActive()) {
+            return;
+        }
+        try {
+            transaction.rollback();
+        } catch (Exception e) {
+            logger.error("Error rolling back transaction", e);
+        }
+    }
+}
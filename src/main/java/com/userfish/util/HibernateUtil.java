@@ -1,52 +1,210 @@
 package com.userfish.util;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.userfish.dao.UserCacheWarmer;
+import com.userfish.dao.UserDao;
 import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
 
 public class HibernateUtil {
     private static final Logger logger = LoggerFactory.getLogger(HibernateUtil.class);
+    private static final List<String> LEGACY_CONNECTION_SETTINGS = List.of(
+            "hibernate.connection.url", "hibernate.connection.username", "hibernate.connection.password");
     private static final SessionFactory sessionFactory = buildSessionFactory();
+    private static final SessionFactory readOnlySessionFactory = buildReadOnlySessionFactory();
+    private static final HibernateTransactionTemplate transactionTemplate = new HibernateTransactionTemplate(
+        HibernateUtil::getSessionFactory,
+        () -> readOnlySessionFactory,
+        Long.parseLong(setting("READ_YOUR_WRITES_WINDOW_MS", "0")));
+    private static final List<SessionFactory> shardSessionFactories =
+        buildShardSessionFactories(shardUrls(setting("SHARD_DB_URLS", "")));
+    private static final List<Runnable> shutdownHooks = new CopyOnWriteArrayList<>();
 
     private static SessionFactory buildSessionFactory() {
         try {
-            // Создаем конфигурацию из hibernate.cfg.xml
-            Configuration configuration = new Configuration();
-            configuration.configure("hibernate.cfg.xml");
-
-            configuration.addAnnotatedClass(User.class);
-            
-            // Строим ServiceRegistry
-            StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
-                    .applySettings(configuration.getProperties())
-                    .build();
-            
-            // Строим SessionFactory
-            return configuration.buildSessionFactory(serviceRegistry);
+            SessionFactory factory = buildSessionFactory(new Properties());
+            SchemaInitializer.apply(factory);
+            return factory;
         } catch (Exception e) {
             logger.error("Initial SessionFactory creation failed", e);
             throw new ExceptionInInitializerError(e);
         }
     }
 
+    private static SessionFactory buildReadOnlySessionFactory() {
+        String url = setting("REPLICA_DB_URL", null);
+        if (url == null) {
+            return null;
+        }
+
+        try {
+            // Реплика использует ту же конфигурацию, но другое подключение и без изменения схемы
+            Properties overrides = new Properties();
+            overrides.put(AvailableSettings.JAKARTA_JDBC_URL, url);
+            overrides.put(AvailableSettings.JAKARTA_JDBC_USER, setting("REPLICA_DB_USERNAME", ""));
+            overrides.put(AvailableSettings.JAKARTA_JDBC_PASSWORD, setting("REPLICA_DB_PASSWORD", ""));
+            overrides.put(AvailableSettings.HBM2DDL_AUTO, "none");
+            SessionFactory factory = buildSessionFactory(overrides);
+            logger.info("Read-only SessionFactory created for {}", url);
+            return factory;
+        } catch (Exception e) {
+            logger.error("Read-only SessionFactory creation failed", e);
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Шарды пользователей: отдельные базы с той же схемой, identity каждой выдает только свои остатки по модулю N
+    public static List<SessionFactory> buildShardSessionFactories(List<String> urls) {
+        List<SessionFactory> factories = new ArrayList<>();
+        try {
+            for (int shard = 0; shard < urls.size(); shard++) {
+                Properties overrides = new Properties();
+                overrides.put(AvailableSettings.JAKARTA_JDBC_URL, urls.get(shard));
+                overrides.put(AvailableSettings.JAKARTA_JDBC_USER, setting("SHARD_DB_USERNAME", ""));
+                overrides.put(AvailableSettings.JAKARTA_JDBC_PASSWORD, setting("SHARD_DB_PASSWORD", ""));
+                SessionFactory factory = buildSessionFactory(overrides);
+                factories.add(factory);
+                SchemaInitializer.apply(factory);
+                SchemaInitializer.applyShardIdentity(factory, shard, urls.size());
+                logger.info("Shard {} SessionFactory created for {}", shard, urls.get(shard));
+            }
+            return factories;
+        } catch (Exception e) {
+            logger.error("Shard SessionFactory creation failed", e);
+            factories.forEach(SessionFactory::close);
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    public static List<String> shardUrls(String commaSeparated) {
+        List<String> urls = new ArrayList<>();
+        for (String url : Arrays.asList(commaSeparated.split(","))) {
+            if (!url.isBlank()) {
+                urls.add(url.trim());
+            }
+        }
+        return urls;
+    }
+
+    private static SessionFactory buildSessionFactory(Properties overrides) {
+        // Создаем конфигурацию из hibernate.cfg.xml
+        Configuration configuration = new Configuration();
+        configuration.configure("hibernate.cfg.xml");
+        configuration.addProperties(systemOverrides());
+        if (overrides.containsKey(AvailableSettings.JAKARTA_JDBC_URL)) {
+            // Пользователь и пароль из hibernate.connection.* перекрыли бы jakarta.persistence.jdbc.*
+            configuration.getProperties().keySet().removeAll(LEGACY_CONNECTION_SETTINGS);
+        }
+        configuration.addProperties(overrides);
+
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserChangeEvent.class);
+        
+        // Строим ServiceRegistry
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+                .applySettings(configuration.getProperties())
+                .build();
+        
+        // Строим SessionFactory
+        return configuration.buildSessionFactory(serviceRegistry);
+    }
+
+    // Системные свойства hibernate.* переопределяют hibernate.cfg.xml, например -Dhibernate.connection.url=...
+    private static Properties systemOverrides() {
+        Properties properties = new Properties();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("hibernate.")) {
+                properties.put(name, System.getProperty(name));
+            }
+        }
+        return properties;
+    }
+
+    // Первые запросы после старта не должны платить за установку соединений, разбор запросов и JIT.
+    // Вызывается после инициализации класса: потоки прогрева обращаются к его статическим полям
+    // и заблокировались бы, пока инициализация не закончится. Возвращает число прочитанных пользователей
+    public static int warmUp(UserDao userDao) {
+        if (!Boolean.parseBoolean(setting("WARMUP", "true"))) {
+            return 0;
+        }
+        return new UserCacheWarmer(userDao,
+                Integer.parseInt(setting("WARMUP_THREADS", "4")),
+                Integer.parseInt(setting("WARMUP_CHUNK_SIZE", "1000")))
+            .warmUp(Integer.parseInt(setting("WARMUP_USERS", "10000")),
+                Long.parseLong(setting("WARMUP_TIMEOUT_MS", "10000")));
+    }
+
+    public static String setting(String name, String defaultValue) {
+        String value = System.getProperty(name, System.getenv(name));
+        return value != null && !value.isBlank() ? value : defaultValue;
+    }
+
+    public static boolean isSoftDeleteEnabled() {
+        return Boolean.parseBoolean(setting("SOFT_DELETE", "true"));
+    }
+
     public static SessionFactory getSessionFactory() {
         return sessionFactory;
     }
+
+    public static SessionFactory getReadOnlySessionFactory() {
+        return readOnlySessionFactory != null ? readOnlySessionFactory : sessionFactory;
+    }
     
+    // Пустой список, если SHARD_DB_URLS не задана и пользователи живут в основной базе
+    public static List<SessionFactory> getShardSessionFactories() {
+        return shardSessionFactories;
+    }
+
     public static Session openSession() {
         return sessionFactory.openSession();
     }
 
+    public static HibernateTransactionTemplate getTransactionTemplate() {
+        return transactionTemplate;
+    }
+
+    // Выполняется до закрытия SessionFactory, например, чтобы сбросить буферизованные записи
+    public static void addShutdownHook(Runnable hook) {
+        shutdownHooks.add(hook);
+    }
+
     public static void shutdown() {
+        for (Runnable hook : shutdownHooks) {
+            try {
+                hook.run();
+            } catch (Exception e) {
+                logger.error("Shutdown hook failed", e);
+            }
+        }
+        shutdownHooks.clear();
+
+        for (SessionFactory shardSessionFactory : shardSessionFactories) {
+            if (!shardSessionFactory.isClosed()) {
+                shardSessionFactory.close();
+            }
+        }
+        if (readOnlySessionFactory != null && !readOnlySessionFactory.isClosed()) {
+            readOnlySessionFactory.close();
+            logger.info("Hibernate read-only SessionFactory closed");
+        }
         if (sessionFactory != null && !sessionFactory.isClosed()) {
             sessionFactory.close();
             logger.info("Hibernate SessionFactory closed");
         }
     }
-}
\ No newline at end of file
+}
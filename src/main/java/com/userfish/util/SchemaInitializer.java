@@ -0,0 +1,164 @@
+package com.userfish.util;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// DDL, которую hbm2ddl выразить не может: частичные индексы только по живым (не удаленным) строкам,
+// номер записавшей транзакции в журнале изменений и справочник email -> шард, у которого нет сущности
+public final class SchemaInitializer {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaInitializer.class);
+
+    private static final String FIND_EMAIL_UNIQUE_CONSTRAINTS =
+        "select cast(c.conname as text) from pg_constraint c"
+        + " join pg_attribute a on a.attrelid = c.conrelid and a.attnum = any(c.conkey)"
+        + " where c.conrelid = cast('users' as regclass) and c.contype = 'u' and a.attname = 'email'";
+
+    private static final List<String> STATEMENTS = Arrays.asList(
+        "create unique index if not exists ux_users_email_live on users (email) where deletedAt is null",
+        "create index if not exists idx_users_deleted_at on users (deletedAt) where deletedAt is not null",
+        "create index if not exists idx_user_changes_xid_seq on user_changes (xid, seq)"
+    );
+
+    private static final String IS_CHANGE_XID_NULLABLE =
+        "select count(*) from information_schema.columns where lower(table_name) = 'user_changes'"
+        + " and lower(column_name) = 'xid' and is_nullable = 'YES'";
+
+    // Колонку добавляет hbm2ddl, но значение по умолчанию и not null - только здесь. Старые события
+    // получают xid 0 и идут в журнале первыми
+    private static final List<String> CHANGE_XID_STATEMENTS = Arrays.asList(
+        "alter table user_changes alter column xid set default cast(cast(pg_current_xact_id() as text) as bigint)",
+        "update user_changes set xid = 0 where xid is null",
+        "alter table user_changes alter column xid set not null"
+    );
+
+    // В H2 номера транзакции нет: все события получают 0 и упорядочены только по seq
+    private static final List<String> FALLBACK_CHANGE_XID_STATEMENTS = Arrays.asList(
+        "alter table user_changes alter column xid set default 0",
+        "update user_changes set xid = 0 where xid is null",
+        "alter table user_changes alter column xid set not null"
+    );
+
+    // Встроенные базы для тестов (H2) не поддерживают частичные индексы, уникальность email там общая
+    private static final List<String> FALLBACK_STATEMENTS = Arrays.asList(
+        "create unique index if not exists ux_users_email_live on users (email)"
+    );
+
+    // claimedAt появился позже самой таблицы, в справочник, созданный раньше, колонка дописывается
+    private static final List<String> EMAIL_SHARD_DIRECTORY_STATEMENTS = Arrays.asList(
+        "create table if not exists user_email_shards (email varchar(150) primary key, shard integer not null)",
+        "alter table user_email_shards add column if not exists claimedAt timestamp"
+    );
+
+    private SchemaInitializer() {}
+
+    public static boolean isPostgres(SessionFactory sessionFactory) {
+        return sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices().getDialect() instanceof PostgreSQLDialect;
+    }
+
+    public static void apply(SessionFactory sessionFactory) {
+        boolean postgres = isPostgres(sessionFactory);
+
+        sessionFactory.inTransaction(session -> {
+            long nullableXid = session.createNativeQuery(IS_CHANGE_XID_NULLABLE, Long.class).getSingleResult();
+            if (nullableXid > 0) {
+                for (String statement : postgres ? CHANGE_XID_STATEMENTS : FALLBACK_CHANGE_XID_STATEMENTS) {
+                    session.createNativeMutationQuery(statement).executeUpdate();
+                }
+            }
+            if (!postgres) {
+                for (String statement : FALLBACK_STATEMENTS) {
+                    session.createNativeMutationQuery(statement).executeUpdate();
+                }
+                return;
+            }
+            // Старое ограничение unique(email) распространялось и на удаленные строки
+            List<String> constraints = session.createNativeQuery(FIND_EMAIL_UNIQUE_CONSTRAINTS, String.class)
+                    .getResultList();
+            for (String constraint : constraints) {
+                session.createNativeMutationQuery("alter table users drop constraint \"" + constraint + "\"")
+                        .executeUpdate();
+                logger.info("Dropped unique constraint {} in favour of partial index on live rows", constraint);
+            }
+            for (String statement : STATEMENTS) {
+                session.createNativeMutationQuery(statement).executeUpdate();
+            }
+        });
+        logger.info("Schema initialized");
+    }
+
+    // Справочник живет в основной базе и нужен только при шардировании
+    public static void applyEmailShardDirectory(SessionFactory sessionFactory) {
+        sessionFactory.inTransaction(session -> {
+            for (String statement : EMAIL_SHARD_DIRECTORY_STATEMENTS) {
+                session.createNativeMutationQuery(statement).executeUpdate();
+            }
+        });
+        logger.info("Email shard directory initialized");
+    }
+
+    // Шард k из shardCount выдает только id, сравнимые с k по модулю shardCount: шаг identity
+    // равен числу шардов, а следующий id - ближайший такой, не меньше текущего следующего значения
+    // и больше максимума. Identity не двигается назад и не меняется, если шаг и остаток уже верны:
+    // узел, стартующий во время чужих вставок, не должен выдать заново уже выданные id
+    public static void applyShardIdentity(SessionFactory sessionFactory, int shard, int shardCount) {
+        if (shardCount <= 0 || shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("Invalid shard " + shard + " of " + shardCount);
+        }
+        boolean postgres = isPostgres(sessionFactory);
+        sessionFactory.inTransaction(session -> {
+            // Вставки ждут конца транзакции, чтение max(_id) и состояния identity не устаревает до alter
+            if (postgres) {
+                session.createNativeMutationQuery("lock table users in exclusive mode").executeUpdate();
+            }
+            long[] identity = postgres ? postgresIdentity(session) : fallbackIdentity(session);
+            long currentNext = identity[0];
+            long increment = identity[1];
+            long maxId = session.createNativeQuery("select coalesce(max(_id), 0) from users", Long.class)
+                    .getSingleResult();
+            long from = Math.max(currentNext, maxId + 1);
+            long nextId = from + Math.floorMod(shard - from, (long) shardCount);
+            if (increment == shardCount && nextId == currentNext) {
+                logger.info("Shard {} of {}: identity already continues with {} step {}",
+                        shard, shardCount, currentNext, shardCount);
+                return;
+            }
+            if (increment != shardCount) {
+                session.createNativeMutationQuery("alter table users alter column _id set increment by " + shardCount)
+                        .executeUpdate();
+            }
+            session.createNativeMutationQuery("alter table users alter column _id restart with " + nextId)
+                    .executeUpdate();
+            logger.info("Shard {} of {}: identity moved from {} step {} to {} step {}",
+                    shard, shardCount, currentNext, increment, nextId, shardCount);
+        });
+    }
+
+    // {следующее значение, шаг} последовательности identity колонки _id
+    private static long[] postgresIdentity(Session session) {
+        String sequence = session.createNativeQuery("select pg_get_serial_sequence('users', '_id')", String.class)
+                .getSingleResult();
+        Object[] row = session.createNativeQuery("select s.last_value, s.is_called, p.seqincrement from "
+                        + sequence + " s, pg_sequence p where p.seqrelid = cast('" + sequence + "' as regclass)",
+                        Object[].class)
+                .getSingleResult();
+        long lastValue = ((Number) row[0]).longValue();
+        long increment = ((Number) row[2]).longValue();
+        return new long[] {Boolean.TRUE.equals(row[1]) ? lastValue + increment : lastValue, increment};
+    }
+
+    private static long[] fallbackIdentity(Session session) {
+        Object[] row = session.createNativeQuery("select identity_base, identity_increment"
+                        + " from information_schema.columns"
+                        + " where lower(table_name) = 'users' and lower(column_name) = '_id'", Object[].class)
+                .getSingleResult();
+        return new long[] {((Number) row[0]).longValue(), ((Number) row[1]).longValue()};
+    }
+}
@@ -0,0 +1,6 @@
+package com.userfish.util;
+
+@FunctionalInterface
+public interface TransactionCallback<T, E extends Exception> {
+    T doInTransaction() throws E;
+}
@@ -0,0 +1,20 @@
+package com.userfish.util;
+
+public interface TransactionTemplate {
+    <T, E extends Exception> T execute(TransactionCallback<T, E> callback) throws E;
+
+    // Реализации с репликой могут направить такой вызов на read-only базу
+    default <T, E extends Exception> T executeReadOnly(TransactionCallback<T, E> callback) throws E {
+        return execute(callback);
+    }
+
+    // Выполняет callback без открытия транзакции (DAO без Hibernate, тесты с моками)
+    static TransactionTemplate direct() {
+        return new TransactionTemplate() {
+            @Override
+            public <T, E extends Exception> T execute(TransactionCallback<T, E> callback) throws E {
+                return callback.doInTransaction();
+            }
+        };
+    }
+}
@@ -0,0 +1,219 @@
+package com.userfish.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.userfish.dao.UserStats;
+import com.userfish.model.User;
+
+public final class UserJson {
+
+    private UserJson() {}
+
+    public static void write(User user, Writer out) throws IOException {
+        out.write("{\"id\":");
+        out.write(Long.toString(user.get_id()));
+        out.write(",\"name\":");
+        writeString(user.get_name(), out);
+        out.write(",\"age\":");
+        out.write(Integer.toString(user.get_age()));
+        out.write(",\"email\":");
+        writeString(user.get_email(), out);
+        out.write(",\"createdAt\":");
+        writeString(String.valueOf(user.get_createdAt()), out);
+        out.write('}');
+    }
+
+    public static void write(UserStats stats, Writer out) throws IOException {
+        out.write("{\"total\":");
+        out.write(Long.toString(stats.getTotal()));
+        out.write(",\"ageBucketSize\":");
+        out.write(Integer.toString(stats.getAgeBucketSize()));
+        out.write(",\"ageBuckets\":");
+        writeCounts(stats.getCountByAgeBucket(), out);
+        out.write(",\"signupsPerDay\":");
+        writeCounts(stats.getSignupsPerDay(), out);
+        out.write(",\"emailDomains\":");
+        writeCounts(stats.getCountByEmailDomain(), out);
+        out.write('}');
+    }
+
+    private static void writeCounts(Map<?, Long> counts, Writer out) throws IOException {
+        out.write('{');
+        boolean first = true;
+        for (Map.Entry<?, Long> entry : counts.entrySet()) {
+            if (!first) {
+                out.write(',');
+            }
+            writeString(String.valueOf(entry.getKey()), out);
+            out.write(':');
+            out.write(Long.toString(entry.getValue()));
+            first = false;
+        }
+        out.write('}');
+    }
+
+    // Разбирает плоский JSON-объект со строковыми и числовыми значениями
+    public static Map<String, String> parseObject(String json) {
+        Map<String, String> fields = new HashMap<>();
+        new Parser(json).parseInto(fields);
+        return fields;
+    }
+
+    public static void writeString(String value, Writer out) throws IOException {
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        out.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        out.write(c);
+                    }
+            }
+        }
+        out.write('"');
+    }
+
+    private static final class Parser {
+        private final String line;
+        private int pos;
+
+        Parser(String line) {
+            this.line = line;
+        }
+
+        void parseInto(Map<String, String> fields) {
+            skipWhitespace();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                return;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                fields.put(key, readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private String readValue() {
+            if (peek() == '"') {
+                return readString();
+            }
+            int start = pos;
+            while (pos < line.length() && ",} \t".indexOf(line.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = line.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw error("Expected value");
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = next();
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                char escaped = next();
+                switch (escaped) {
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'u':
+                        if (pos + 4 > line.length()) {
+                            throw error("Invalid unicode escape");
+                        }
+                        value.append((char) Integer.parseInt(line.substring(pos, pos + 4), 16));
+                        pos += 4;
+                        break;
+                    default:
+                        value.append(escaped);
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < line.length() && Character.isWhitespace(line.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            if (pos >= line.length()) {
+                throw error("Unexpected end of line");
+            }
+            return line.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " in: " + line);
+        }
+    }
+}
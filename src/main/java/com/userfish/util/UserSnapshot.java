@@ -0,0 +1,183 @@
+package com.userfish.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.model.User;
+
+// Бинарный снимок таблицы users.
+// Заголовок: magic "UFSN", версия (short), резерв (short), число записей (long).
+// Запись: id (long), age (int), createdAt и updatedAt в микросекундах UTC (long),
+// name и email как длина (unsigned short) + UTF-8
+public final class UserSnapshot {
+    private static final Logger logger = LoggerFactory.getLogger(UserSnapshot.class);
+
+    public static final int MAGIC = 0x5546534E;
+    public static final short VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final int MAX_RECORD_SIZE = 8 + 4 + 8 + 8 + 2 * (2 + MAX_STRING_BYTES);
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    private static final long MAP_WINDOW_SIZE = 1L << 30;
+
+    @FunctionalInterface
+    public interface BatchHandler {
+        void handle(List<User> batch) throws Exception;
+    }
+
+    private UserSnapshot() {}
+
+    public static Writer create(Path path) throws IOException {
+        return new Writer(path);
+    }
+
+    // Файл отображается в память окнами, запись никогда не пересекает границу окна
+    public static long read(Path path, int batchSize, BatchHandler handler) throws Exception {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IllegalArgumentException("Not a user snapshot: " + path);
+            }
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_WINDOW_SIZE));
+            if (window.getInt() != MAGIC) {
+                throw new IllegalArgumentException("Not a user snapshot: " + path);
+            }
+            short version = window.getShort();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version " + version + " in " + path);
+            }
+            window.getShort();
+            long count = window.getLong();
+
+            long windowStart = 0;
+            List<User> batch = new ArrayList<>(batchSize);
+            try {
+                for (long i = 0; i < count; i++) {
+                    long windowEnd = windowStart + window.limit();
+                    if (window.remaining() < MAX_RECORD_SIZE && windowEnd < size) {
+                        windowStart += window.position();
+                        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                                Math.min(size - windowStart, MAP_WINDOW_SIZE));
+                    }
+                    batch.add(readRecord(window));
+                    if (batch.size() == batchSize) {
+                        handler.handle(batch);
+                        batch = new ArrayList<>(batchSize);
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                throw new IllegalArgumentException("Snapshot is truncated: " + path, e);
+            }
+            if (!batch.isEmpty()) {
+                handler.handle(batch);
+            }
+            logger.info("Read {} users from snapshot {}", count, path);
+            return count;
+        }
+    }
+
+    private static User readRecord(ByteBuffer buffer) {
+        User user = new User();
+        user.set_id(buffer.getLong());
+        user.set_age(buffer.getInt());
+        user.set_createdAt(fromMicros(buffer.getLong()));
+        user.set_updatedAt(fromMicros(buffer.getLong()));
+        user.set_name(readString(buffer));
+        user.set_email(readString(buffer));
+        return user;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                Math.floorMod(micros, 1_000_000) * 1_000, ZoneOffset.UTC);
+    }
+
+    // Число записей дописывается в заголовок при закрытии
+    public static final class Writer implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+        private long count;
+
+        private Writer(Path path) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            buffer.position(HEADER_SIZE);
+        }
+
+        public void write(User user) throws IOException {
+            byte[] name = encode(user.get_name(), "name");
+            byte[] email = encode(user.get_email(), "email");
+            if (buffer.remaining() < 8 + 4 + 8 + 8 + 2 + name.length + 2 + email.length) {
+                flush();
+            }
+            LocalDateTime createdAt = user.get_createdAt();
+            LocalDateTime updatedAt = user.get_updatedAt() != null ? user.get_updatedAt() : createdAt;
+            buffer.putLong(user.get_id());
+            buffer.putInt(user.get_age());
+            buffer.putLong(toMicros(createdAt));
+            buffer.putLong(toMicros(updatedAt));
+            buffer.putShort((short) name.length).put(name);
+            buffer.putShort((short) email.length).put(email);
+            count++;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(count).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(false);
+            } finally {
+                channel.close();
+            }
+        }
+
+        private static byte[] encode(String value, String field) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_STRING_BYTES) {
+                throw new IllegalArgumentException("User " + field + " is too long for snapshot: " + bytes.length + " bytes");
+            }
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package bench.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.userfish.dao.JdbcUserDao;
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.util.DataSources;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import support.dao.TestDatabases;
+
+// Запуск: mvn test -Pbench [-Djmh.args="UserDaoBenchmark -p url=jdbc:postgresql://localhost/users -p user=... -p password=..."]
+// По умолчанию H2 в памяти: она показывает накладные расходы слоя доступа, а не базы.
+// Обе реализации работают через один и тот же пул c3p0 с кэшем подготовленных операторов
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDaoBenchmark {
+    private static final int SEED_USERS = 10_000;
+    private static final int PAGE_SIZE = 100;
+    private static final int BATCH_SIZE = 100;
+
+    @Param({"hibernate", "jdbc"})
+    public String dao;
+
+    @Param("jdbc:h2:mem:bench;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+    public String url;
+
+    @Param("sa")
+    public String user;
+
+    @Param("")
+    public String password;
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+    private long minId;
+    private long maxId;
+    private final AtomicLong emailSequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        sessionFactory = TestDatabases.build(url, user, password, TestDatabases.pooled());
+
+        userDao = "jdbc".equals(dao)
+                ? new JdbcUserDao(DataSources.of(sessionFactory))
+                : new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
+
+        for (int from = 0; from < SEED_USERS; from += 1000) {
+            List<User> saved = userDao.saveAll(newUsers(1000));
+            if (from == 0) {
+                minId = saved.get(0).get_id();
+            }
+            maxId = saved.get(saved.size() - 1).get_id();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public User findById() {
+        return userDao.findById(ThreadLocalRandom.current().nextLong(minId, maxId + 1)).orElse(null);
+    }
+
+    @Benchmark
+    public List<User> findPage() {
+        return userDao.findPage(ThreadLocalRandom.current().nextLong(minId, maxId - PAGE_SIZE), PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<User> saveAll() throws Exception {
+        return userDao.saveAll(newUsers(BATCH_SIZE));
+    }
+
+    private List<User> newUsers(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long n = emailSequence.incrementAndGet();
+            users.add(new User("Bench User " + n, 18 + (int) (n % 60), "bench" + n + "@example.com"));
+        }
+        return users;
+    }
+}
@@ -0,0 +1,389 @@
+package contract.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.UpsertResult;
+import com.userfish.dao.UserDao;
+import com.userfish.model.User;
+
+import jakarta.transaction.SystemException;
+
+// Общие ожидания ко всем реализациям UserDao; наследник отдает пустое хранилище с включенным мягким удалением
+public abstract class UserDaoContract {
+    protected UserDao userDao;
+
+    protected abstract UserDao createEmptyDao() throws Exception;
+
+    @BeforeEach
+    void setUpContract() throws Exception {
+        userDao = createEmptyDao();
+    }
+
+    @Test
+    void save_NewUser_AssignsIdAndTimestamps() throws IllegalStateException, SystemException {
+        User user = userDao.save(new User("John Doe", 30, "john@example.com"));
+
+        assertTrue(user.get_id() > 0);
+        assertNotNull(user.get_createdAt());
+        assertNotNull(user.get_updatedAt());
+        assertEquals("john@example.com", userDao.findById(user.get_id()).get().get_email());
+    }
+
+    @Test
+    void save_DuplicateEmail_ThrowsDuplicateEmailException() throws IllegalStateException, SystemException {
+        userDao.save(new User("John Doe", 30, "john@example.com"));
+
+        DuplicateEmailException exception = assertThrows(DuplicateEmailException.class,
+                () -> userDao.save(new User("John Clone", 31, "john@example.com")));
+
+        assertEquals("john@example.com", exception.getEmail());
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void save_EmailOfDeletedUser_Succeeds() throws IllegalStateException, SystemException {
+        User deleted = userDao.save(new User("John Doe", 30, "john@example.com"));
+        userDao.delete(deleted.get_id());
+
+        User user = userDao.save(new User("John Again", 31, "john@example.com"));
+
+        assertNotEquals(deleted.get_id(), user.get_id());
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void findById_MissingUser_ReturnsEmpty() {
+        assertFalse(userDao.findById(999_999L).isPresent());
+    }
+
+    @Test
+    void findById_ReturnedUserModified_StoredUserUnchanged() throws IllegalStateException, SystemException {
+        User saved = userDao.save(new User("John Doe", 30, "john@example.com"));
+
+        userDao.findById(saved.get_id()).get().set_name("Changed");
+
+        assertEquals("John Doe", userDao.findById(saved.get_id()).get().get_name());
+    }
+
+    @Test
+    void update_ExistingUser_StoresChanges() throws IllegalStateException, SystemException {
+        User saved = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User changed = userDao.findById(saved.get_id()).get();
+        changed.set_name("John Smith");
+        changed.set_email("smith@example.com");
+
+        User updated = userDao.update(changed);
+
+        assertEquals(saved.get_id(), updated.get_id());
+        User found = userDao.findById(saved.get_id()).get();
+        assertEquals("John Smith", found.get_name());
+        assertEquals("smith@example.com", found.get_email());
+        assertFalse(found.get_updatedAt().isBefore(saved.get_updatedAt()));
+    }
+
+    @Test
+    void update_EmailTakenByAnotherUser_ThrowsDuplicateEmailException() throws IllegalStateException, SystemException {
+        userDao.save(new User("John Doe", 30, "john@example.com"));
+        User jane = userDao.save(new User("Jane Doe", 25, "jane@example.com"));
+        User changed = userDao.findById(jane.get_id()).get();
+        changed.set_email("john@example.com");
+
+        assertThrows(DuplicateEmailException.class, () -> userDao.update(changed));
+        assertEquals("jane@example.com", userDao.findById(jane.get_id()).get().get_email());
+    }
+
+    @Test
+    void delete_ExistingUser_HidesUser() throws IllegalStateException, SystemException {
+        User saved = userDao.save(new User("John Doe", 30, "john@example.com"));
+
+        userDao.delete(saved.get_id());
+
+        assertFalse(userDao.findById(saved.get_id()).isPresent());
+        assertTrue(userDao.findAll().isEmpty());
+        assertEquals(0, userDao.count());
+    }
+
+    @Test
+    void delete_MissingUser_DoesNothing() throws IllegalStateException, SystemException {
+        userDao.save(new User("John Doe", 30, "john@example.com"));
+
+        userDao.delete(999_999L);
+
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void existsByEmail_LiveAndDeletedUsers_OnlyLiveEmailTaken() throws IllegalStateException, SystemException {
+        userDao.save(new User("John Doe", 30, "john@example.com"));
+        User deleted = userDao.save(new User("Jane Doe", 25, "jane@example.com"));
+        userDao.delete(deleted.get_id());
+
+        assertTrue(userDao.existsByEmail("john@example.com"));
+        assertFalse(userDao.existsByEmail("jane@example.com"));
+        assertFalse(userDao.existsByEmail("nobody@example.com"));
+    }
+
+    @Test
+    void restore_DeletedUser_MakesUserVisible() throws IllegalStateException, SystemException {
+        User saved = userDao.save(new User("John Doe", 30, "john@example.com"));
+        userDao.delete(saved.get_id());
+
+        assertTrue(userDao.restore(saved.get_id()));
+        assertFalse(userDao.restore(saved.get_id()));
+        assertTrue(userDao.findById(saved.get_id()).isPresent());
+    }
+
+    @Test
+    void restore_EmailTakenByLiveUser_ThrowsDuplicateEmailException() throws IllegalStateException, SystemException {
+        User deleted = userDao.save(new User("John Doe", 30, "john@example.com"));
+        userDao.delete(deleted.get_id());
+        userDao.save(new User("John Again", 31, "john@example.com"));
+
+        assertThrows(DuplicateEmailException.class, () -> userDao.restore(deleted.get_id()));
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void purgeDeleted_OldTombstones_RemovesThem() throws IllegalStateException, SystemException {
+        User deleted = userDao.save(new User("John Doe", 30, "john@example.com"));
+        userDao.save(new User("Jane Doe", 25, "jane@example.com"));
+        userDao.delete(deleted.get_id());
+
+        assertEquals(0, userDao.purgeDeleted(LocalDateTime.now().minusDays(1), 100));
+        assertEquals(1, userDao.purgeDeleted(LocalDateTime.now().plusSeconds(1), 100));
+        assertFalse(userDao.restore(deleted.get_id()));
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void saveAll_DuplicateEmailInBatch_SavesNothing() {
+        List<User> batch = Arrays.asList(
+                new User("John Doe", 30, "john@example.com"),
+                new User("John Clone", 31, "john@example.com"));
+
+        assertThrows(DuplicateEmailException.class, () -> userDao.saveAll(batch));
+        assertEquals(0, userDao.count());
+    }
+
+    @Test
+    void findPage_AfterId_ReturnsUsersInIdOrder() throws IllegalStateException, SystemException {
+        List<User> saved = userDao.saveAll(Arrays.asList(
+                new User("User 1", 21, "user1@example.com"),
+                new User("User 2", 22, "user2@example.com"),
+                new User("User 3", 23, "user3@example.com")));
+        userDao.delete(saved.get(1).get_id());
+
+        List<User> first = userDao.findPage(0, 1);
+        List<User> next = userDao.findPage(first.get(0).get_id(), 10);
+
+        assertEquals(saved.get(0).get_id(), first.get(0).get_id());
+        assertEquals(List.of(saved.get(2).get_id()), ids(next));
+    }
+
+    @Test
+    void findIdBoundaries_LiveUsers_SplitIntoRangesCoveringAllIds() throws IllegalStateException, SystemException {
+        assertTrue(userDao.findIdBoundaries(4).isEmpty());
+        for (int i = 0; i < 10; i++) {
+            userDao.save(new User("User " + i, 20 + i, "user" + i + "@example.com"));
+        }
+        List<Long> ids = userDao.findAll().stream().map(User::get_id).sorted().collect(Collectors.toList());
+        userDao.delete(ids.get(0));
+
+        List<Long> single = userDao.findIdBoundaries(1);
+        List<Long> boundaries = userDao.findIdBoundaries(4);
+
+        assertEquals(List.of(ids.get(1), ids.get(9) + 1), single);
+        assertEquals(5, boundaries.size());
+        assertEquals(single.get(0), boundaries.get(0));
+        assertEquals(single.get(1), boundaries.get(4));
+        int total = 0;
+        for (int i = 0; i + 1 < boundaries.size(); i++) {
+            assertTrue(boundaries.get(i) < boundaries.get(i + 1));
+            total += userDao.findPageInRange(boundaries.get(i) - 1, boundaries.get(i + 1), 100).size();
+        }
+        assertEquals(9, total);
+    }
+
+    @Test
+    void findPageInRange_Bounds_AreExclusive() throws IllegalStateException, SystemException {
+        for (int i = 0; i < 5; i++) {
+            userDao.save(new User("User " + i, 20 + i, "user" + i + "@example.com"));
+        }
+        List<Long> ids = userDao.findAll().stream().map(User::get_id).sorted().collect(Collectors.toList());
+
+        List<User> page = userDao.findPageInRange(ids.get(0), ids.get(4), 2);
+
+        assertEquals(List.of(ids.get(1), ids.get(2)), page.stream().map(User::get_id).collect(Collectors.toList()));
+        assertEquals(3, userDao.findPageInRange(ids.get(0), ids.get(4), 100).size());
+    }
+
+    @Test
+    void findAllById_MissingAndDeletedIds_AreSkipped() throws IllegalStateException, SystemException {
+        User john = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User jane = userDao.save(new User("Jane Doe", 25, "jane@example.com"));
+        userDao.delete(jane.get_id());
+
+        List<User> users = userDao.findAllById(Arrays.asList(john.get_id(), jane.get_id(), 999_999L));
+
+        assertEquals(List.of(john.get_id()), ids(users));
+        assertTrue(userDao.findAllById(List.of()).isEmpty());
+    }
+
+    @Test
+    void upsertAll_NewAndExistingEmails_InsertsAndUpdates() throws IllegalStateException, SystemException {
+        User existing = userDao.save(new User("John Doe", 30, "john@example.com"));
+
+        List<UpsertResult> results = userDao.upsertAll(Arrays.asList(
+                new User("John Smith", 40, "john@example.com"),
+                new User("Jane Doe", 25, "jane@example.com"),
+                new User("Jane Smith", 26, "jane@example.com")));
+
+        assertTrue(results.get(0).isUpdated());
+        assertEquals(existing.get_id(), results.get(0).getUser().get_id());
+        assertTrue(results.get(1).isInserted());
+        assertEquals(results.get(1).getUser().get_id(), results.get(2).getUser().get_id());
+        assertEquals(2, userDao.count());
+        assertEquals("John Smith", userDao.findById(existing.get_id()).get().get_name());
+        assertEquals("Jane Smith", userDao.findById(results.get(1).getUser().get_id()).get().get_name());
+    }
+
+    @Test
+    void findChangedSince_Cursor_ContinuesAfterLastUser() throws IllegalStateException, SystemException {
+        Instant start = Instant.now().minusSeconds(1);
+        userDao.saveAll(Arrays.asList(
+                new User("User 1", 21, "user1@example.com"),
+                new User("User 2", 22, "user2@example.com"),
+                new User("User 3", 23, "user3@example.com")));
+
+        List<User> first = userDao.findChangedSince(start, 2);
+        User last = first.get(1);
+        List<User> rest = userDao.findChangedSince(
+                last.get_updatedAt().atZone(ZoneId.systemDefault()).toInstant(), last.get_id(), 10);
+
+        assertEquals(2, first.size());
+        assertEquals(1, rest.size());
+        assertFalse(ids(first).contains(rest.get(0).get_id()));
+    }
+
+    @Test
+    void findChangedSince_DeletedUser_ReturnedAsTombstone() throws IllegalStateException, SystemException {
+        Instant start = Instant.now().minusSeconds(1);
+        User john = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User jane = userDao.save(new User("Jane Smith", 25, "jane@example.com"));
+
+        userDao.delete(john.get_id());
+        List<User> changed = userDao.findChangedSince(start, 10);
+
+        assertEquals(2, changed.size());
+        for (User user : changed) {
+            assertEquals(user.get_id() == john.get_id(), user.get_deletedAt() != null);
+        }
+        assertTrue(ids(changed).contains(jane.get_id()));
+    }
+
+    @Test
+    void bulkInsert_SnapshotRows_KeepsIdsAndAdvancesIdSequence() throws IllegalStateException, SystemException {
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_000);
+        User first = new User("User 1", 21, "user1@example.com");
+        first.set_id(100);
+        first.set_createdAt(createdAt);
+        User second = new User("User 2", 22, "user2@example.com");
+        second.set_id(105);
+        second.set_createdAt(createdAt);
+
+        userDao.bulkInsert(Arrays.asList(first, second));
+        User next = userDao.save(new User("User 3", 23, "user3@example.com"));
+
+        assertEquals(createdAt, userDao.findById(100L).get().get_createdAt());
+        assertEquals("user2@example.com", userDao.findById(105L).get().get_email());
+        assertTrue(next.get_id() > 105);
+        assertEquals(3, userDao.count());
+    }
+
+    @Test
+    void bulkInsert_EmailAlreadyExists_ThrowsDuplicateEmailException() throws IllegalStateException, SystemException {
+        userDao.save(new User("John Doe", 30, "john@example.com"));
+        User clone = new User("John Clone", 31, "john@example.com");
+        clone.set_id(1000);
+
+        assertThrows(DuplicateEmailException.class, () -> userDao.bulkInsert(List.of(clone)));
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void insertMoved_ExistingIdsSkipped_TombstonesStayRestorable() throws IllegalStateException, SystemException {
+        User existing = userDao.save(new User("John Doe", 30, "john@example.com"));
+        LocalDateTime createdAt = LocalDateTime.of(2024, 1, 2, 3, 4, 5);
+        User live = new User("Moved Live", 21, "live@example.com");
+        live.set_id(existing.get_id() + 100);
+        live.set_createdAt(createdAt);
+        User tombstone = new User("Moved Deleted", 22, "deleted@example.com");
+        tombstone.set_id(existing.get_id() + 101);
+        tombstone.set_createdAt(createdAt);
+        tombstone.set_deletedAt(createdAt.plusDays(1));
+
+        assertEquals(2, userDao.insertMoved(Arrays.asList(existing, live, tombstone)));
+        assertEquals(0, userDao.insertMoved(Arrays.asList(live, tombstone)));
+
+        assertEquals(List.of(existing.get_id(), live.get_id(), tombstone.get_id()),
+                ids(userDao.findPageWithDeleted(0, 10)));
+        assertEquals(List.of(existing.get_id(), live.get_id()), ids(userDao.findPage(0, 10)));
+        assertTrue(userDao.restore(tombstone.get_id()));
+        assertEquals("deleted@example.com", userDao.findById(tombstone.get_id()).get().get_email());
+    }
+
+    @Test
+    void removeMoved_LiveAndDeletedRows_RemovedAndEmailFreed() throws IllegalStateException, SystemException {
+        User live = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User deleted = userDao.save(new User("Jane Doe", 25, "jane@example.com"));
+        userDao.delete(deleted.get_id());
+
+        assertEquals(2, userDao.removeMoved(List.of(live.get_id(), deleted.get_id())));
+
+        assertTrue(userDao.findPageWithDeleted(0, 10).isEmpty());
+        assertEquals(0, userDao.count());
+        assertFalse(userDao.existsByEmail("john@example.com"));
+    }
+
+    @Test
+    void aggregates_LiveUsers_CountedByAgeDayAndDomain() throws IllegalStateException, SystemException {
+        userDao.saveAll(Arrays.asList(
+                new User("User 1", 21, "user1@example.com"),
+                new User("User 2", 29, "user2@Example.com"),
+                new User("User 3", 35, "user3@test.org"),
+                new User("User 4", 70, "user4@example.com")));
+        User deleted = userDao.save(new User("User 5", 22, "user5@deleted.net"));
+        userDao.delete(deleted.get_id());
+        LocalDate today = LocalDate.now();
+
+        assertEquals(Map.of(20, 2L, 30, 1L, 70, 1L), userDao.countByAgeBucket(10));
+        assertEquals(List.of(20, 30, 70), List.copyOf(userDao.countByAgeBucket(10).keySet()));
+        assertEquals(Map.of(today, 4L), userDao.countSignupsPerDay(today.minusDays(7), today.plusDays(1)));
+        assertTrue(userDao.countSignupsPerDay(today.minusDays(7), today).isEmpty());
+        Map<String, Long> domains = userDao.countByEmailDomain(1);
+        assertEquals(Map.of("example.com", 3L), domains);
+        assertEquals(2, userDao.countByEmailDomain(10).size());
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::get_id).collect(Collectors.toList());
+    }
+}
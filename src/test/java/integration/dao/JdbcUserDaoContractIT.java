@@ -0,0 +1,52 @@
+package integration.dao;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.userfish.dao.JdbcUserDao;
+import com.userfish.dao.UserDao;
+
+import contract.dao.UserDaoContract;
+
+import support.dao.TestDatabases;
+
+// Тот же контракт, что у UserDaoImpl: схему создает Hibernate, JdbcUserDao работает с ней напрямую
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class JdbcUserDaoContractIT extends UserDaoContract {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private SessionFactory sessionFactory;
+    private PGSimpleDataSource dataSource;
+
+    @BeforeAll
+    void beforeAll() {
+        sessionFactory = TestDatabases.postgres(postgres);
+
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(postgres.getJdbcUrl());
+        dataSource.setUser(postgres.getUsername());
+        dataSource.setPassword(postgres.getPassword());
+    }
+
+    @AfterAll
+    void afterAll() {
+        sessionFactory.close();
+    }
+
+    @Override
+    protected UserDao createEmptyDao() {
+        sessionFactory.inTransaction(session -> session
+                .createNativeMutationQuery("truncate table users, user_changes restart identity")
+                .executeUpdate());
+        return new JdbcUserDao(dataSource);
+    }
+}
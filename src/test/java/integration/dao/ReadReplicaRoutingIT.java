@@ -0,0 +1,77 @@
+package integration.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.userfish.Service.UserService;
+import com.userfish.Service.UserServiceImpl;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import jakarta.transaction.SystemException;
+
+import support.dao.TestDatabases;
+
+// Две независимые базы: запись видна только на основной, значит чтения действительно идут в реплику
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ReadReplicaRoutingIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> primary = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @Container
+    private static final PostgreSQLContainer<?> replica = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private SessionFactory primaryFactory;
+    private SessionFactory replicaFactory;
+
+    @BeforeAll
+    void beforeAll() {
+        primaryFactory = TestDatabases.postgres(primary);
+        replicaFactory = TestDatabases.postgres(replica);
+    }
+
+    @AfterAll
+    void afterAll() {
+        primaryFactory.close();
+        replicaFactory.close();
+    }
+
+    @Test
+    void readOnlyCalls_RouteToReplica() throws IllegalStateException, SystemException {
+        HibernateTransactionTemplate template =
+            new HibernateTransactionTemplate(() -> primaryFactory, () -> replicaFactory, 0);
+        UserService userService = new UserServiceImpl(new UserDaoImpl(template), template);
+
+        User saved = userService.createUser("Primary User", 30, "primary@example.com");
+
+        assertFalse(userService.getUserById(saved.get_id()).isPresent());
+        assertTrue(userService.getAllUsers().isEmpty());
+        assertFalse(userService.userExists(saved.get_id()));
+    }
+
+    @Test
+    void readYourWrites_RoutesToPrimaryAfterWrite() throws IllegalStateException, SystemException {
+        HibernateTransactionTemplate template =
+            new HibernateTransactionTemplate(() -> primaryFactory, () -> replicaFactory, 60_000);
+        UserService userService = new UserServiceImpl(new UserDaoImpl(template), template);
+
+        User saved = userService.createUser("Fresh User", 25, "fresh@example.com");
+
+        assertTrue(userService.getUserById(saved.get_id()).isPresent());
+        assertEquals("Fresh User", userService.getUserById(saved.get_id()).get().get_name());
+    }
+
+}
@@ -0,0 +1,106 @@
+package integration.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.userfish.Service.UserChangeFeed;
+import com.userfish.dao.UserChangeDaoImpl;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import support.dao.TestDatabases;
+
+// Транзакции, закоммиченные не в порядке выдачи seq: журнал не должен перескакивать через их события
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserChangeDaoImplIT {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private SessionFactory sessionFactory;
+    private UserChangeFeed userChangeFeed;
+
+    @BeforeAll
+    void beforeAll() {
+        sessionFactory = TestDatabases.postgres(postgres);
+        userChangeFeed = new UserChangeFeed(new UserChangeDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory)));
+    }
+
+    @AfterAll
+    void afterAll() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory.inTransaction(session ->
+            session.createNativeMutationQuery("delete from user_changes").executeUpdate());
+    }
+
+    @Test
+    void lateCommit_LowerSequence_HeldBackUntilCommitted() throws Exception {
+        Session longSession = sessionFactory.openSession();
+        Transaction longTransaction = longSession.beginTransaction();
+        longSession.persist(new UserChangeEvent(1L, UserChangeEvent.Type.CREATED));
+        longSession.flush();
+
+        sessionFactory.inTransaction(session -> session.persist(new UserChangeEvent(2L, UserChangeEvent.Type.CREATED)));
+
+        assertTrue(userChangeFeed.poll(UserChangeFeed.Position.START, 100).isEmpty());
+
+        longTransaction.commit();
+        longSession.close();
+
+        List<UserChangeEvent> events = userChangeFeed.poll(UserChangeFeed.Position.START, 100);
+        assertEquals(List.of(1L, 2L), userIds(events));
+    }
+
+    @Test
+    void olderTransaction_CommitsHigherSequenceFirst_LaterCommitNotSkipped() throws Exception {
+        Session olderSession = sessionFactory.openSession();
+        Transaction olderTransaction = olderSession.beginTransaction();
+        olderSession.createNativeQuery("select cast(cast(pg_current_xact_id() as text) as bigint)", Long.class)
+            .getSingleResult();
+
+        Session laterSession = sessionFactory.openSession();
+        Transaction laterTransaction = laterSession.beginTransaction();
+        laterSession.persist(new UserChangeEvent(1L, UserChangeEvent.Type.CREATED));
+        laterSession.flush();
+
+        olderSession.persist(new UserChangeEvent(2L, UserChangeEvent.Type.UPDATED));
+        olderTransaction.commit();
+        olderSession.close();
+
+        List<UserChangeEvent> first = userChangeFeed.poll(UserChangeFeed.Position.START, 100);
+        assertEquals(List.of(2L), userIds(first));
+        UserChangeFeed.Position position = UserChangeFeed.Position.of(first.get(0));
+
+        laterTransaction.commit();
+        laterSession.close();
+
+        List<Long> consumed = new ArrayList<>();
+        userChangeFeed.consume(position, 100, batch -> consumed.addAll(userIds(batch)));
+        assertEquals(List.of(1L), consumed);
+    }
+
+    private static List<Long> userIds(List<UserChangeEvent> events) {
+        return events.stream().map(UserChangeEvent::get_userId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,45 @@
+package integration.dao;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.TestInstance;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import contract.dao.UserDaoContract;
+
+import support.dao.TestDatabases;
+
+@Testcontainers
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserDaoImplContractIT extends UserDaoContract {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    private SessionFactory sessionFactory;
+
+    @BeforeAll
+    void beforeAll() {
+        sessionFactory = TestDatabases.postgres(postgres);
+    }
+
+    @AfterAll
+    void afterAll() {
+        sessionFactory.close();
+    }
+
+    @Override
+    protected UserDao createEmptyDao() {
+        sessionFactory.inTransaction(session -> session
+                .createNativeMutationQuery("truncate table users, user_changes restart identity")
+                .executeUpdate());
+        return new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
+    }
+}
@@ -0,0 +1,250 @@
+package stress.dao;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import support.dao.TestDatabases;
+
+// Запуск: mvn test -Pstress [-Dstress.threads=32 -Dstress.virtualThreads=500 -Dstress.durationSeconds=30
+//         -Dstress.readRatio=0.8 -Dstress.tolerance=0.5 -Dstress.updateBaseline=true]
+@Tag("stress")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserDaoStressTest {
+    private static final Logger logger = LoggerFactory.getLogger(UserDaoStressTest.class);
+    private static final Path BASELINE = Paths.get("src/test/resources/stress/dao-baseline.properties");
+
+    private static final int THREADS = Integer.getInteger("stress.threads", 16);
+    private static final int VIRTUAL_THREADS = Integer.getInteger("stress.virtualThreads", 256);
+    private static final int DURATION_SECONDS = Integer.getInteger("stress.durationSeconds", 10);
+    private static final double READ_RATIO = Double.parseDouble(System.getProperty("stress.readRatio", "0.8"));
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("stress.tolerance", "0.5"));
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("stress.updateBaseline");
+    private static final int SEED_USERS = 10_000;
+    // Небольшой набор email, чтобы вставки конкурировали за уникальный индекс
+    private static final int CONTENDED_EMAILS = 200;
+
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+    private long[] seededIds;
+
+    @BeforeAll
+    void setUp() throws Exception {
+        // Ожидание соединения ограничено, чтобы исчерпание пула было видно как ошибки
+        Properties settings = TestDatabases.pooled();
+        settings.put("hibernate.c3p0.checkoutTimeout", "2000");
+        sessionFactory = TestDatabases.h2("stress", ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=5000", settings);
+        userDao = new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
+
+        List<User> seed = new ArrayList<>();
+        for (int i = 0; i < SEED_USERS; i++) {
+            seed.add(new User("Seed User", 20 + i % 50, "seed" + i + "@example.com"));
+            if (seed.size() == 1000) {
+                userDao.saveAll(seed);
+                seed.clear();
+            }
+        }
+        seededIds = userDao.findPage(0, SEED_USERS).stream().mapToLong(User::get_id).toArray();
+    }
+
+    @AfterAll
+    void tearDown() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
+    }
+
+    @Test
+    void platformThreads_MixedWorkload_WithinBaseline() throws Exception {
+        StressResult result = run(Executors.newFixedThreadPool(THREADS), THREADS);
+        logger.info("Platform threads ({}): {}", THREADS, result);
+        checkBaseline("platform", result);
+    }
+
+    @Test
+    void virtualThreads_MixedWorkload_WithinBaseline() throws Exception {
+        ExecutorService executor = virtualThreadExecutor();
+        assumeTrue(executor != null, "Virtual threads require JDK 21+");
+        StressResult result = run(executor, VIRTUAL_THREADS);
+        logger.info("Virtual threads ({}): {}", VIRTUAL_THREADS, result);
+        checkBaseline("virtual", result);
+    }
+
+    private StressResult run(ExecutorService executor, int workers) throws Exception {
+        long started = System.nanoTime();
+        long deadline = started + DURATION_SECONDS * 1_000_000_000L;
+        List<Future<Worker>> futures = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            futures.add(executor.submit(() -> new Worker().run(deadline)));
+        }
+
+        StressResult result = new StressResult();
+        for (Future<Worker> future : futures) {
+            result.add(future.get());
+        }
+        result.elapsedNanos = System.nanoTime() - started;
+        executor.shutdown();
+        return result;
+    }
+
+    private final class Worker {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+        private long conflicts;
+
+        Worker run(long deadline) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (System.nanoTime() < deadline) {
+                double op = random.nextDouble();
+                long started = System.nanoTime();
+                try {
+                    if (op < READ_RATIO) {
+                        userDao.findById(seededIds[random.nextInt(seededIds.length)]);
+                    } else if (op < READ_RATIO + (1 - READ_RATIO) / 2) {
+                        userDao.save(new User("Stress User", 30,
+                                "contended" + random.nextInt(CONTENDED_EMAILS) + "@example.com"));
+                    } else {
+                        User user = userDao.findById(seededIds[random.nextInt(seededIds.length)]).orElse(null);
+                        if (user != null) {
+                            user.set_age(random.nextInt(18, 90));
+                            userDao.update(user);
+                        }
+                    }
+                } catch (DuplicateEmailException e) {
+                    conflicts++;
+                } catch (Exception e) {
+                    errors++;
+                    logger.debug("Stress operation failed", e);
+                }
+                record(System.nanoTime() - started);
+            }
+            return this;
+        }
+
+        private void record(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    private static final class StressResult {
+        private final List<long[]> parts = new ArrayList<>();
+        private long ops;
+        private long errors;
+        private long conflicts;
+        private long elapsedNanos;
+        private long[] sorted;
+
+        void add(Worker worker) {
+            parts.add(Arrays.copyOf(worker.latencies, worker.count));
+            ops += worker.count;
+            errors += worker.errors;
+            conflicts += worker.conflicts;
+        }
+
+        double throughput() {
+            return ops / (elapsedNanos / 1e9);
+        }
+
+        double errorRate() {
+            return ops == 0 ? 0 : (double) errors / ops;
+        }
+
+        long percentileMicros(double percentile) {
+            if (sorted == null) {
+                sorted = new long[(int) ops];
+                int offset = 0;
+                for (long[] part : parts) {
+                    System.arraycopy(part, 0, sorted, offset, part.length);
+                    offset += part.length;
+                }
+                Arrays.sort(sorted);
+            }
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1000;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ops=%d throughput=%.1f ops/s p50=%dus p99=%dus p999=%dus errors=%d (%.3f%%) conflicts=%d",
+                    ops, throughput(), percentileMicros(0.50), percentileMicros(0.99), percentileMicros(0.999),
+                    errors, errorRate() * 100, conflicts);
+        }
+    }
+
+    // Пропускная способность не ниже baseline * (1 - tolerance), p99 не выше baseline * (1 + tolerance)
+    private void checkBaseline(String prefix, StressResult result) throws IOException {
+        Properties baseline = new Properties();
+        if (Files.exists(BASELINE)) {
+            try (InputStream in = Files.newInputStream(BASELINE)) {
+                baseline.load(in);
+            }
+        }
+
+        if (UPDATE_BASELINE || baseline.getProperty(prefix + ".throughput") == null) {
+            baseline.setProperty(prefix + ".throughput", String.format("%.0f", result.throughput()));
+            baseline.setProperty(prefix + ".p99Micros", Long.toString(result.percentileMicros(0.99)));
+            baseline.setProperty(prefix + ".errorRate", String.format("%.4f", result.errorRate()));
+            Files.createDirectories(BASELINE.getParent());
+            try (OutputStream out = Files.newOutputStream(BASELINE)) {
+                baseline.store(out, "UserDaoStressTest baseline, update with -Dstress.updateBaseline=true");
+            }
+            logger.info("Stored {} baseline in {}", prefix, BASELINE);
+            return;
+        }
+
+        double minThroughput = Double.parseDouble(baseline.getProperty(prefix + ".throughput")) * (1 - TOLERANCE);
+        double maxP99 = Double.parseDouble(baseline.getProperty(prefix + ".p99Micros")) * (1 + TOLERANCE);
+        double maxErrorRate = Double.parseDouble(baseline.getProperty(prefix + ".errorRate")) + 0.001;
+
+        assertTrue(result.throughput() >= minThroughput,
+                String.format("Throughput regression: %.1f ops/s < %.1f ops/s", result.throughput(), minThroughput));
+        assertTrue(result.percentileMicros(0.99) <= maxP99,
+                String.format("p99 regression: %dus > %.0fus", result.percentileMicros(0.99), maxP99));
+        assertTrue(result.errorRate() <= maxErrorRate,
+                String.format("Error rate regression: %.4f > %.4f", result.errorRate(), maxErrorRate));
+    }
+
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package support.dao;
+
+import java.util.Properties;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.SchemaInitializer;
+
+// Общая сборка SessionFactory для тестов: таблицы пользователей и журнала изменений создаются заново
+// (create-drop), поверх них SchemaInitializer добавляет индексы и ограничения, как при старте приложения
+public final class TestDatabases {
+
+    private TestDatabases() {
+    }
+
+    // База H2 в памяти в режиме PostgreSQL; urlOptions дописываются к адресу, например ";DB_CLOSE_DELAY=-1"
+    public static SessionFactory h2(String name, String urlOptions, Properties extraSettings) {
+        Properties settings = new Properties();
+        settings.put(Environment.JAKARTA_JDBC_DRIVER, "org.h2.Driver");
+        settings.putAll(extraSettings);
+        return build(h2Url(name, urlOptions), "sa", "", settings);
+    }
+
+    public static SessionFactory h2(String name) {
+        return h2(name, "", new Properties());
+    }
+
+    public static String h2Url(String name, String urlOptions) {
+        return "jdbc:h2:mem:" + name + ";MODE=PostgreSQL" + urlOptions;
+    }
+
+    public static SessionFactory postgres(PostgreSQLContainer<?> container) {
+        return postgres(container.getJdbcUrl(), container.getUsername(), container.getPassword());
+    }
+
+    public static SessionFactory postgres(String url, String user, String password) {
+        Properties settings = new Properties();
+        settings.put(Environment.JAKARTA_JDBC_DRIVER, "org.postgresql.Driver");
+        settings.put(Environment.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
+        return build(url, user, password, settings);
+    }
+
+    // Пул c3p0 с кэшем подготовленных операторов, как в hibernate.cfg.xml
+    public static Properties pooled() {
+        Properties settings = new Properties();
+        settings.put("hibernate.c3p0.min_size", "5");
+        settings.put("hibernate.c3p0.max_size", "20");
+        settings.put("hibernate.c3p0.max_statements", "50");
+        return settings;
+    }
+
+    // Драйвер и диалект Hibernate определяет по адресу, если они не заданы в extraSettings
+    public static SessionFactory build(String url, String user, String password, Properties extraSettings) {
+        Properties settings = new Properties();
+        settings.put(Environment.JAKARTA_JDBC_URL, url);
+        settings.put(Environment.JAKARTA_JDBC_USER, user);
+        settings.put(Environment.JAKARTA_JDBC_PASSWORD, password);
+        settings.put(Environment.HBM2DDL_AUTO, "create-drop");
+        settings.put(Environment.SHOW_SQL, "false");
+        settings.putAll(extraSettings);
+
+        Configuration configuration = new Configuration();
+        configuration.setProperties(settings);
+        configuration.addAnnotatedClass(User.class);
+        configuration.addAnnotatedClass(UserChangeEvent.class);
+        SessionFactory sessionFactory = configuration.buildSessionFactory(
+                new StandardServiceRegistryBuilder().applySettings(configuration.getProperties()).build());
+        SchemaInitializer.apply(sessionFactory);
+        return sessionFactory;
+    }
+}
@@ -0,0 +1,74 @@
+package unit.cli;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.userfish.cli.UserRecordFormat;
+import com.userfish.model.User;
+
+class UserRecordFormatTest {
+
+    private User user(String name, String email) {
+        User user = new User(name, 30, email);
+        user.set_id(7L);
+        user.set_createdAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+        return user;
+    }
+
+    @Test
+    void csv_WriteThenParse_RoundTrips() throws IOException {
+        StringWriter out = new StringWriter();
+        UserRecordFormat.CSV.writeHeader(out);
+        UserRecordFormat.CSV.write(user("Doe, \"John\"", "john@example.com"), out);
+
+        String[] lines = out.toString().split("\n");
+        List<String> header = UserRecordFormat.CSV.parseHeader(lines[0]);
+        User parsed = UserRecordFormat.CSV.parse(lines[1], header);
+
+        assertEquals("id,name,age,email,createdAt", lines[0]);
+        assertEquals("Doe, \"John\"", parsed.get_name());
+        assertEquals(30, parsed.get_age());
+        assertEquals("john@example.com", parsed.get_email());
+    }
+
+    @Test
+    void jsonl_WriteThenParse_RoundTrips() throws IOException {
+        StringWriter out = new StringWriter();
+        UserRecordFormat.JSONL.write(user("Jane \\ \"Q\"", "jane@example.com"), out);
+
+        User parsed = UserRecordFormat.JSONL.parse(out.toString().trim(), null);
+
+        assertTrue(out.toString().startsWith("{\"id\":7,"));
+        assertEquals("Jane \\ \"Q\"", parsed.get_name());
+        assertEquals(30, parsed.get_age());
+        assertEquals("jane@example.com", parsed.get_email());
+    }
+
+    @Test
+    void csv_ColumnsInAnyOrder_ParsedByHeader() {
+        List<String> header = UserRecordFormat.CSV.parseHeader("email,age,name");
+
+        User parsed = UserRecordFormat.CSV.parse("anna@example.com,22,Anna", header);
+
+        assertEquals("Anna", parsed.get_name());
+        assertEquals(22, parsed.get_age());
+        assertEquals("anna@example.com", parsed.get_email());
+    }
+
+    @Test
+    void jsonl_MalformedLine_ThrowsException() {
+        assertThrows(IllegalArgumentException.class,
+                () -> UserRecordFormat.JSONL.parse("{\"name\":\"Anna\"", null));
+    }
+
+    @Test
+    void of_UnknownFormat_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> UserRecordFormat.of("xml"));
+    }
+}
@@ -0,0 +1,125 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.EmailBloomFilter;
+import com.userfish.dao.EmailFilteredUserDao;
+import com.userfish.dao.InMemoryUserDao;
+import com.userfish.dao.UserDao;
+import com.userfish.model.User;
+
+import contract.dao.UserDaoContract;
+
+class EmailFilteredUserDaoTest extends UserDaoContract {
+
+    @Override
+    protected UserDao createEmptyDao() {
+        EmailFilteredUserDao dao = new EmailFilteredUserDao(new InMemoryUserDao(), 0.01);
+        dao.load(100);
+        return dao;
+    }
+
+    @Test
+    void load_ExistingUsers_DefiniteNegativesSkipDatabase() throws Exception {
+        InMemoryUserDao storage = spy(new InMemoryUserDao());
+        for (int i = 0; i < 250; i++) {
+            storage.save(new User("User " + i, 30, "user" + i + "@example.com"));
+        }
+        EmailFilteredUserDao dao = new EmailFilteredUserDao(storage, 0.01);
+
+        dao.load(100);
+        for (int i = 0; i < 1000; i++) {
+            assertFalse(dao.existsByEmail("free" + i + "@example.com"));
+        }
+
+        assertTrue(dao.existsByEmail("user42@example.com"));
+        assertTrue(dao.getSkippedProbeCount() >= 980);
+        assertEquals(dao.getProbeCount(), 1 + dao.getFalsePositiveCount());
+    }
+
+    @Test
+    void save_TakenEmail_RejectedBeforeInsert() throws Exception {
+        InMemoryUserDao storage = spy(new InMemoryUserDao());
+        EmailFilteredUserDao dao = new EmailFilteredUserDao(storage, 0.01);
+        dao.load(100);
+        dao.save(new User("John Doe", 30, "john@example.com"));
+
+        assertThrows(DuplicateEmailException.class, () -> dao.save(new User("John Clone", 31, "john@example.com")));
+
+        verify(storage).save(any());
+        assertEquals(1, storage.count());
+    }
+
+    @Test
+    void refresh_UserSavedByOtherInstance_AddedToFilter() throws Exception {
+        InMemoryUserDao storage = new InMemoryUserDao();
+        EmailFilteredUserDao dao = new EmailFilteredUserDao(storage, 0.01);
+        EmailFilteredUserDao otherInstance = new EmailFilteredUserDao(storage, 0.01);
+        dao.load(100);
+        otherInstance.load(100);
+
+        otherInstance.save(new User("John Doe", 30, "john@example.com"));
+
+        assertEquals(1, dao.refresh(100));
+        assertEquals(0, dao.refresh(100));
+        assertTrue(dao.existsByEmail("john@example.com"));
+        assertThrows(DuplicateEmailException.class, () -> dao.save(new User("John Clone", 31, "john@example.com")));
+        assertEquals(1, storage.count());
+    }
+
+    @Test
+    void updateAndRestore_NewEmails_AddedToFilter() throws Exception {
+        InMemoryUserDao storage = new InMemoryUserDao();
+        User deleted = storage.save(new User("Jane Doe", 25, "jane@example.com"));
+        storage.delete(deleted.get_id());
+        EmailFilteredUserDao dao = new EmailFilteredUserDao(storage, 0.01);
+        dao.load(100);
+        User john = dao.save(new User("John Doe", 30, "john@example.com"));
+        john.set_email("johnny@example.com");
+
+        dao.update(john);
+        dao.restore(deleted.get_id());
+
+        assertTrue(dao.existsByEmail("johnny@example.com"));
+        assertTrue(dao.existsByEmail("jane@example.com"));
+    }
+
+    @Test
+    void existsByEmail_NotLoaded_AlwaysAsksDelegate() {
+        InMemoryUserDao storage = spy(new InMemoryUserDao());
+        EmailFilteredUserDao dao = new EmailFilteredUserDao(storage, 0.01);
+
+        assertFalse(dao.existsByEmail("john@example.com"));
+
+        verify(storage).existsByEmail("john@example.com");
+        assertFalse(dao.isLoaded());
+    }
+
+    @Test
+    void bloomFilter_AtCapacity_FalsePositiveRateNearTarget() {
+        EmailBloomFilter filter = new EmailBloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user" + i + "@example.com");
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(filter.mightContain("user" + i + "@example.com"));
+            if (filter.mightContain("other" + i + "@example.org")) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < 200, "false positives: " + falsePositives);
+        assertFalse(filter.isSaturated());
+    }
+}
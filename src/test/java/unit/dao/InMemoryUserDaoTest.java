@@ -0,0 +1,115 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.InMemoryUserDao;
+import com.userfish.dao.UserDao;
+import com.userfish.model.User;
+
+import contract.dao.UserDaoContract;
+
+class InMemoryUserDaoTest extends UserDaoContract {
+
+    @Override
+    protected UserDao createEmptyDao() {
+        return new InMemoryUserDao();
+    }
+
+    @Test
+    void save_ConcurrentSameEmail_ExactlyOneSucceeds() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        AtomicInteger conflicts = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int n = i;
+            futures.add(executor.submit(() -> {
+                try {
+                    userDao.save(new User("User " + n, 30, "shared@example.com"));
+                } catch (DuplicateEmailException e) {
+                    conflicts.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertEquals(63, conflicts.get());
+        assertEquals(1, userDao.count());
+    }
+
+    @Test
+    void delete_HardDeleteMode_FreesSlot() throws Exception {
+        UserDao hardDeleteDao = new InMemoryUserDao(false);
+        User saved = hardDeleteDao.save(new User("John Doe", 30, "john@example.com"));
+
+        hardDeleteDao.delete(saved.get_id());
+
+        assertFalse(hardDeleteDao.restore(saved.get_id()));
+        assertEquals(0, hardDeleteDao.count());
+    }
+
+    @Test
+    void bulkInsert_SparseIdsBeyondIntRange_PagedInIdOrder() throws Exception {
+        List<User> sparse = new ArrayList<>();
+        long[] ids = {5_000_000_000L, 7, Integer.MAX_VALUE + 10L, 3_000_000};
+        for (long id : ids) {
+            User user = new User("User " + id, 30, "user" + id + "@example.com");
+            user.set_id(id);
+            user.set_createdAt(LocalDateTime.now());
+            sparse.add(user);
+        }
+
+        userDao.bulkInsert(sparse);
+        User next = userDao.save(new User("Next", 30, "next@example.com"));
+
+        assertEquals(List.of(7L, 3_000_000L), ids(userDao.findPage(0, 2)));
+        assertEquals(List.of(Integer.MAX_VALUE + 10L, 5_000_000_000L, next.get_id()),
+                ids(userDao.findPage(3_000_000, 10)));
+        assertEquals(5_000_000_001L, next.get_id());
+        assertTrue(userDao.findById(Integer.MAX_VALUE + 10L).isPresent());
+    }
+
+    @Test
+    void delete_HardDeleteOfManyRows_RemainingRowsStillFound() throws Exception {
+        UserDao hardDeleteDao = new InMemoryUserDao(false);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            users.add(new User("User " + i, 30, "user" + i + "@example.com"));
+        }
+        hardDeleteDao.saveAll(users);
+
+        for (User user : users) {
+            if (user.get_id() % 3 != 0) {
+                hardDeleteDao.delete(user.get_id());
+            }
+        }
+
+        for (User user : users) {
+            assertEquals(user.get_id() % 3 == 0, hardDeleteDao.findById(user.get_id()).isPresent());
+        }
+        List<User> page = hardDeleteDao.findPage(0, 10);
+        assertEquals(List.of(3L, 6L, 9L, 12L, 15L, 18L, 21L, 24L, 27L, 30L), ids(page));
+        assertEquals(page.get(9).get_id() + 3, hardDeleteDao.findPage(page.get(9).get_id(), 1).get(0).get_id());
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::get_id).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,183 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLTimeoutException;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.JdbcUserDao;
+import com.userfish.dao.UserChangeDaoImpl;
+import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.Deadline;
+import com.userfish.util.DeadlineExceededException;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import support.dao.TestDatabases;
+
+// Схему создает Hibernate, JdbcUserDao ходит в ту же базу H2 через собственный DataSource.
+// Полный контракт (повторное использование email, upsert) проверяется на PostgreSQL в JdbcUserDaoContractIT
+class JdbcUserDaoTest {
+    private static final String URL = "jdbc:h2:mem:jdbcdao;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+
+    private SessionFactory sessionFactory;
+    private JdbcUserDao userDao;
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory = TestDatabases.build(URL, "sa", "", new Properties());
+
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL(URL);
+        dataSource.setUser("sa");
+        userDao = new JdbcUserDao(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void saveUpdateDelete_RoundTrip_RecordsOutboxEvents() throws Exception {
+        User saved = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User changed = userDao.findById(saved.get_id()).get();
+        changed.set_age(31);
+
+        User updated = userDao.update(changed);
+        userDao.delete(saved.get_id());
+
+        assertEquals(31, updated.get_age());
+        assertFalse(userDao.findById(saved.get_id()).isPresent());
+        assertTrue(userDao.restore(saved.get_id()));
+        assertEquals(31, userDao.findById(saved.get_id()).get().get_age());
+        List<UserChangeEvent.Type> types = new UserChangeDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory))
+                .findAfter(0, 0, 10).stream()
+                .map(UserChangeEvent::get_type)
+                .collect(Collectors.toList());
+        assertEquals(List.of(UserChangeEvent.Type.CREATED, UserChangeEvent.Type.UPDATED,
+                UserChangeEvent.Type.DELETED, UserChangeEvent.Type.RESTORED), types);
+    }
+
+    @Test
+    void update_NothingChanged_KeepsUpdatedAt() throws Exception {
+        User saved = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User same = userDao.findById(saved.get_id()).get();
+
+        User updated = userDao.update(same);
+
+        assertEquals(same.get_updatedAt(), updated.get_updatedAt());
+        assertEquals(same.get_updatedAt(), userDao.findById(saved.get_id()).get().get_updatedAt());
+    }
+
+    @Test
+    void saveAll_Batch_AssignsIdsInOrder() throws Exception {
+        List<User> saved = userDao.saveAll(Arrays.asList(
+                new User("User 1", 21, "user1@example.com"),
+                new User("User 2", 22, "user2@example.com"),
+                new User("User 3", 23, "user3@example.com")));
+
+        for (User user : saved) {
+            assertEquals(user.get_email(), userDao.findById(user.get_id()).get().get_email());
+        }
+        assertEquals(List.of(saved.get(2).get_id(), saved.get(0).get_id()),
+                userDao.findAllById(List.of(saved.get(2).get_id(), 999_999L, saved.get(0).get_id())).stream()
+                        .map(User::get_id)
+                        .sorted((a, b) -> Long.compare(b, a))
+                        .collect(Collectors.toList()));
+        assertEquals(2, userDao.findPage(saved.get(0).get_id(), 10).size());
+        assertThrows(DuplicateEmailException.class,
+                () -> userDao.saveAll(List.of(new User("Clone", 40, "user1@example.com"))));
+        assertEquals(3, userDao.count());
+    }
+
+    @Test
+    void bulkInsert_SnapshotRows_KeepsIdsAndAdvancesIdentity() throws Exception {
+        User first = new User("User 1", 21, "user1@example.com");
+        first.set_id(10L);
+        User second = new User("User 2", 22, "user2@example.com");
+        second.set_id(20L);
+
+        userDao.bulkInsert(List.of(first, second));
+        User next = userDao.save(new User("User 3", 23, "user3@example.com"));
+
+        assertEquals("user2@example.com", userDao.findById(20L).get().get_email());
+        assertTrue(next.get_id() > 20L);
+    }
+
+    @Test
+    void aggregates_LiveUsers_CountedWithPlainSql() throws Exception {
+        for (int i = 0; i < 6; i++) {
+            userDao.save(new User("User " + i, 25 + i * 2, "user" + i + (i % 2 == 0 ? "@Test.org" : "@example.com")));
+        }
+        LocalDate today = LocalDate.now();
+
+        assertEquals(Map.of(20, 3L, 30, 3L), userDao.countByAgeBucket(10));
+        assertEquals(Map.of(today, 6L), userDao.countSignupsPerDay(today, today.plusDays(1)));
+        assertEquals(Map.of("test.org", 3L, "example.com", 3L), userDao.countByEmailDomain(5));
+    }
+
+    @Test
+    void findIdBoundaries_ManyParts_EqualDepthRanges() throws Exception {
+        List<User> saved = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            saved.add(userDao.save(new User("User " + i, 30, "user" + i + "@example.com")));
+        }
+        long first = saved.get(0).get_id();
+
+        assertEquals(List.of(first, first + 3, first + 6, first + 9, first + 12), userDao.findIdBoundaries(4));
+        assertEquals(3, userDao.findPageInRange(first + 2, first + 6, 10).size());
+    }
+
+    @Test
+    void findAll_ExpiredDeadline_ThrowsDeadlineExceeded() throws Exception {
+        userDao.save(new User("John Doe", 30, "john@example.com"));
+        Deadline deadline = Deadline.after(Duration.ofMillis(1));
+        Thread.sleep(5);
+
+        assertThrows(DeadlineExceededException.class, () -> deadline.run(() -> userDao.findAll()));
+        assertEquals(1, userDao.getExpiredBeforeStartCount());
+        assertEquals(0, userDao.getTimedOutCount());
+    }
+
+    @Test
+    void findAll_StatementTimedOut_CountedAndThrowsDeadlineExceeded() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenThrow(new SQLTimeoutException("canceling statement due to user request"));
+        JdbcUserDao timingOutDao = new JdbcUserDao(dataSource);
+
+        assertThrows(DeadlineExceededException.class,
+                () -> Deadline.after(Duration.ofSeconds(10)).run(() -> timingOutDao.findAll()));
+        assertEquals(1, timingOutDao.getTimedOutCount());
+        assertEquals(0, timingOutDao.getExpiredBeforeStartCount());
+    }
+}
@@ -0,0 +1,92 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.InMemoryUserDao;
+import com.userfish.dao.ParallelUserScanner;
+import com.userfish.dao.ParallelUserScanner.Partitioning;
+import com.userfish.model.User;
+
+class ParallelUserScannerTest {
+    private InMemoryUserDao userDao;
+    private List<Long> liveIds;
+
+    // Дыры в id: каждый третий пользователь удален, а последние сто созданы после длинной серии удалений
+    @BeforeEach
+    void setUp() throws Exception {
+        userDao = spy(new InMemoryUserDao());
+        liveIds = new ArrayList<>();
+        for (int i = 0; i < 1200; i++) {
+            User user = userDao.save(new User("User " + i, 20 + i % 50, "user" + i + "@example.com"));
+            if (i % 3 == 0 || (i >= 600 && i < 1100)) {
+                userDao.delete(user.get_id());
+            } else {
+                liveIds.add(user.get_id());
+            }
+        }
+    }
+
+    @Test
+    void scan_Ordered_DeliversAllUsersInIdOrder() throws Exception {
+        for (Partitioning partitioning : Partitioning.values()) {
+            List<Long> seen = new ArrayList<>();
+
+            long scanned = new ParallelUserScanner(userDao, 4, 17)
+                    .scan(partitioning, true, page -> page.forEach(user -> seen.add(user.get_id())));
+
+            assertEquals(liveIds.size(), scanned);
+            assertEquals(liveIds, seen, partitioning.name());
+        }
+    }
+
+    @Test
+    void scan_Unordered_DeliversEveryUserOnce() throws Exception {
+        List<Long> seen = Collections.synchronizedList(new ArrayList<>());
+
+        long scanned = new ParallelUserScanner(userDao, 8, 10)
+                .scan(Partitioning.MIN_MAX, false, page -> page.forEach(user -> seen.add(user.get_id())));
+
+        assertEquals(liveIds.size(), scanned);
+        assertEquals(liveIds, seen.stream().sorted().collect(Collectors.toList()));
+    }
+
+    @Test
+    void scan_HandlerFails_StopsAndRethrows() {
+        ParallelUserScanner scanner = new ParallelUserScanner(userDao, 4, 5);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> scanner.scan(Partitioning.SAMPLED, true, page -> {
+                    throw new IllegalStateException("disk full");
+                }));
+
+        assertEquals("disk full", exception.getMessage());
+    }
+
+    @Test
+    void scan_RangeQueryFails_Rethrows() {
+        doThrow(new RuntimeException("Failed to retrieve users"))
+                .when(userDao).findPageInRange(anyLong(), anyLong(), anyInt());
+        ParallelUserScanner scanner = new ParallelUserScanner(userDao, 4, 50);
+
+        assertThrows(RuntimeException.class, () -> scanner.scan(Partitioning.SAMPLED, false, page -> { }));
+    }
+
+    @Test
+    void scan_EmptyTable_ReturnsZero() throws Exception {
+        assertEquals(0, new ParallelUserScanner(new InMemoryUserDao(), 4, 50)
+                .scan(Partitioning.SAMPLED, true, page -> { }));
+    }
+}
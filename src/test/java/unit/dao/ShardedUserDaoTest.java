@@ -0,0 +1,301 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.EmailShardDirectory;
+import com.userfish.dao.ShardRebalancer;
+import com.userfish.dao.ShardedUserDao;
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.util.HibernateTransactionTemplate;
+import com.userfish.util.SchemaInitializer;
+
+import support.dao.TestDatabases;
+
+// Каждый шард и справочник - отдельная база H2 в памяти
+class ShardedUserDaoTest {
+    private final List<SessionFactory> sessionFactories = new ArrayList<>();
+    private final List<UserDao> shards = new ArrayList<>();
+    private EmailShardDirectory directory;
+    private ShardedUserDao userDao;
+
+    @BeforeEach
+    void setUp() {
+        SessionFactory directoryFactory = database("directory");
+        SchemaInitializer.applyEmailShardDirectory(directoryFactory);
+        directory = new EmailShardDirectory(new HibernateTransactionTemplate(() -> directoryFactory));
+        for (int shard = 0; shard < 2; shard++) {
+            shards.add(shard(shard, 2));
+        }
+        userDao = new ShardedUserDao(shards, directory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userDao.close();
+        sessionFactories.forEach(SessionFactory::close);
+    }
+
+    @Test
+    void save_ManyUsers_EachRowLivesInShardOfItsId() throws Exception {
+        List<User> saved = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            saved.add(userDao.save(new User("User " + i, 20 + i, "user" + i + "@example.com")));
+        }
+
+        for (User user : saved) {
+            UserDao owner = shards.get(ShardedUserDao.shardOf(user.get_id(), 2));
+            assertEquals(user.get_email(), owner.findById(user.get_id()).get().get_email());
+            assertEquals(Integer.valueOf(ShardedUserDao.shardOf(user.get_id(), 2)), directory.lookup(user.get_email()));
+        }
+        assertTrue(shards.get(0).count() > 0);
+        assertTrue(shards.get(1).count() > 0);
+        assertEquals(20, userDao.count());
+    }
+
+    @Test
+    void saveAndUpdate_EmailTakenInOtherShard_ThrowsDuplicateEmailException() throws Exception {
+        User john = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User other = otherShardUser(john);
+
+        assertThrows(DuplicateEmailException.class,
+                () -> userDao.save(new User("John Clone", 31, "john@example.com")));
+        User changed = userDao.findById(other.get_id()).get();
+        changed.set_email("john@example.com");
+        assertThrows(DuplicateEmailException.class, () -> userDao.update(changed));
+        assertEquals(Integer.valueOf(ShardedUserDao.shardOf(other.get_id(), 2)), directory.lookup(other.get_email()));
+        assertEquals(2, userDao.count());
+    }
+
+    @Test
+    void save_OrphanedClaimWithoutRow_TakenOverOnlyWhenStale() throws Exception {
+        // Сбой между захватом email и записью в шард: в справочнике запись есть, пользователя нет
+        directory.claim("john@example.com", 0);
+        directory.claim("jane@example.com", 1);
+
+        assertThrows(DuplicateEmailException.class,
+                () -> userDao.save(new User("John Doe", 30, "john@example.com")));
+        ShardedUserDao staleClaims = new ShardedUserDao(shards, directory, Duration.ZERO);
+        try {
+            User john = staleClaims.save(new User("John Doe", 30, "john@example.com"));
+            List<User> batch = staleClaims.saveAll(List.of(new User("Jane Doe", 25, "jane@example.com")));
+
+            assertTrue(staleClaims.existsByEmail("john@example.com"));
+            assertEquals(Integer.valueOf(ShardedUserDao.shardOf(john.get_id(), 2)), directory.lookup(john.get_email()));
+            assertEquals(Integer.valueOf(ShardedUserDao.shardOf(batch.get(0).get_id(), 2)),
+                    directory.lookup("jane@example.com"));
+            assertThrows(DuplicateEmailException.class,
+                    () -> staleClaims.save(new User("John Clone", 31, "john@example.com")));
+        } finally {
+            staleClaims.close();
+        }
+    }
+
+    @Test
+    void updateAndDelete_EmailChanges_DirectoryFollows() throws Exception {
+        User john = userDao.save(new User("John Doe", 30, "john@example.com"));
+        User changed = userDao.findById(john.get_id()).get();
+        changed.set_email("johnny@example.com");
+
+        userDao.update(changed);
+        assertEquals(null, directory.lookup("john@example.com"));
+        assertEquals(Integer.valueOf(ShardedUserDao.shardOf(john.get_id(), 2)), directory.lookup("johnny@example.com"));
+
+        userDao.delete(john.get_id());
+        assertEquals(null, directory.lookup("johnny@example.com"));
+        assertFalse(userDao.findById(john.get_id()).isPresent());
+    }
+
+    @Test
+    void scatterGather_PagesAndChanges_MergeAcrossShards() throws Exception {
+        Instant start = Instant.now().minusSeconds(1);
+        List<User> saved = userDao.saveAll(Arrays.asList(
+                new User("User 1", 21, "user1@example.com"),
+                new User("User 2", 22, "user2@example.com"),
+                new User("User 3", 23, "user3@example.com"),
+                new User("User 4", 24, "user4@example.com"),
+                new User("User 5", 25, "user5@example.com")));
+        List<Long> ids = saved.stream().map(User::get_id).sorted().collect(Collectors.toList());
+
+        List<User> firstPage = userDao.findPage(0, 3);
+        List<User> secondPage = userDao.findPage(firstPage.get(2).get_id(), 3);
+
+        assertEquals(ids.subList(0, 3), ids(firstPage));
+        assertEquals(ids.subList(3, 5), ids(secondPage));
+        assertEquals(ids, ids(userDao.findAll()));
+        assertEquals(List.of(ids.get(4), ids.get(0)), ids(userDao.findAllById(List.of(ids.get(4), 999_999L, ids.get(0)))));
+        assertEquals(3, userDao.findChangedSince(start, 3).size());
+        List<Long> boundaries = userDao.findIdBoundaries(2);
+        assertEquals(ids.get(0), boundaries.get(0));
+        assertEquals(ids.get(4) + 1, (long) boundaries.get(boundaries.size() - 1));
+        assertEquals(ids.subList(1, 4), ids(userDao.findPageInRange(ids.get(0), ids.get(4), 10)));
+    }
+
+    @Test
+    void aggregates_UsersInBothShards_MergedAcrossShards() throws Exception {
+        for (int i = 0; i < 12; i++) {
+            userDao.save(new User("User " + i, 20 + i, "user" + i + (i % 3 == 0 ? "@test.org" : "@example.com")));
+        }
+        LocalDate today = LocalDate.now();
+
+        assertEquals(Map.of(20, 10L, 30, 2L), userDao.countByAgeBucket(10));
+        assertEquals(Map.of(today, 12L), userDao.countSignupsPerDay(today, today.plusDays(1)));
+        assertEquals(List.of("example.com", "test.org"), List.copyOf(userDao.countByEmailDomain(5).keySet()));
+        assertEquals(Map.of("example.com", 8L), userDao.countByEmailDomain(1));
+    }
+
+    @Test
+    void rebalance_TwoShardsIntoThree_MovesRowsAndKeepsIds() throws Exception {
+        List<User> saved = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            saved.add(userDao.save(new User("User " + i, 20 + i, "user" + i + "@example.com")));
+        }
+        User deleted = saved.stream()
+                .filter(user -> ShardedUserDao.shardOf(user.get_id(), 3) == 2)
+                .findFirst().get();
+        userDao.delete(deleted.get_id());
+        UserDao third = shard(2, 3);
+        List<UserDao> targets = Arrays.asList(shards.get(0), shards.get(1), third);
+        long changesBefore = changeCount();
+
+        long moved = new ShardRebalancer(shards, targets, directory).rebalance(7);
+        for (int shard = 0; shard < 3; shard++) {
+            SchemaInitializer.applyShardIdentity(sessionFactories.get(shard + 1), shard, 3);
+        }
+        ShardedUserDao resharded = new ShardedUserDao(targets, directory);
+        try {
+            long expectedMoved = saved.stream()
+                    .filter(user -> ShardedUserDao.shardOf(user.get_id(), 2) != ShardedUserDao.shardOf(user.get_id(), 3))
+                    .count();
+            assertEquals(expectedMoved, moved);
+            assertEquals(changesBefore, changeCount());
+            for (User user : saved) {
+                if (user.get_id() == deleted.get_id()) {
+                    continue;
+                }
+                int shard = ShardedUserDao.shardOf(user.get_id(), 3);
+                assertEquals(user.get_email(), targets.get(shard).findById(user.get_id()).get().get_email());
+                assertEquals(Integer.valueOf(shard), directory.lookup(user.get_email()));
+            }
+            assertEquals(29, resharded.count());
+            assertTrue(resharded.restore(deleted.get_id()));
+            assertEquals(deleted.get_email(), third.findById(deleted.get_id()).get().get_email());
+            User next = resharded.save(new User("New User", 30, "new@example.com"));
+            assertEquals(next.get_email(), resharded.findById(next.get_id()).get().get_email());
+        } finally {
+            resharded.close();
+        }
+    }
+
+    @Test
+    void rebalance_RerunAfterPartialMove_CompletesWithoutDuplicates() throws Exception {
+        List<User> saved = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            saved.add(userDao.save(new User("User " + i, 20 + i, "user" + i + "@example.com")));
+        }
+        UserDao third = shard(2, 3);
+        List<UserDao> targets = Arrays.asList(shards.get(0), shards.get(1), third);
+        // Сбой после вставки в новый шард, но до удаления из исходного
+        List<User> copiedBeforeCrash = saved.stream()
+                .filter(user -> ShardedUserDao.shardOf(user.get_id(), 3) == 2)
+                .limit(2)
+                .collect(Collectors.toList());
+        third.insertMoved(copiedBeforeCrash);
+
+        new ShardRebalancer(shards, targets, directory).rebalance(5);
+        long movedOnRerun = new ShardRebalancer(shards, targets, directory).rebalance(5);
+
+        assertEquals(0, movedOnRerun);
+        for (User user : saved) {
+            int shard = ShardedUserDao.shardOf(user.get_id(), 3);
+            assertEquals(user.get_email(), targets.get(shard).findById(user.get_id()).get().get_email());
+        }
+        assertEquals(12, shards.get(0).count() + shards.get(1).count() + third.count());
+    }
+
+    @Test
+    void restore_EmailTakenInOtherShard_ThrowsWithoutTouchingRow() throws Exception {
+        User john = userDao.save(new User("John Doe", 30, "john@example.com"));
+        userDao.delete(john.get_id());
+        int otherShard = 1 - ShardedUserDao.shardOf(john.get_id(), 2);
+        shards.get(otherShard).save(new User("John Again", 31, "john@example.com"));
+        assertTrue(directory.claim("john@example.com", otherShard));
+        long changesBefore = changeCount();
+
+        assertThrows(DuplicateEmailException.class, () -> userDao.restore(john.get_id()));
+
+        assertEquals(changesBefore, changeCount());
+        assertFalse(userDao.findById(john.get_id()).isPresent());
+        assertEquals(Integer.valueOf(otherShard), directory.lookup("john@example.com"));
+    }
+
+    @Test
+    void applyShardIdentity_Reapplied_NeverReissuesIds() throws Exception {
+        SessionFactory shardFactory = sessionFactories.get(1);
+        User first = shards.get(0).save(new User("First", 30, "first@example.com"));
+        User last = shards.get(0).save(new User("Last", 31, "last@example.com"));
+        shardFactory.inTransaction(session -> session.createNativeMutationQuery("delete from users where _id = :id")
+                .setParameter("id", last.get_id())
+                .executeUpdate());
+
+        SchemaInitializer.applyShardIdentity(shardFactory, 0, 2);
+        User next = shards.get(0).save(new User("Next", 32, "next@example.com"));
+
+        assertEquals(first.get_id() + 2, last.get_id());
+        assertEquals(last.get_id() + 2, next.get_id());
+    }
+
+    private long changeCount() {
+        long changes = 0;
+        for (SessionFactory sessionFactory : sessionFactories.subList(1, sessionFactories.size())) {
+            changes += sessionFactory.fromTransaction(session ->
+                    session.createNativeQuery("select count(*) from user_changes", Long.class).getSingleResult());
+        }
+        return changes;
+    }
+
+    private User otherShardUser(User user) throws Exception {
+        for (int i = 0; ; i++) {
+            User other = userDao.save(new User("Other " + i, 30, "other" + i + "@example.com"));
+            if (ShardedUserDao.shardOf(other.get_id(), 2) != ShardedUserDao.shardOf(user.get_id(), 2)) {
+                return other;
+            }
+            userDao.delete(other.get_id());
+        }
+    }
+
+    private UserDao shard(int shard, int shardCount) {
+        SessionFactory sessionFactory = database("shard" + shard);
+        SchemaInitializer.applyShardIdentity(sessionFactory, shard, shardCount);
+        return new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
+    }
+
+    private SessionFactory database(String name) {
+        SessionFactory sessionFactory = TestDatabases.h2(name);
+        sessionFactories.add(sessionFactory);
+        return sessionFactory;
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::get_id).collect(Collectors.toList());
+    }
+}
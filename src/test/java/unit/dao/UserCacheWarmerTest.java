@@ -0,0 +1,87 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.InMemoryUserDao;
+import com.userfish.dao.UserCacheWarmer;
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import support.dao.TestDatabases;
+
+class UserCacheWarmerTest {
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory = TestDatabases.h2("warmup");
+        userDao = new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    @Test
+    void warmUp_ManyUsers_PreloadsMostRecentInChunks() throws Exception {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            users.add(new User("User", 30, "user" + i + "@example.com"));
+        }
+        userDao.saveAll(users);
+        List<Long> loadedIds = Collections.synchronizedList(new ArrayList<>());
+        List<Integer> chunkSizes = Collections.synchronizedList(new ArrayList<>());
+        UserCacheWarmer warmer = new UserCacheWarmer(userDao, 3, 6, chunk -> {
+            chunkSizes.add(chunk.size());
+            chunk.forEach(user -> loadedIds.add(user.get_id()));
+        });
+
+        int preloaded = warmer.warmUp(20, 10_000);
+
+        List<Long> expected = users.stream().map(User::get_id).sorted(Collections.reverseOrder())
+                .limit(20).sorted().collect(Collectors.toList());
+        assertEquals(20, preloaded);
+        assertEquals(expected, loadedIds.stream().sorted().collect(Collectors.toList()));
+        assertEquals(4, chunkSizes.size());
+    }
+
+    @Test
+    void warmUp_EmptyTable_WarmsStatementsOnly() {
+        UserCacheWarmer warmer = new UserCacheWarmer(userDao, 2, 10, chunk -> { });
+
+        assertEquals(0, warmer.warmUp(100, 10_000));
+    }
+
+    @Test
+    void warmUp_DaoWithoutHibernate_PreloadsLiveUsersThroughDao() throws Exception {
+        UserDao inMemoryDao = new InMemoryUserDao();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            users.add(inMemoryDao.save(new User("User", 30, "user" + i + "@example.com")));
+        }
+        inMemoryDao.delete(users.get(29).get_id());
+        List<Long> loadedIds = Collections.synchronizedList(new ArrayList<>());
+        UserCacheWarmer warmer = new UserCacheWarmer(inMemoryDao, 2, 4,
+                chunk -> chunk.forEach(user -> loadedIds.add(user.get_id())));
+
+        int preloaded = warmer.warmUp(10, 10_000);
+
+        List<Long> expected = users.subList(19, 29).stream().map(User::get_id).collect(Collectors.toList());
+        assertEquals(10, preloaded);
+        assertEquals(expected, loadedIds.stream().sorted().collect(Collectors.toList()));
+    }
+}
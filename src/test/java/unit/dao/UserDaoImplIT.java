@@ -4,9 +4,12 @@ import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
+import java.time.Instant;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -17,7 +20,9 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import com.userfish.Service.UserService;
 import com.userfish.Service.UserServiceImpl;
+import com.userfish.dao.UpsertResult;
 import com.userfish.dao.UserDao;
+import com.userfish.dao.UserStats;
 import com.userfish.model.User;
 
 import jakarta.transaction.SystemException;
@@ -238,4 +243,102 @@ class UserServiceImplTest {
         assertFalse(result);
         verify(userDao, never()).findById(anyLong());
     }
-}
\ No newline at end of file
+    
+    @Test
+    void createUsers_ValidBatch_SavesAll() throws IllegalStateException, SystemException {
+        List<User> batch = Arrays.asList(testUser, new User("Jane Doe", 25, "jane@example.com"));
+        when(userDao.saveAll(batch)).thenReturn(batch);
+        
+        List<User> result = userService.createUsers(batch);
+        
+        assertEquals(2, result.size());
+        verify(userDao, times(1)).saveAll(batch);
+    }
+    
+    @Test
+    void createUsers_InvalidUserInBatch_SavesNothing() throws IllegalStateException, SystemException {
+        List<User> batch = Arrays.asList(testUser, new User("Jane Doe", 25, "not-an-email"));
+        
+        assertThrows(IllegalArgumentException.class, () -> userService.createUsers(batch));
+        verify(userDao, never()).saveAll(any());
+    }
+    
+    @Test
+    void bulkInsertUsers_Snapshot_DelegatesToDao() throws IllegalStateException, SystemException {
+        List<User> batch = Arrays.asList(testUser, new User("Jane Doe", 25, "jane@example.com"));
+        
+        userService.bulkInsertUsers(batch);
+        
+        verify(userDao, times(1)).bulkInsert(batch);
+    }
+    
+    @Test
+    void getUsersByIds_InvalidId_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> userService.getUsersByIds(Arrays.asList(1L, -2L)));
+        verify(userDao, never()).findAllById(any());
+    }
+    
+    @Test
+    void getUsersChangedSince_ValidCursor_DelegatesToDao() {
+        Instant since = Instant.parse("2024-01-01T00:00:00Z");
+        when(userDao.findChangedSince(since, 5L, 100)).thenReturn(Arrays.asList(testUser));
+        
+        List<User> result = userService.getUsersChangedSince(since, 5L, 100);
+        
+        assertEquals(1, result.size());
+        verify(userDao, times(1)).findChangedSince(since, 5L, 100);
+    }
+    
+    @Test
+    void getUsersChangedSince_NullSince_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> userService.getUsersChangedSince(null, 0L, 100));
+        verify(userDao, never()).findChangedSince(any(), anyLong(), anyInt());
+    }
+    
+    @Test
+    void restoreUser_DeletedUser_ReturnsTrue() throws IllegalStateException, SystemException {
+        when(userDao.restore(1L)).thenReturn(true);
+        
+        assertTrue(userService.restoreUser(1L));
+        verify(userDao, times(1)).restore(1L);
+    }
+    
+    @Test
+    void restoreUser_InvalidId_ThrowsException() throws IllegalStateException, SystemException {
+        assertThrows(IllegalArgumentException.class, () -> userService.restoreUser(0L));
+        verify(userDao, never()).restore(anyLong());
+    }
+    
+    @Test
+    void upsertUser_ValidData_DelegatesToDao() throws IllegalStateException, SystemException {
+        when(userDao.upsertByEmail(any(User.class))).thenReturn(new UpsertResult(testUser, false));
+        
+        UpsertResult result = userService.upsertUser("John Doe", 30, "john@example.com");
+        
+        assertTrue(result.isUpdated());
+        verify(userDao, times(1)).upsertByEmail(any(User.class));
+    }
+    
+    @Test
+    void upsertUser_InvalidEmail_ThrowsException() throws IllegalStateException, SystemException {
+        assertThrows(IllegalArgumentException.class, () -> userService.upsertUser("John Doe", 30, "invalid"));
+        verify(userDao, never()).upsertByEmail(any(User.class));
+    }
+    
+    @Test
+    void getUserStats_SparseSignups_FillsMissingDaysWithZero() {
+        LocalDate today = LocalDate.now();
+        when(userDao.count()).thenReturn(3L);
+        when(userDao.countByAgeBucket(10)).thenReturn(Map.of(30, 3L));
+        when(userDao.countSignupsPerDay(today.minusDays(2), today.plusDays(1))).thenReturn(Map.of(today, 3L));
+        when(userDao.countByEmailDomain(5)).thenReturn(Map.of("example.com", 3L));
+        
+        UserStats stats = userService.getUserStats(10, 3, 5);
+        
+        assertEquals(3, stats.getTotal());
+        assertEquals(List.of(0L, 0L, 3L), List.copyOf(stats.getSignupsPerDay().values()));
+        assertEquals(today.minusDays(2), stats.getSignupsPerDay().keySet().iterator().next());
+        assertEquals(Map.of("example.com", 3L), stats.getCountByEmailDomain());
+        verify(userDao, never()).findAll();
+    }
+}
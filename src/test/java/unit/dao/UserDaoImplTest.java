@@ -0,0 +1,128 @@
+package unit.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Properties;
+import java.util.stream.Collectors;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import com.userfish.dao.UserChangeDaoImpl;
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.model.UserChangeEvent;
+import com.userfish.util.HibernateTransactionTemplate;
+
+import jakarta.transaction.SystemException;
+
+import support.dao.TestDatabases;
+
+// UserDaoImpl на H2 в режиме PostgreSQL; upsert, частичный уникальный индекс и xid транзакций H2 не воспроизводит,
+// их проверяют *IT на PostgreSQL (mvn test -Pit)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class UserDaoImplTest {
+    private SessionFactory sessionFactory;
+    private UserDao userDao;
+
+    @BeforeAll
+    void beforeAll() {
+        sessionFactory = TestDatabases.h2("userdaoimpl", ";DB_CLOSE_DELAY=-1", new Properties());
+    }
+
+    @AfterAll
+    void afterAll() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        sessionFactory.inTransaction(session -> {
+            session.createNativeMutationQuery("truncate table users restart identity").executeUpdate();
+            session.createNativeMutationQuery("truncate table user_changes restart identity").executeUpdate();
+        });
+        userDao = new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
+    }
+
+    @Test
+    void saveUpdateDelete_EachChange_WritesOutboxEvent() throws IllegalStateException, SystemException {
+        User saved = userDao.save(new User("Outbox User", 25, "outbox@example.com"));
+        saved.set_age(26);
+        userDao.update(saved);
+        userDao.delete(saved.get_id());
+
+        List<UserChangeEvent> events = new UserChangeDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory))
+                .findAfter(0, 0, 10);
+
+        assertEquals(List.of(UserChangeEvent.Type.CREATED, UserChangeEvent.Type.UPDATED, UserChangeEvent.Type.DELETED),
+                events.stream().map(UserChangeEvent::get_type).collect(Collectors.toList()));
+        assertTrue(events.stream().allMatch(event -> event.get_userId() == saved.get_id()));
+    }
+
+    @Test
+    void findChangedSince_KeysetContinuation_ReturnsEachUserOnce() throws IllegalStateException, SystemException {
+        userDao.save(new User("User 1", 25, "user1@example.com"));
+        userDao.save(new User("User 2", 30, "user2@example.com"));
+
+        List<User> firstPage = userDao.findChangedSince(Instant.EPOCH, 1);
+        User last = firstPage.get(0);
+        Instant cursor = last.get_updatedAt().atZone(ZoneId.systemDefault()).toInstant();
+        List<User> secondPage = userDao.findChangedSince(cursor, last.get_id(), 1);
+        List<User> thirdPage = userDao.findChangedSince(
+                secondPage.get(0).get_updatedAt().atZone(ZoneId.systemDefault()).toInstant(),
+                secondPage.get(0).get_id(), 1);
+
+        assertEquals(1, firstPage.size());
+        assertEquals(1, secondPage.size());
+        assertNotEquals(last.get_id(), secondPage.get(0).get_id());
+        assertTrue(thirdPage.isEmpty());
+    }
+
+    @Test
+    void update_ExistingUser_AdvancesUpdatedAt() throws IllegalStateException, SystemException {
+        User savedUser = userDao.save(new User("Original", 25, "original@example.com"));
+
+        savedUser.set_age(26);
+        User updatedUser = userDao.update(savedUser);
+
+        assertNotNull(updatedUser.get_updatedAt());
+        assertFalse(updatedUser.get_updatedAt().isBefore(updatedUser.get_createdAt()));
+    }
+
+    @Test
+    void delete_SoftDeletedUser_CanBeRestored() throws IllegalStateException, SystemException {
+        User savedUser = userDao.save(new User("Soft Delete", 25, "soft@example.com"));
+
+        userDao.delete(savedUser.get_id());
+        assertFalse(userDao.findById(savedUser.get_id()).isPresent());
+        assertEquals(0, userDao.count());
+
+        assertTrue(userDao.restore(savedUser.get_id()));
+        assertTrue(userDao.findById(savedUser.get_id()).isPresent());
+    }
+
+    @Test
+    void purgeDeleted_OldTombstones_RemovedInBatches() throws IllegalStateException, SystemException {
+        for (int i = 0; i < 3; i++) {
+            User user = userDao.save(new User("Purge User", 25, "purge" + i + "@example.com"));
+            userDao.delete(user.get_id());
+        }
+
+        assertEquals(2, userDao.purgeDeleted(LocalDateTime.now().plusMinutes(1), 2));
+        assertEquals(1, userDao.purgeDeleted(LocalDateTime.now().plusMinutes(1), 2));
+        assertEquals(0, userDao.purgeDeleted(LocalDateTime.now().plusMinutes(1), 2));
+    }
+}
@@ -0,0 +1,180 @@
+package unit.http;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.userfish.Service.AdmissionControlledUserService;
+import com.userfish.Service.AdmissionRejectedException;
+import com.userfish.Service.UserService;
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.http.UserHttpServer;
+import com.userfish.model.User;
+import com.userfish.util.Deadline;
+import com.userfish.util.DeadlineExceededException;
+
+@ExtendWith(MockitoExtension.class)
+class UserHttpServerTest {
+
+    @Mock
+    private UserService userService;
+
+    private UserHttpServer server;
+    private HttpClient client;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new UserHttpServer(userService, 0, 2);
+        server.start();
+        client = HttpClient.newHttpClient();
+        testUser = new User("John Doe", 30, "john@example.com");
+        testUser.set_id(1L);
+        testUser.set_createdAt(LocalDateTime.of(2024, 1, 2, 3, 4, 5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest.BodyPublisher publisher = body != null
+                ? HttpRequest.BodyPublishers.ofString(body)
+                : HttpRequest.BodyPublishers.noBody();
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, publisher)
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void getUser_Existing_ReturnsJson() throws Exception {
+        when(userService.getUserById(1L)).thenReturn(Optional.of(testUser));
+
+        HttpResponse<String> response = send("GET", "/users/1", null);
+
+        assertEquals(200, response.statusCode());
+        assertEquals("{\"id\":1,\"name\":\"John Doe\",\"age\":30,\"email\":\"john@example.com\","
+                + "\"createdAt\":\"2024-01-02T03:04:05\"}", response.body());
+    }
+
+    @Test
+    void getUser_AdmissionRejected_Returns429() throws Exception {
+        when(userService.getUserById(1L)).thenThrow(new AdmissionRejectedException(
+                AdmissionControlledUserService.OperationType.READ, AdmissionRejectedException.Reason.RATE_LIMITED));
+
+        HttpResponse<String> response = send("GET", "/users/1", null);
+
+        assertEquals(429, response.statusCode());
+        assertEquals("1", response.headers().firstValue("Retry-After").orElse(null));
+    }
+
+    @Test
+    void getUser_DeadlineExceeded_Returns504() throws Exception {
+        when(userService.getUserById(1L))
+                .thenThrow(new DeadlineExceededException(Deadline.after(Duration.ofMillis(10)), null));
+
+        HttpResponse<String> response = send("GET", "/users/1", null);
+
+        assertEquals(504, response.statusCode());
+    }
+
+    @Test
+    void getUser_Missing_Returns404() throws Exception {
+        when(userService.getUserById(2L)).thenReturn(Optional.empty());
+
+        HttpResponse<String> response = send("GET", "/users/2", null);
+
+        assertEquals(404, response.statusCode());
+    }
+
+    @Test
+    void listUsers_FullPage_ReturnsNextCursor() throws Exception {
+        User second = new User("Jane Doe", 25, "jane@example.com");
+        second.set_id(5L);
+        when(userService.getUsersAfter(0L, 2)).thenReturn(Arrays.asList(testUser, second));
+
+        HttpResponse<String> response = send("GET", "/users?limit=2", null);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().endsWith("],\"next\":5}"));
+    }
+
+    @Test
+    void listUsers_ByIds_UsesMultiGet() throws Exception {
+        when(userService.getUsersByIds(Arrays.asList(1L, 3L))).thenReturn(Arrays.asList(testUser));
+
+        HttpResponse<String> response = send("GET", "/users?ids=1,3", null);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith("{\"users\":[{\"id\":1,"));
+        assertTrue(response.body().endsWith("\"next\":null}"));
+    }
+
+    @Test
+    void createUser_Valid_Returns201() throws Exception {
+        when(userService.createUser("John Doe", 30, "john@example.com")).thenReturn(testUser);
+
+        HttpResponse<String> response = send("POST", "/users",
+                "{\"name\":\"John Doe\",\"age\":30,\"email\":\"john@example.com\"}");
+
+        assertEquals(201, response.statusCode());
+    }
+
+    @Test
+    void createUser_DuplicateEmail_Returns409() throws Exception {
+        when(userService.createUser(anyString(), anyInt(), anyString()))
+                .thenThrow(new DuplicateEmailException("john@example.com", null));
+
+        HttpResponse<String> response = send("POST", "/users",
+                "{\"name\":\"John Doe\",\"age\":30,\"email\":\"john@example.com\"}");
+
+        assertEquals(409, response.statusCode());
+        assertEquals("{\"error\":\"Email already exists: john@example.com\"}", response.body());
+    }
+
+    @Test
+    void createUser_MalformedBody_Returns400() throws Exception {
+        HttpResponse<String> response = send("POST", "/users", "{\"name\":");
+
+        assertEquals(400, response.statusCode());
+        verify(userService, never()).createUser(any(), any(), any());
+    }
+
+    @Test
+    void deleteUser_Missing_Returns404() throws Exception {
+        when(userService.deleteUser(anyLong())).thenReturn(false);
+
+        HttpResponse<String> response = send("DELETE", "/users/9", null);
+
+        assertEquals(404, response.statusCode());
+    }
+
+    @Test
+    void route_PathOutsideUsersSegments_Returns404() throws Exception {
+        assertEquals(404, send("GET", "/usersX", null).statusCode());
+        assertEquals(404, send("GET", "/users/1/extra", null).statusCode());
+        verifyNoInteractions(userService);
+    }
+}
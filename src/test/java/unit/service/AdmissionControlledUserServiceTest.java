@@ -0,0 +1,110 @@
+package unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.userfish.Service.AdmissionControlledUserService;
+import com.userfish.Service.AdmissionControlledUserService.Limit;
+import com.userfish.Service.AdmissionControlledUserService.OperationType;
+import com.userfish.Service.AdmissionRejectedException;
+import com.userfish.Service.UserService;
+import com.userfish.model.User;
+
+@ExtendWith(MockitoExtension.class)
+class AdmissionControlledUserServiceTest {
+
+    @Mock
+    private UserService delegate;
+
+    @Test
+    void getUserById_BurstExhausted_RejectsWithRateLimit() {
+        AdmissionControlledUserService service = service(OperationType.READ, new Limit(1, 2, 10), Duration.ZERO);
+        when(delegate.getUserById(1L)).thenReturn(Optional.empty());
+
+        service.getUserById(1L);
+        service.getUserById(1L);
+        AdmissionRejectedException exception =
+                assertThrows(AdmissionRejectedException.class, () -> service.getUserById(1L));
+
+        assertEquals(OperationType.READ, exception.getOperation());
+        assertEquals(AdmissionRejectedException.Reason.RATE_LIMITED, exception.getReason());
+        assertEquals(2, service.getAdmitted(OperationType.READ));
+        assertEquals(1, service.getRejected(OperationType.READ, AdmissionRejectedException.Reason.RATE_LIMITED));
+        verify(delegate, times(2)).getUserById(1L);
+    }
+
+    @Test
+    void getUserById_TokenWithinQueueWait_WaitsAndAdmits() {
+        AdmissionControlledUserService service =
+                service(OperationType.READ, new Limit(100, 1, 10), Duration.ofMillis(200));
+
+        service.getUserById(1L);
+        service.getUserById(1L);
+
+        assertEquals(2, service.getAdmitted(OperationType.READ));
+    }
+
+    @Test
+    void createUser_ConcurrencyCapReached_RejectsAfterQueueWait() throws Exception {
+        AdmissionControlledUserService service =
+                service(OperationType.WRITE, new Limit(1_000, 100, 1), Duration.ofMillis(50));
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(delegate.createUser(any(), any(), any())).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await();
+            return new User("John Doe", 30, "john@example.com");
+        });
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        Future<User> first = executor.submit(() -> service.createUser("John Doe", 30, "john@example.com"));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        AdmissionRejectedException exception = assertThrows(AdmissionRejectedException.class,
+                () -> service.createUser("Jane Doe", 25, "jane@example.com"));
+        assertEquals(1, service.getInFlight(OperationType.WRITE));
+        release.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        assertEquals(AdmissionRejectedException.Reason.CONCURRENCY_LIMITED, exception.getReason());
+        assertEquals(0, service.getInFlight(OperationType.WRITE));
+        assertEquals(1, service.getRejected(OperationType.WRITE,
+                AdmissionRejectedException.Reason.CONCURRENCY_LIMITED));
+    }
+
+    @Test
+    void getAllUsers_ListLimited_ReadsStillAdmitted() {
+        AdmissionControlledUserService service = service(OperationType.LIST, new Limit(1, 1, 1), Duration.ZERO);
+        when(delegate.getAllUsers()).thenReturn(List.of());
+
+        service.getAllUsers();
+        assertThrows(AdmissionRejectedException.class, service::getAllUsers);
+        service.countUsers();
+
+        assertEquals(1, service.getAdmitted(OperationType.READ));
+        verify(delegate, times(1)).getAllUsers();
+    }
+
+    private AdmissionControlledUserService service(OperationType type, Limit limit, Duration maxQueueWait) {
+        Map<OperationType, Limit> limits = new EnumMap<>(AdmissionControlledUserService.defaultLimits());
+        limits.put(type, limit);
+        return new AdmissionControlledUserService(delegate, limits, maxQueueWait);
+    }
+}
@@ -0,0 +1,48 @@
+package unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.userfish.Service.TombstonePurgeJob;
+import com.userfish.dao.UserDao;
+
+@ExtendWith(MockitoExtension.class)
+class TombstonePurgeJobTest {
+
+    @Mock
+    private UserDao userDao;
+
+    @Test
+    void runOnce_FullBatches_RepeatsUntilPartialBatch() throws InterruptedException {
+        when(userDao.purgeDeleted(any(), eq(100))).thenReturn(100, 100, 7);
+        TombstonePurgeJob job = new TombstonePurgeJob(userDao, Duration.ofDays(1), 100, Duration.ZERO);
+
+        long purged = job.runOnce();
+
+        assertEquals(207, purged);
+        verify(userDao, times(3)).purgeDeleted(any(), eq(100));
+    }
+
+    @Test
+    void runOnce_UsesRetentionCutoff() throws InterruptedException {
+        when(userDao.purgeDeleted(any(), eq(10))).thenReturn(0);
+        TombstonePurgeJob job = new TombstonePurgeJob(userDao, Duration.ofDays(7), 10, Duration.ZERO);
+
+        job.runOnce();
+
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(userDao).purgeDeleted(cutoff.capture(), eq(10));
+        assertTrue(cutoff.getValue().isBefore(LocalDateTime.now().minusDays(6)));
+    }
+}
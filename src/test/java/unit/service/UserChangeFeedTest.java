@@ -0,0 +1,91 @@
+package unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.userfish.Service.UserChangeFeed;
+import com.userfish.dao.UserChangeDao;
+import com.userfish.model.UserChangeEvent;
+
+@ExtendWith(MockitoExtension.class)
+class UserChangeFeedTest {
+
+    @Mock
+    private UserChangeDao userChangeDao;
+
+    private UserChangeFeed userChangeFeed;
+
+    @BeforeEach
+    void setUp() {
+        userChangeFeed = new UserChangeFeed(userChangeDao);
+    }
+
+    private UserChangeEvent event(long transactionId, long sequence) {
+        UserChangeEvent event = mock(UserChangeEvent.class);
+        lenient().when(event.get_transactionId()).thenReturn(transactionId);
+        lenient().when(event.get_sequence()).thenReturn(sequence);
+        return event;
+    }
+
+    @Test
+    void consume_MultipleBatches_ReturnsLastPosition() throws Exception {
+        List<UserChangeEvent> first = Arrays.asList(event(700, 1), event(701, 2));
+        List<UserChangeEvent> second = Arrays.asList(event(705, 5));
+        when(userChangeDao.findAfter(0L, 0L, 2)).thenReturn(first);
+        when(userChangeDao.findAfter(701L, 2L, 2)).thenReturn(second);
+        List<Long> handled = new ArrayList<>();
+
+        UserChangeFeed.Position position = userChangeFeed.consume(UserChangeFeed.Position.START, 2,
+                batch -> batch.forEach(e -> handled.add(e.get_sequence())));
+
+        assertEquals(new UserChangeFeed.Position(705, 5), position);
+        assertEquals(Arrays.asList(1L, 2L, 5L), handled);
+    }
+
+    @Test
+    void consume_NoChanges_KeepsPosition() throws Exception {
+        when(userChangeDao.findAfter(anyLong(), anyLong(), anyInt())).thenReturn(Collections.emptyList());
+        UserChangeFeed.Position after = new UserChangeFeed.Position(900, 42);
+
+        UserChangeFeed.Position position = userChangeFeed.consume(after, 100, batch -> fail("No batch expected"));
+
+        assertEquals(after, position);
+    }
+
+    @Test
+    void consume_HandlerFails_PositionNotAdvanced() {
+        List<UserChangeEvent> batch = Arrays.asList(event(901, 8));
+        when(userChangeDao.findAfter(eq(900L), eq(7L), eq(10))).thenReturn(batch);
+
+        assertThrows(IllegalStateException.class, () -> userChangeFeed.consume(new UserChangeFeed.Position(900, 7), 10,
+                events -> { throw new IllegalStateException("down"); }));
+        verify(userChangeDao, times(1)).findAfter(anyLong(), anyLong(), anyInt());
+    }
+
+    @Test
+    void poll_InvalidBatchSize_ThrowsException() {
+        assertThrows(IllegalArgumentException.class, () -> userChangeFeed.poll(UserChangeFeed.Position.START, 0));
+    }
+
+    @Test
+    void position_Parse_RoundTripsText() {
+        assertEquals(UserChangeFeed.Position.START, UserChangeFeed.Position.parse("0"));
+        assertEquals(new UserChangeFeed.Position(812, 40), UserChangeFeed.Position.parse("812:40"));
+        assertEquals("812:40", new UserChangeFeed.Position(812, 40).toString());
+        assertThrows(IllegalArgumentException.class, () -> UserChangeFeed.Position.parse("40"));
+    }
+}
@@ -3,13 +3,16 @@ package unit.service;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+import org.hibernate.SessionFactory;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,12 +24,16 @@ import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import com.userfish.dao.UpsertResult;
 import com.userfish.dao.UserDao;
 import com.userfish.dao.UserDaoImpl;
 import com.userfish.model.User;
+import com.userfish.util.HibernateTransactionTemplate;
 
 import jakarta.transaction.SystemException;
 
+import support.dao.TestDatabases;
+
 @Testcontainers
 @TestInstance(TestInstance.Lifecycle.PER_CLASS)
 class UserDaoImplIT {
@@ -38,20 +45,22 @@ class UserDaoImplIT {
             .withUsername("test")
             .withPassword("test");
     
+    private static SessionFactory sessionFactory;
     private UserDao userDao;
     
     @BeforeAll
     static void beforeAll() {
         postgres.start();
-        System.setProperty("DB_URL", postgres.getJdbcUrl());
-        System.setProperty("DB_USERNAME", postgres.getUsername());
-        System.setProperty("DB_PASSWORD", postgres.getPassword());
+        sessionFactory = TestDatabases.postgres(postgres);
         
         logger.info("Test database started: {}", postgres.getJdbcUrl());
     }
     
     @AfterAll
     static void afterAll() {
+        if (sessionFactory != null) {
+            sessionFactory.close();
+        }
         if (postgres != null && postgres.isRunning()) {
             postgres.stop();
         }
@@ -60,8 +69,7 @@ class UserDaoImplIT {
     
     @BeforeEach
     void setUp() throws IllegalStateException, SystemException {
-        TestHibernateUtil.initialize(postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
-        userDao = new UserDaoImpl();
+        userDao = new UserDaoImpl(new HibernateTransactionTemplate(() -> sessionFactory));
         
         clearDatabase();
     }
@@ -185,6 +193,44 @@ class UserDaoImplIT {
         assertDoesNotThrow(() -> userDao.delete(999L));
     }
     
+    @Test
+    void save_EmailOfDeletedUser_IsAllowed() throws IllegalStateException, SystemException {
+        User deleted = userDao.save(new User("Old Owner", 25, "reuse@example.com"));
+        userDao.delete(deleted.get_id());
+        
+        User reused = userDao.save(new User("New Owner", 30, "reuse@example.com"));
+        
+        assertNotEquals(deleted.get_id(), reused.get_id());
+        assertThrows(RuntimeException.class, () -> userDao.restore(deleted.get_id()));
+    }
+    
+    @Test
+    void upsertByEmail_NewThenExisting_ReportsInsertThenUpdate() throws IllegalStateException, SystemException {
+        UpsertResult first = userDao.upsertByEmail(new User("Feed User", 25, "feed@example.com"));
+        UpsertResult second = userDao.upsertByEmail(new User("Feed User Renamed", 26, "feed@example.com"));
+        
+        assertTrue(first.isInserted());
+        assertTrue(second.isUpdated());
+        assertEquals(first.getUser().get_id(), second.getUser().get_id());
+        assertEquals("Feed User Renamed", userDao.findById(first.getUser().get_id()).get().get_name());
+    }
+    
+    @Test
+    void upsertAll_DuplicateEmailsInBatch_LastOneWins() throws IllegalStateException, SystemException {
+        userDao.save(new User("Existing", 40, "existing@example.com"));
+        
+        List<UpsertResult> results = userDao.upsertAll(Arrays.asList(
+                new User("New", 20, "new@example.com"),
+                new User("Existing Updated", 41, "existing@example.com"),
+                new User("New Again", 21, "new@example.com")));
+        
+        assertEquals(3, results.size());
+        assertTrue(results.get(0).isInserted());
+        assertTrue(results.get(1).isUpdated());
+        assertEquals(2, userDao.count());
+        assertEquals("New Again", userDao.findById(results.get(0).getUser().get_id()).get().get_name());
+    }
+    
     @Test
     void integrationTest_CRUDOperations() throws IllegalStateException, SystemException {
         User user = new User("Integration Test", 40, "integration@example.com");
@@ -204,42 +250,3 @@ class UserDaoImplIT {
         assertFalse(userDao.findById(userId).isPresent());
     }
 }
-
-class TestHibernateUtil {
-    private static com.userfish.util.HibernateUtil instance;
-    
-    static void initialize(String url, String username, String password) {
-        try {
-            // Используем рефлексию для сброса статического поля
-            java.lang.reflect.Field field = com.userfish.util.HibernateUtil.class.getDeclaredField("sessionFactory");
-            field.setAccessible(true);
-            field.set(null, null);
-            
-            // Создаем тестовую конфигурацию
-            org.hibernate.cfg.Configuration configuration = new org.hibernate.cfg.Configuration();
-            
-            java.util.Properties settings = new java.util.Properties();
-            settings.put(org.hibernate.cfg.Environment.DRIVER, "org.postgresql.Driver");
-            settings.put(org.hibernate.cfg.Environment.URL, url);
-            settings.put(org.hibernate.cfg.Environment.USER, username);
-            settings.put(org.hibernate.cfg.Environment.PASS, password);
-            settings.put(org.hibernate.cfg.Environment.DIALECT, "org.hibernate.dialect.PostgreSQLDialect");
-            settings.put(org.hibernate.cfg.Environment.SHOW_SQL, "false");
-            settings.put(org.hibernate.cfg.Environment.HBM2DDL_AUTO, "create-drop");
-            settings.put(org.hibernate.cfg.Environment.CONNECTION_PREFIX, "1");
-            
-            configuration.setProperties(settings);
-            configuration.addAnnotatedClass(com.userfish.model.User.class);
-            
-            org.hibernate.boot.registry.StandardServiceRegistry serviceRegistry = 
-                new org.hibernate.boot.registry.StandardServiceRegistryBuilder()
-                    .applySettings(configuration.getProperties())
-                    .build();
-            
-            org.hibernate.SessionFactory sessionFactory = configuration.buildSessionFactory(serviceRegistry);
-            field.set(null, sessionFactory);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to initialize test HibernateUtil", e);
-        }
-    }
-}
\ No newline at end of file
@@ -0,0 +1,135 @@
+package unit.service;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.userfish.Service.UserService;
+import com.userfish.Service.UserServiceImpl;
+import com.userfish.Service.WriteBehindUpdateBuffer;
+import com.userfish.dao.DuplicateEmailException;
+import com.userfish.dao.UserDao;
+import com.userfish.model.User;
+import com.userfish.util.TransactionTemplate;
+
+import jakarta.transaction.SystemException;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindUpdateBufferTest {
+
+    @Mock
+    private UserDao userDao;
+
+    private WriteBehindUpdateBuffer buffer;
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        // Длинное окно: сброс в тестах происходит только явно
+        buffer = new WriteBehindUpdateBuffer(userDao, TransactionTemplate.direct(), Duration.ofHours(1), 2, 100);
+        testUser = new User("John Doe", 30, "john@example.com");
+        testUser.set_id(1L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        buffer.close();
+    }
+
+    @Test
+    void flush_RepeatedUpdates_CoalescedIntoOneWrite() throws IllegalStateException, SystemException {
+        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
+
+        buffer.submit(1L, null, 31, null);
+        buffer.submit(1L, "John Updated", null, null);
+        buffer.submit(1L, null, 33, null);
+        buffer.flush();
+
+        ArgumentCaptor<User> written = ArgumentCaptor.forClass(User.class);
+        verify(userDao, times(1)).update(written.capture());
+        assertEquals("John Updated", written.getValue().get_name());
+        assertEquals(33, written.getValue().get_age());
+        assertEquals(3.0, buffer.getCoalescingRatio());
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    void submit_BufferFull_FlushesSynchronously() throws IllegalStateException, SystemException {
+        when(userDao.findById(anyLong())).thenAnswer(invocation -> {
+            User user = new User("Someone", 20, "someone@example.com");
+            user.set_id(invocation.getArgument(0));
+            return Optional.of(user);
+        });
+
+        buffer.submit(1L, null, 21, null);
+        buffer.submit(2L, null, 22, null);
+        buffer.submit(3L, null, 23, null);
+
+        verify(userDao, times(2)).update(any(User.class));
+        assertEquals(1, buffer.getPendingCount());
+    }
+
+    @Test
+    void flush_FailingUser_OthersStillWritten() throws IllegalStateException, SystemException {
+        User other = new User("Jane Doe", 25, "jane@example.com");
+        other.set_id(2L);
+        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
+        when(userDao.findById(2L)).thenReturn(Optional.of(other));
+        when(userDao.update(any(User.class))).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            if (user.get_id() == 1L) {
+                throw new RuntimeException("Email already exists");
+            }
+            return user;
+        });
+
+        buffer.submit(1L, null, null, "taken@example.com");
+        buffer.submit(2L, null, 26, null);
+        buffer.flush();
+
+        assertEquals(1, buffer.getWrittenCount());
+        assertEquals(1, buffer.getFailedCount());
+    }
+
+    @Test
+    void updateUser_WriteBehindMode_ReturnsPendingStateWithoutWriting() throws IllegalStateException, SystemException {
+        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
+        UserService userService = new UserServiceImpl(userDao, TransactionTemplate.direct(), buffer);
+
+        User result = userService.updateUser(1L, "", 40, null);
+
+        assertEquals(40, result.get_age());
+        assertEquals("John Doe", result.get_name());
+        assertEquals(1, buffer.getPendingCount());
+        verify(userDao, never()).update(any(User.class));
+    }
+
+    @Test
+    void updateUser_EmailTaken_RejectedImmediatelyAndPendingKept() throws IllegalStateException, SystemException {
+        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
+        when(userDao.update(any(User.class))).thenThrow(new DuplicateEmailException("taken@example.com", null));
+        UserService userService = new UserServiceImpl(userDao, TransactionTemplate.direct(), buffer);
+
+        userService.updateUser(1L, null, 40, null);
+
+        assertThrows(DuplicateEmailException.class,
+                () -> userService.updateUser(1L, "John Renamed", null, "taken@example.com"));
+        ArgumentCaptor<User> attempted = ArgumentCaptor.forClass(User.class);
+        verify(userDao).update(attempted.capture());
+        assertEquals("taken@example.com", attempted.getValue().get_email());
+        assertEquals(40, attempted.getValue().get_age());
+        assertEquals(1, buffer.getPendingCount());
+    }
+}
@@ -0,0 +1,168 @@
+package unit.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.SQLException;
+import java.time.Duration;
+
+import org.hibernate.QueryTimeoutException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.userfish.util.Deadline;
+import com.userfish.util.DeadlineExceededException;
+import com.userfish.util.HibernateTransactionTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class HibernateTransactionTemplateTest {
+
+    @Mock
+    private SessionFactory sessionFactory;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private Transaction transaction;
+
+    private HibernateTransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(sessionFactory.openSession()).thenReturn(session);
+        lenient().when(session.beginTransaction()).thenReturn(transaction);
+        transactionTemplate = new HibernateTransactionTemplate(() -> sessionFactory);
+    }
+
+    @Test
+    void execute_NestedCalls_ShareSessionAndCommitOnce() {
+        String result = transactionTemplate.execute(() -> {
+            Session outer = transactionTemplate.currentSession();
+            Session inner = transactionTemplate.execute(transactionTemplate::currentSession);
+            assertSame(outer, inner);
+            return "done";
+        });
+
+        assertEquals("done", result);
+        assertFalse(transactionTemplate.isActive());
+        verify(sessionFactory, times(1)).openSession();
+        verify(transaction, times(1)).commit();
+        verify(transaction, never()).rollback();
+    }
+
+    @Test
+    void execute_InnerFailure_RollsBackWholeUnit() {
+        when(transaction.isActive()).thenReturn(true);
+
+        RuntimeException exception = assertThrows(
+                RuntimeException.class,
+                () -> transactionTemplate.execute(() -> transactionTemplate.execute(() -> {
+                    throw new RuntimeException("boom");
+                }))
+        );
+
+        assertEquals("boom", exception.getMessage());
+        assertFalse(transactionTemplate.isActive());
+        verify(transaction, never()).commit();
+        verify(transaction, times(1)).rollback();
+    }
+
+    @Test
+    void execute_ExpiredDeadline_FailsWithoutOpeningSession() throws Exception {
+        Deadline deadline = Deadline.after(Duration.ofNanos(1));
+        Thread.sleep(1);
+
+        assertThrows(DeadlineExceededException.class,
+                () -> deadline.run(() -> transactionTemplate.execute(() -> "never")));
+
+        verify(sessionFactory, never()).openSession();
+        assertEquals(1, transactionTemplate.getExpiredBeforeStartCount());
+    }
+
+    @Test
+    void execute_QueryTimeoutWithinDeadline_ThrowsDeadlineExceeded() {
+        when(sessionFactory.unwrap(SessionFactoryImplementor.class))
+                .thenReturn(mock(SessionFactoryImplementor.class, RETURNS_DEEP_STUBS));
+        when(transaction.isActive()).thenReturn(true);
+        QueryTimeoutException timeout =
+                new QueryTimeoutException("timeout", new SQLException("canceled", "57014"), "select");
+
+        DeadlineExceededException exception = assertThrows(DeadlineExceededException.class,
+                () -> Deadline.after(Duration.ofSeconds(5)).run(() -> transactionTemplate.execute(() -> {
+                    throw new RuntimeException("Failed to retrieve users", timeout);
+                })));
+
+        assertSame(timeout, exception.getCause().getCause());
+        verify(session).setProperty("jakarta.persistence.query.timeout", 5000);
+        verify(transaction, times(1)).rollback();
+        assertEquals(1, transactionTemplate.getTimedOutCount());
+    }
+
+    @Test
+    void executeReadOnly_ReplicaConfigured_UsesReadOnlySession() {
+        SessionFactory replicaFactory = mock(SessionFactory.class);
+        Session replicaSession = mock(Session.class);
+        when(replicaFactory.openSession()).thenReturn(replicaSession);
+        when(replicaSession.beginTransaction()).thenReturn(transaction);
+        transactionTemplate = new HibernateTransactionTemplate(() -> sessionFactory, () -> replicaFactory, 0);
+
+        Session used = transactionTemplate.executeReadOnly(transactionTemplate::currentSession);
+
+        assertSame(replicaSession, used);
+        verify(replicaSession, times(1)).setDefaultReadOnly(true);
+        verify(sessionFactory, never()).openSession();
+    }
+
+    @Test
+    void executeReadOnly_AfterWriteWithinWindow_UsesPrimary() {
+        SessionFactory replicaFactory = mock(SessionFactory.class);
+        transactionTemplate = new HibernateTransactionTemplate(() -> sessionFactory, () -> replicaFactory, 60_000);
+
+        transactionTemplate.execute(() -> null);
+        Session used = transactionTemplate.executeReadOnly(transactionTemplate::currentSession);
+
+        assertSame(session, used);
+        verify(replicaFactory, never()).openSession();
+    }
+
+    @Test
+    void executeReadOnlyOnPrimary_ReplicaConfigured_UsesPrimaryWithoutPinningLaterReads() {
+        SessionFactory replicaFactory = mock(SessionFactory.class);
+        Session replicaSession = mock(Session.class);
+        when(replicaFactory.openSession()).thenReturn(replicaSession);
+        when(replicaSession.beginTransaction()).thenReturn(transaction);
+        transactionTemplate = new HibernateTransactionTemplate(() -> sessionFactory, () -> replicaFactory, 60_000);
+
+        Session primary = transactionTemplate.executeReadOnlyOnPrimary(transactionTemplate::currentSession);
+        Session next = transactionTemplate.executeReadOnly(transactionTemplate::currentSession);
+
+        assertSame(session, primary);
+        verify(session, times(1)).setDefaultReadOnly(true);
+        assertSame(replicaSession, next);
+    }
+
+    @Test
+    void execute_InsideReadOnlyUnit_ThrowsException() {
+        when(session.isDefaultReadOnly()).thenReturn(true);
+        transactionTemplate = new HibernateTransactionTemplate(() -> sessionFactory, () -> sessionFactory, 0);
+
+        assertThrows(
+                IllegalStateException.class,
+                () -> transactionTemplate.executeReadOnly(() -> transactionTemplate.execute(() -> null))
+        );
+        verify(transaction, never()).commit();
+    }
+
+    @Test
+    void currentSession_NoUnitOfWork_ThrowsException() {
+        assertThrows(IllegalStateException.class, transactionTemplate::currentSession);
+    }
+}
@@ -0,0 +1,61 @@
+package unit.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import com.userfish.dao.UserDao;
+import com.userfish.dao.UserDaoImpl;
+import com.userfish.model.User;
+import com.userfish.util.HibernateTransactionTemplate;
+import com.userfish.util.HibernateUtil;
+
+// HibernateUtil - синглтон на всю JVM: основная база подменяется на H2 системными свойствами hibernate.*
+class HibernateUtilTest {
+    private static final Map<String, String> SETTINGS = Map.of(
+            "hibernate.connection.driver_class", "org.h2.Driver",
+            "hibernate.connection.url", "jdbc:h2:mem:hibernateutil;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+            "hibernate.connection.username", "sa",
+            "hibernate.connection.password", "",
+            "hibernate.dialect", "org.hibernate.dialect.H2Dialect",
+            "hibernate.hbm2ddl.auto", "create-drop",
+            "WARMUP_THREADS", "2",
+            "WARMUP_CHUNK_SIZE", "10",
+            "WARMUP_TIMEOUT_MS", "30000");
+
+    @BeforeAll
+    static void beforeAll() {
+        SETTINGS.forEach(System::setProperty);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        HibernateUtil.shutdown();
+        SETTINGS.keySet().forEach(System::clearProperty);
+    }
+
+    @Test
+    void warmUp_AfterInitialization_PreloadsWithoutWaitingForTimeout() throws Exception {
+        HibernateTransactionTemplate transactionTemplate = HibernateUtil.getTransactionTemplate();
+        UserDao userDao = new UserDaoImpl(transactionTemplate);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            users.add(new User("Warm User", 30, "warm" + i + "@example.com"));
+        }
+        userDao.saveAll(users);
+
+        long started = System.nanoTime();
+        int preloaded = HibernateUtil.warmUp(userDao);
+        long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+
+        assertEquals(25, preloaded);
+        assertTrue(elapsedMillis < 10_000, "Warm-up waited " + elapsedMillis + " ms");
+    }
+}
@@ -0,0 +1,109 @@
+package unit.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.userfish.dao.InMemoryUserDao;
+import com.userfish.model.User;
+import com.userfish.util.UserSnapshot;
+
+class UserSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void read_WrittenSnapshot_ReturnsSameUsersInBatches() throws Exception {
+        Path path = tempDir.resolve("users.snap");
+        List<User> users = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            users.add(user(i * 10, "Юзер, \"" + i + "\"", "user" + i + "@example.com"));
+        }
+        try (UserSnapshot.Writer writer = UserSnapshot.create(path)) {
+            for (User user : users) {
+                writer.write(user);
+            }
+        }
+
+        List<Integer> batchSizes = new ArrayList<>();
+        List<User> read = new ArrayList<>();
+        long count = UserSnapshot.read(path, 2, batch -> {
+            batchSizes.add(batch.size());
+            read.addAll(batch);
+        });
+
+        assertEquals(5, count);
+        assertEquals(List.of(2, 2, 1), batchSizes);
+        for (int i = 0; i < users.size(); i++) {
+            assertEquals(users.get(i).get_id(), read.get(i).get_id());
+            assertEquals(users.get(i).get_name(), read.get(i).get_name());
+            assertEquals(users.get(i).get_email(), read.get(i).get_email());
+            assertEquals(users.get(i).get_age(), read.get(i).get_age());
+            assertEquals(users.get(i).get_createdAt(), read.get(i).get_createdAt());
+            assertEquals(users.get(i).get_updatedAt(), read.get(i).get_updatedAt());
+        }
+    }
+
+    @Test
+    void read_SnapshotIntoInMemoryDao_WarmsStore() throws Exception {
+        Path path = tempDir.resolve("users.snap");
+        try (UserSnapshot.Writer writer = UserSnapshot.create(path)) {
+            for (int i = 1; i <= 1000; i++) {
+                writer.write(user(i, "User", "user" + i + "@example.com"));
+            }
+        }
+        InMemoryUserDao dao = new InMemoryUserDao();
+
+        UserSnapshot.read(path, 128, dao::bulkInsert);
+
+        assertEquals(1000, dao.count());
+        assertEquals("user500@example.com", dao.findById(500L).get().get_email());
+    }
+
+    @Test
+    void read_UnknownVersion_ThrowsException() throws Exception {
+        Path path = tempDir.resolve("users.snap");
+        try (UserSnapshot.Writer writer = UserSnapshot.create(path)) {
+            writer.write(user(1, "User", "user@example.com"));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(2).putShort(0, (short) 99), 4);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.read(path, 10, batch -> { }));
+    }
+
+    @Test
+    void read_TruncatedSnapshot_ThrowsException() throws Exception {
+        Path path = tempDir.resolve("users.snap");
+        try (UserSnapshot.Writer writer = UserSnapshot.create(path)) {
+            writer.write(user(1, "User", "user1@example.com"));
+            writer.write(user(2, "User", "user2@example.com"));
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 5);
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> UserSnapshot.read(path, 10, batch -> { }));
+    }
+
+    private static User user(long id, String name, String email) {
+        User user = new User(name, 30, email);
+        user.set_id(id);
+        user.set_createdAt(LocalDateTime.of(2024, 5, 6, 7, 8, 9, 123_456_000));
+        user.set_updatedAt(LocalDateTime.of(2024, 6, 7, 8, 9, 10, 654_321_000));
+        return user;
+    }
+}